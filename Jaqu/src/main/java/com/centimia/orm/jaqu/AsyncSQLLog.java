@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.centimia.orm.jaqu.StatementLogger.Type;
+
+/**
+ * Logs the statements of a factory showing SQL from a background thread. The statement and a copy of its parameters are put in a ring of slots
+ * allocated up front, the writer thread formats them and writes them to the {@link StatementLogger}. Sessions never wait for the log, when the ring
+ * is full the statement is dropped and counted.
+ * <p>
+ * Only every n-th statement is logged, of all statements or of each statement shape. The ring is a bounded multi producer queue, a producer claims
+ * a slot by advancing the head and publishes it by setting the slot's sequence, the single writer reads the slots in order.
+ *
+ * @author Shai Bentin
+ */
+final class AsyncSQLLog implements Runnable {
+
+	// statements of shapes beyond these are sampled by the count of all statements
+	private static final int MAX_SHAPES = 1000;
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final class Slot {
+		volatile long sequence;
+		Type type;
+		String sql;
+		Object[] params;
+	}
+
+	private final Slot[] slots;
+	private final int mask;
+	private final int sampleEvery;
+	private final boolean perShape;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong statements = new AtomicLong();
+	private final Map<String, AtomicLong> shapes = new ConcurrentHashMap<>();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder written = new LongAdder();
+	private final Thread writer;
+	// read by the writer only
+	private long tail = 0;
+	private volatile boolean running = true;
+
+	/**
+	 * @param capacity - the number of slots, rounded up to a power of two
+	 * @param sampleEvery - log one of this many statements
+	 * @param perShape - count the statements of each shape apart
+	 */
+	AsyncSQLLog(int capacity, int sampleEvery, boolean perShape) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.slots = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot();
+			slots[i].sequence = i;
+		}
+		this.mask = size - 1;
+		this.sampleEvery = Math.max(sampleEvery, 1);
+		this.perShape = perShape;
+		this.writer = new Thread(this, "jaqu-sql-log");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Queue the statement for logging if it is sampled.
+	 *
+	 * @param type
+	 * @param sql
+	 * @param params - copied when the statement is queued, may be null
+	 */
+	void offer(Type type, String sql, List<?> params) {
+		if (!sampled(sql))
+			return;
+		long position = head.get();
+		for (;;) {
+			Slot slot = slots[(int)(position & mask)];
+			long diff = slot.sequence - position;
+			if (0 == diff) {
+				if (head.compareAndSet(position, position + 1)) {
+					slot.type = type;
+					slot.sql = sql;
+					slot.params = null == params ? null : params.toArray();
+					slot.sequence = position + 1;
+					return;
+				}
+				position = head.get();
+			}
+			else if (diff < 0) {
+				// the slot was not written yet by the writer, the ring is full
+				dropped.increment();
+				return;
+			}
+			else
+				position = head.get();
+		}
+	}
+
+	private boolean sampled(String sql) {
+		if (1 == sampleEvery)
+			return true;
+		AtomicLong count = statements;
+		if (perShape) {
+			String shape = StatementTimer.fingerprint(sql);
+			count = shapes.get(shape);
+			if (null == count)
+				count = shapes.size() < MAX_SHAPES ? shapes.computeIfAbsent(shape, s -> new AtomicLong()) : statements;
+		}
+		return 0 == count.getAndIncrement() % sampleEvery;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			if (0 == drain())
+				LockSupport.parkNanos(this, IDLE_NANOS);
+		}
+		drain();
+	}
+
+	private int drain() {
+		int count = 0;
+		for (;;) {
+			Slot slot = slots[(int)(tail & mask)];
+			if (slot.sequence != tail + 1)
+				return count;
+			Type type = slot.type;
+			String sql = slot.sql;
+			Object[] params = slot.params;
+			slot.sql = null;
+			slot.params = null;
+			// the slot is free for the producer that goes round the ring once more
+			slot.sequence = tail + slots.length;
+			tail++;
+			try {
+				StatementLogger.log(type, SQLStatement.logSQL(sql, params));
+				written.increment();
+			}
+			catch (RuntimeException e) {
+				StatementLogger.error("Unable to log statement - " + e.getMessage());
+			}
+			count++;
+		}
+	}
+
+	/**
+	 * Stop the writer after it has written the statements already queued.
+	 */
+	void stop() {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(TimeUnit.SECONDS.toMillis(5));
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	long getDropped() {
+		return dropped.sum();
+	}
+
+	long getWritten() {
+		return written.sum();
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.UUID;
+
+import com.centimia.orm.jaqu.TableDefinition.FieldDefinition;
+import com.centimia.orm.jaqu.TableDefinition.FieldType;
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * Reads a column into the value its field holds. A codec is resolved once for a field when its table is defined, so reading a row does not go
+ * through the type switch of the dialect for every cell. Numbers are read with the typed getters of the result set instead of getObject, and enum
+ * constants are looked up in tables built once for the enum.
+ *
+ * @author Shai Bentin
+ */
+@FunctionalInterface
+interface Codec {
+
+	/**
+	 * Reads the column from the current row.
+	 *
+	 * @param rs
+	 * @param columnName
+	 * @return Object the value as the field holds it, or as the field's converter takes it
+	 * @throws SQLException
+	 */
+	Object read(ResultSet rs, String columnName) throws SQLException;
+
+	/**
+	 * Returns the codec of the field, or null when the field is read through the dialect.<br>
+	 * Only plain columns of the types read the same in all databases have a codec. Relations, extensions, dates and LOBs are read by the dialect.
+	 *
+	 * @param def
+	 * @return Codec
+	 */
+	static Codec forField(FieldDefinition def) {
+		if (FieldType.NORMAL != def.fieldType || def.isSilent || def.isExtension || null == def.type)
+			return null;
+		switch (def.type) {
+			case STRING: return ResultSet::getString;
+			case BIGDECIMAL: return ResultSet::getBigDecimal;
+			// a null boolean column is read as false
+			case BOOLEAN: return (rs, column) -> rs.getBoolean(column);
+			case LONG: return (rs, column) -> {
+				long value = rs.getLong(column);
+				return rs.wasNull() ? null : Long.valueOf(value);
+			};
+			case INTEGER: return (rs, column) -> {
+				int value = rs.getInt(column);
+				return rs.wasNull() ? null : Integer.valueOf(value);
+			};
+			case SHORT: return (rs, column) -> {
+				short value = rs.getShort(column);
+				return rs.wasNull() ? null : Short.valueOf(value);
+			};
+			case BYTE: return (rs, column) -> {
+				byte value = rs.getByte(column);
+				return rs.wasNull() ? null : Byte.valueOf(value);
+			};
+			case DOUBLE: return (rs, column) -> {
+				double value = rs.getDouble(column);
+				return rs.wasNull() ? null : Double.valueOf(value);
+			};
+			case FLOAT: return (rs, column) -> {
+				float value = rs.getFloat(column);
+				return rs.wasNull() ? null : Float.valueOf(value);
+			};
+			default: break;
+		}
+		if (null != def.converter)
+			// the converter takes the column value, it is not the field's type
+			return null;
+		switch (def.type) {
+			case ENUM: {
+				Map<String, Object> constants = Utils.newHashMap();
+				for (Object constant : def.field.getType().getEnumConstants())
+					constants.put(((Enum<?>)constant).name(), constant);
+				return (rs, column) -> {
+					String name = rs.getString(column);
+					if (null == name)
+						return null;
+					Object constant = constants.get(name);
+					if (null == constant)
+						throw new JaquError("No enum constant %s.%s", def.field.getType().getName(), name);
+					return constant;
+				};
+			}
+			case ENUM_INT: {
+				Object[] constants = def.field.getType().getEnumConstants();
+				return (rs, column) -> {
+					int ordinal = rs.getInt(column);
+					return rs.wasNull() ? null : constants[ordinal];
+				};
+			}
+			case UUID: return (rs, column) -> {
+				String value = rs.getString(column);
+				return null == value ? null : UUID.fromString(value);
+			};
+			// byte arrays are read as bytes. The lob of a stream field is not valid once the result set closes, its content is read with the row
+			case BLOB: {
+				if (byte[].class == def.field.getType())
+					return ResultSet::getBytes;
+				if (InputStream.class != def.field.getType())
+					return null;
+				return (rs, column) -> {
+					Blob blob = rs.getBlob(column);
+					if (null == blob)
+						return null;
+					try {
+						return new ByteArrayInputStream(blob.getBytes(1, (int)blob.length()));
+					}
+					finally {
+						blob.free();
+					}
+				};
+			}
+			case CLOB: {
+				if (Reader.class != def.field.getType())
+					return null;
+				return (rs, column) -> {
+					Clob clob = rs.getClob(column);
+					if (null == clob)
+						return null;
+					try {
+						return new StringReader(clob.getSubString(1, (int)clob.length()));
+					}
+					finally {
+						clob.free();
+					}
+				};
+			}
+			default: return null;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * A select query assembled once and executed many times. The SQL is built when the query is compiled, executing it only binds the parameters and reads
+ * the rows. A compiled query holds no session, it is immutable and can be shared between sessions and threads.
+ * <p>
+ * The values given in the query when it was compiled are its parameters, in the order they appear in the SQL. {@link #bind(Object...)} returns a copy
+ * of the query with other values in their place.
+ * <pre>
+ * CompiledQuery&lt;Person&gt; byName = factory.compile(db -&gt; {
+ * 	Person p = new Person();
+ * 	return db.from(p).where(p.getFirstName()).is("").and(p.getLastName()).is("");
+ * });
+ * ...
+ * List&lt;Person&gt; persons = byName.bind("John", "Doe").select(db);
+ * </pre>
+ * <b>Note:</b> The number of parameters is fixed when the query is compiled, so an 'in' condition always takes the number of values it was compiled with.
+ * As in any query, a value the alias object itself holds (such as a small cached number) is read as the alias column and not as a parameter.
+ *
+ * @param <T> the return type
+ * @author Shai Bentin
+ */
+public final class CompiledQuery<T> {
+
+	private final TableDefinition<T> definition;
+	private final String sql;
+	private final Object[] parameters;
+
+	CompiledQuery(TableDefinition<T> definition, String sql, Object[] parameters) {
+		this.definition = definition;
+		this.sql = sql;
+		this.parameters = parameters;
+	}
+
+	/**
+	 * Returns a copy of this query with the given parameter values, in the order the parameters appear in the query.
+	 * An enum or UUID value is converted the way the query converted the value it was compiled with.
+	 *
+	 * @param values
+	 * @return CompiledQuery&lt;T&gt;
+	 * @throws JaquError when the number of values is not the number of parameters in the query
+	 */
+	public CompiledQuery<T> bind(Object ... values) {
+		if (values.length != parameters.length)
+			throw new JaquError("The query has %s parameters but %s values were given", parameters.length, values.length);
+		Object[] bound = new Object[values.length];
+		for (int i = 0; i < values.length; i++)
+			bound[i] = convert(values[i], parameters[i]);
+		return new CompiledQuery<>(definition, sql, bound);
+	}
+
+	/**
+	 * Execute the query on the given session.
+	 *
+	 * @param db
+	 * @return List&lt;T&gt; never null
+	 */
+	public List<T> select(Db db) {
+		List<T> result = Utils.newArrayList();
+		SQLStatement stat = new SQLStatement(db);
+		stat.setSQL(sql);
+		for (Object parameter : parameters)
+			stat.addParameter(parameter);
+		stat.executeQuery(rs -> {
+			while (rs.next()) {
+				T item = definition.readRow(rs, db);
+				db.addSession(item);
+				result.add(item);
+			}
+			return null;
+		});
+		return result;
+	}
+
+	/**
+	 * Execute the query on the given session and return the first result.
+	 *
+	 * @param db
+	 * @return T or null if there is no result
+	 */
+	public T selectFirst(Db db) {
+		List<T> list = select(db);
+		return list.isEmpty() ? null : list.get(0);
+	}
+
+	/**
+	 * Returns the SQL of this query.
+	 * @return String
+	 */
+	public String getSQL() {
+		return sql;
+	}
+
+	/*
+	 * the query binds enums and UUIDs the way the column holds them, the new value is bound the same way as the value it replaces
+	 */
+	private Object convert(Object value, Object compiledValue) {
+		if (value instanceof Enum) {
+			if (compiledValue instanceof Integer)
+				return ((Enum<?>)value).ordinal();
+			if (compiledValue instanceof String)
+				return ((Enum<?>)value).name();
+		}
+		else if (value instanceof UUID && compiledValue instanceof String)
+			return value.toString();
+		return value;
+	}
+}
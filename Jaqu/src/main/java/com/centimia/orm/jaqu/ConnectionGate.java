@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the connections the sessions of a factory hold open at once. A session takes a permit before its connection is opened and returns it when
+ * the connection is closed, a session opened while all permits are taken waits for one in the order it came and fails when none is returned in time.
+ * Waiting parks the thread, it does not hold a monitor, so a waiting virtual thread leaves its carrier thread free.
+ *
+ * @author Shai Bentin
+ */
+final class ConnectionGate {
+
+	private final Semaphore permits;
+	private final int max;
+	private final long timeoutNanos;
+	private final LongAdder waits = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+
+	ConnectionGate(int max, long timeoutMillis) {
+		this.max = max;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		this.permits = new Semaphore(max, true);
+	}
+
+	/**
+	 * Take a permit to open a connection.
+	 *
+	 * @throws JaquError when no permit is returned within the timeout or the thread is interrupted while waiting
+	 */
+	void acquire() {
+		try {
+			// a timed try keeps the order of the threads already waiting, unlike an untimed one
+			if (permits.tryAcquire(0, TimeUnit.NANOSECONDS))
+				return;
+			waits.increment();
+			if (permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS))
+				return;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JaquError(e, "Interrupted while waiting for a connection");
+		}
+		timeouts.increment();
+		throw new JaquError("No connection was available within %s milliseconds, %s connections are open and %s sessions are waiting",
+				TimeUnit.NANOSECONDS.toMillis(timeoutNanos), max, permits.getQueueLength());
+	}
+
+	void release() {
+		permits.release();
+	}
+
+	int getMax() {
+		return max;
+	}
+
+	int getInUse() {
+		return max - permits.availablePermits();
+	}
+
+	int getQueueLength() {
+		return permits.getQueueLength();
+	}
+
+	long getWaits() {
+		return waits.sum();
+	}
+
+	long getTimeouts() {
+		return timeouts.sum();
+	}
+}
@@ -16,29 +16,32 @@ import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.Status;
 import javax.transaction.SystemException;
 
+import com.centimia.orm.jaqu.StatementLogger.Type;
 import com.centimia.orm.jaqu.TableDefinition.FieldDefinition;
 import com.centimia.orm.jaqu.annotation.Entity;
 import com.centimia.orm.jaqu.annotation.Event;
 import com.centimia.orm.jaqu.annotation.Immutable;
 import com.centimia.orm.jaqu.annotation.MappedSuperclass;
 import com.centimia.orm.jaqu.util.ClassUtils;
-import com.centimia.orm.jaqu.util.FieldComperator;
-import com.centimia.orm.jaqu.util.JdbcUtils;
 import com.centimia.orm.jaqu.util.StatementBuilder;
 import com.centimia.orm.jaqu.util.Utils;
 import com.centimia.orm.jaqu.util.WeakIdentityHashMap;
@@ -53,6 +56,10 @@ public class Db implements AutoCloseable {
 	private static final String UPDATE = "UPDATE ";
 	private static final String WHERE = " WHERE ";
 	private static final String SESSION_IS_CLOSED = "IllegalState - Session is closed!!!";
+	static final String SESSION_IS_READ_ONLY = "IllegalState - Session is read only!!!";
+	// the columns a polymorphic relation's union selects for the type of the row, and for the order of a relation table
+	private static final String UNION_TAG = "JQ_TYPE";
+	private static final String UNION_ORDER = "JQ_ORDER";
 
 	/*
      * A list of objects this specific DB call has already visited. This list is cleared after each call.
@@ -74,19 +81,53 @@ public class Db implements AutoCloseable {
 	// determines if the Db connection is closed. This gets value of true only when the underlying connection is closed on invalid
 	private volatile boolean closed = true;
 
-	private final Map<Object, Token> tokens = Collections.synchronizedMap(new WeakIdentityHashMap<Object, Token>());
+	// a session is used by one thread at a time, the tokens are not locked
+	private final Map<Object, Token> tokens = new WeakIdentityHashMap<Object, Token>();
+
+	/*
+	 * Dirty checking snapshots, used only when the factory has dirty checking on. Entities map to the values of their columns,
+	 * relation collections map to the elements they held, as last read from or written to the DB.
+	 */
+	private final Map<Object, Object[]> snapshots = new WeakIdentityHashMap<>();
+
+	/*
+	 * The lazy columns of each entity that were not read yet, by field name
+	 */
+	private final Map<Object, Set<String>> unloadedColumns = new WeakIdentityHashMap<>();
 
 	private Connection conn;
 
 	private PojoUtils pojoUtils;
 
+	// when not null the session is write behind, inserts, updates, merges and deletes are queued here until flushed
+	private UnitOfWork unitOfWork = null;
+
+	// a read only session is stateless, it does not cache or attach what it reads and it does not write
+	private boolean readOnly = false;
+
+	// the entities mapped by the running query, counted for the factory's metrics
+	int rowsRead = 0;
+
+	// counts the statements of this session when the factory detects repeated queries
+	private RepeatedQueryDetector repeatedQueries = null;
+
+	// the session wrote since it last committed, the commit is stamped for read your writes
+	private boolean uncommittedWrites = false;
+
+	// the read your writes stamp the commits of this session are set on, null for the stamp of the committing thread
+	AtomicLong writeStamp = null;
+
+	// returns the connection's permit, or its replica's count of open sessions, when the connection is closed
+	private Runnable onClose;
+
 	// for granular control of commit and close of this db session when no transaction exists.
 	private boolean closeExternal;
 	private boolean commitExternal;
 
-    Db(Connection conn, JaquSessionFactory factory) {
+    Db(Connection conn, JaquSessionFactory factory, Runnable onClose) {
         this.conn = conn;
         this.factory = factory;
+        this.onClose = onClose;
         this.reEntrantCache = new CacheManager(factory);
         this.multiCallCache = new CacheManager(factory);
         this.closed = false;
@@ -102,11 +143,17 @@ public class Db implements AutoCloseable {
 	public <T> void insert(T t) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	t = checkSession(t);
         Class<?> clazz = t.getClass();
         TableDefinition<?> definition = define(clazz);
         if (null != definition.getInterceptor())
         	definition.getInterceptor().onInsert(t);
+        if (null != unitOfWork) {
+        	unitOfWork.add(t, UnitOfWork.Operation.INSERT);
+        	return;
+        }
         definition.insert(this, t);
         clearReEntrentCache();
     }
@@ -125,6 +172,8 @@ public class Db implements AutoCloseable {
 	public <T,X> X insertAndGetPK(T t) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	t = checkSession(t);
         Class<T> clazz = (Class<T>) t.getClass();
         TableDefinition<T> td = define(clazz);
@@ -181,6 +230,8 @@ public class Db implements AutoCloseable {
 	public <T> void insert(T ... tArray) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	for (T t : tArray) {
             insert(t);
         }
@@ -195,6 +246,8 @@ public class Db implements AutoCloseable {
     public <T> void insertAll(List<T> list) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
         for (T t : list) {
             insert(t);
         }
@@ -211,17 +264,25 @@ public class Db implements AutoCloseable {
 	public <T> void merge(T t) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	t = checkSession(t);
         Class<?> clazz = t.getClass();
         TableDefinition<?> definition = define(clazz);
         if (null != definition.getInterceptor())
         	definition.getInterceptor().onMerge(t);
+        if (null != unitOfWork) {
+        	unitOfWork.add(t, UnitOfWork.Operation.MERGE);
+        	return;
+        }
         definition.merge(this, t);
         clearReEntrentCache();
     }
 
     /**
-     * merge all the given objects of the same type. They are merged in the order in which they are iterated on within the list
+     * merge all the given objects, in the order in which they are iterated on within the list. Consecutive objects of the same type are merged
+     * together: existing rows are found with one query per chunk of primary keys, and objects with no relations are then written in one insert
+     * batch and one update batch. Objects of different types are not reordered, so listing the objects a row refers to before it keeps their order.
      *
      * @param <T>
      * @param list
@@ -229,14 +290,14 @@ public class Db implements AutoCloseable {
     public <T> void merge(List<T> list) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
-    	for (T t: list){
-    		merge(t);
-    	}
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
+    	mergeAll(list);
     	clearReEntrentCache();
     }
 
     /**
-     *  merge all the given objects of the same type. They are merged in the order in which they are given.
+     *  merge all the given objects. They are merged as in {@link #merge(List)}
      *
      * @param <T>
      * @param tArray
@@ -245,9 +306,9 @@ public class Db implements AutoCloseable {
 	public <T> void merge(T ... tArray) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
-    	for (T t: tArray){
-    		merge(t);
-    	}
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
+    	mergeAll(Arrays.asList(tArray));
     	clearReEntrentCache();
     }
 
@@ -264,10 +325,16 @@ public class Db implements AutoCloseable {
 	public <T> void delete(T t) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	if (null == factory.getPrimaryKey(t))
     		// if I don't have a primary key I can't delete the object, don't know how
     		return;
     	t = checkSession(t);
+    	if (null != unitOfWork) {
+    		unitOfWork.add(t, UnitOfWork.Operation.DELETE);
+    		return;
+    	}
     	Class<?> clazz = t.getClass();
     	TableDefinition<?> tdef = define(clazz);
     	tdef.delete(this, t);
@@ -275,7 +342,10 @@ public class Db implements AutoCloseable {
     }
 
     /**
-     * Delete all the given objects of the same type. Deletes in the order the given list is iterated upon.
+     * Delete all the given objects in the order given. Each run of consecutive objects of the same type is deleted by primary key chunks,
+     * "DELETE ... WHERE pk IN (...)", so objects should be ordered with the referring rows first, as they would be when deleted one by one.
+     * Relation table entries and cascaded children are removed the same way, without loading the children. Interceptors are called only when registered
+     * for {@link Event#DELETE}.
      * <b>Note: </b> This delete works for Entities, and objects with mapped primary keys. For a general from update use the SQL like format
      * <pre>
      * 	db.from(T).where()....delete();
@@ -287,14 +357,14 @@ public class Db implements AutoCloseable {
     public <T> void delete(List<T> list) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
-    	for (T t: list){
-    		delete(t);
-    	}
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
+    	deleteRuns(list);
     	clearReEntrentCache();
     }
 
     /**
-     * Delete all the given objects of the same type. Deletes in the order they given.
+     * Delete all the given objects. Deletes as {@link #delete(List)}
      * <b>Note: </b> This delete works for Entities, and objects with mapped primary keys. For a general from update use the SQL like format
      * <pre>
      * 	db.from(T).where()....delete();
@@ -307,9 +377,9 @@ public class Db implements AutoCloseable {
 	public <T> void delete(T ... tArray) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
-    	for (T t: tArray){
-    		delete(t);
-    	}
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
+    	deleteRuns(Arrays.asList(tArray));
     	clearReEntrentCache();
     }
 
@@ -325,6 +395,8 @@ public class Db implements AutoCloseable {
      * @return int - num of elements deleted
      */
     public <T> int deleteAll(Class<T> clazz) {
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	TableDefinition<?> definition = define(clazz);
     	return definition.deleteAll(this);
     }
@@ -344,6 +416,8 @@ public class Db implements AutoCloseable {
 	public <T> void update(T t) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	if (null == factory.getPrimaryKey(t))
     		// if I don't have a primary key I can't update the object, don't know how
     		return;
@@ -352,6 +426,10 @@ public class Db implements AutoCloseable {
         TableDefinition<?> definition = define(clazz);
         if (null != definition.getInterceptor())
         	definition.getInterceptor().onUpdate(t);
+        if (null != unitOfWork) {
+        	unitOfWork.add(t, UnitOfWork.Operation.UPDATE);
+        	return;
+        }
         definition.update(this, t);
         clearReEntrentCache();
     }
@@ -370,6 +448,8 @@ public class Db implements AutoCloseable {
     public <T> void update(List<T> list){
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	for (T t: list){
     		update(t);
     	}
@@ -391,6 +471,8 @@ public class Db implements AutoCloseable {
 	public <T> void update(T ... tArray){
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	for (T t: tArray){
     		update(t);
     	}
@@ -460,6 +542,43 @@ public class Db implements AutoCloseable {
     	return select.select();
     }
 
+    /**
+     * Returns the entity with the given primary key. An entity already fetched by this session is returned as is, without going to the database.
+     *
+     * @param <T>
+     * @param clazz - the entity type
+     * @param primaryKey
+     * @return T or null if there is no such entity
+     * @throws JaquError when the entity does not have a single column primary key
+     */
+    public <T> T find(Class<T> clazz, Object primaryKey) {
+    	if (this.closed)
+    		throw new JaquError(SESSION_IS_CLOSED);
+    	if (null == primaryKey)
+    		return null;
+    	T result = define(clazz).find(this, Collections.singletonList(primaryKey)).get(0);
+    	clearReEntrentCache();
+    	return result;
+    }
+
+    /**
+     * Returns the entities with the given primary keys, in the order of the keys. Entities already fetched by this session are returned as is,
+     * the others are selected together with one statement per chunk of keys.
+     *
+     * @param <T>
+     * @param clazz - the entity type
+     * @param primaryKeys
+     * @return List&lt;T&gt; with an entry for each key, null where there is no such entity
+     * @throws JaquError when the entity does not have a single column primary key
+     */
+    public <T> List<T> findAll(Class<T> clazz, Collection<?> primaryKeys) {
+    	if (this.closed)
+    		throw new JaquError(SESSION_IS_CLOSED);
+    	List<T> result = define(clazz).find(this, primaryKeys);
+    	clearReEntrentCache();
+    	return result;
+    }
+
     /**
      * Returns a single object based on the given class built from the given result set.
      * <b>Note: </b> The resultSet is not closed by this method, you need to close it yourself!
@@ -544,6 +663,8 @@ public class Db implements AutoCloseable {
     public <T> void createTable(Class<T> clazz) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
         define(clazz);
     }
 
@@ -578,6 +699,85 @@ public class Db implements AutoCloseable {
     	return this;
     }
 
+    /**
+     * Turns write behind on or off for this session. In write behind, insert, update, merge and delete are not executed when called, they are queued
+     * and written together on {@link #flush()} or {@link #commit()}. Repeated calls on the same object are written once, tables are written in foreign key
+     * order and each table's objects are sent as JDBC batches where the table allows it. Changes still queued on {@link #rollback()} or close are dropped.
+     * <p>
+     * <b>Note:</b> queries do not see the queued changes until they are flushed. Turning write behind off flushes what is queued.
+     *
+     * @param writeBehind
+     * @return Db
+     */
+    public Db applyWriteBehind(boolean writeBehind) {
+    	if (this.closed)
+    		throw new JaquError(SESSION_IS_CLOSED);
+    	if (writeBehind && this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
+    	if (writeBehind) {
+    		if (null == unitOfWork)
+    			unitOfWork = new UnitOfWork();
+    	}
+    	else if (null != unitOfWork) {
+    		flush();
+    		unitOfWork = null;
+    	}
+    	return this;
+    }
+
+    /**
+     * true if this session is write behind
+     * @see #applyWriteBehind(boolean)
+     * @return boolean
+     */
+    public boolean isWriteBehind() {
+    	return null != unitOfWork;
+    }
+
+    /**
+     * true if this is a stateless read only session
+     * @see JaquSessionFactory#getStatelessSession()
+     * @return boolean
+     */
+    public boolean isReadOnly() {
+    	return readOnly;
+    }
+
+    /*
+     * turn this session into a stateless read only session. The connection is marked read only until the session is closed.
+     */
+    Db applyReadOnly() {
+    	try {
+    		conn.setReadOnly(true);
+    	}
+    	catch (SQLException e) {
+    		throw new JaquError(e, e.getMessage());
+    	}
+    	this.readOnly = true;
+    	return this;
+    }
+
+    /**
+     * Writes the changes queued by a write behind session to the DB, without committing them. Does nothing when the session is not write behind.
+     * @see #applyWriteBehind(boolean)
+     */
+    public void flush() {
+    	if (this.closed)
+    		throw new JaquError(SESSION_IS_CLOSED);
+    	if (null == unitOfWork || unitOfWork.isEmpty())
+    		return;
+    	UnitOfWork work = unitOfWork;
+    	// writes made while flushing, such as cascades to related objects, are executed right away
+    	unitOfWork = null;
+    	try {
+    		work.flush(this);
+    	}
+    	finally {
+    		unitOfWork = work;
+    		reEntrantCache.clearReEntrent();
+    	}
+    }
+
     /**
      * Rollback the underlying connection.
 	 * <p>
@@ -586,6 +786,13 @@ public class Db implements AutoCloseable {
     public void rollback() {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (null != unitOfWork)
+    		unitOfWork.clear();
+    	// the rows are back to their committed values, the snapshots no longer describe them
+    	snapshots.clear();
+    	uncommittedWrites = false;
+    	if (null != repeatedQueries)
+    		repeatedQueries.reset();
 		try {
 			try {
 				if (null != this.factory.tm && null != this.factory.tm.getTransaction() && 
@@ -623,6 +830,9 @@ public class Db implements AutoCloseable {
 	public void commit() {
 		if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+		flush();
+		if (null != repeatedQueries)
+			repeatedQueries.reset();
 		try {
 			try {
 				if (commitExternal)
@@ -644,6 +854,13 @@ public class Db implements AutoCloseable {
 		catch (SQLException e) {
 			// can't commit nothing can be done!!!
 		}
+		finally {
+			// the writes are committed, or handed to whoever commits them, replicas may not have them yet
+			if (uncommittedWrites) {
+				uncommittedWrites = false;
+				factory.wrote(writeStamp);
+			}
+		}
 	}
 
     /**
@@ -673,6 +890,9 @@ public class Db implements AutoCloseable {
         		if (null != pojoUtils) {
 					pojoUtils.clean();
 				}
+        		if (readOnly)
+        			// the connection may be pooled, it goes back as it came
+        			conn.setReadOnly(false);
         		conn.close();
         		if (StatementLogger.isDebugEnabled())
         			StatementLogger.debug("closing connection " + conn.toString());
@@ -706,16 +926,20 @@ public class Db implements AutoCloseable {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
     	
+    	StatementTimer timer = StatementTimer.start(this, sql, null == args ? null : Arrays.asList(args));
     	try (PreparedStatement stmnt = this.prepare(sql)) {
     		if (null != args && 0 < args.length) {
 				for (int i = 0; i < args.length; i++){
 					stmnt.setObject(i + 1, args[i]); // +1 is because parameters in database APIs start with 1 not with 0
 				}
 	    	}
-    		if (factory.isShowSQL())
-    			StatementLogger.select(sql);
+    		timer.prepared();
+    		showSQL(Type.SELECT, sql, null == args || 0 == args.length ? null : Arrays.asList(args));
 	    	try (ResultSet rs = stmnt.executeQuery()) {
-	    		return processor.processResult(rs);
+	    		timer.executed();
+	    		T result = processor.processResult(rs);
+	    		timer.mapped();
+	    		return result;
 	    	}
     	}
         catch (SQLException e) {
@@ -736,10 +960,7 @@ public class Db implements AutoCloseable {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
     	
-    	if (factory.isShowSQL()) {
-			StatementLogger.select(sql);
-    	}
-    	
+    	// the statement is logged by the query it runs
     	return executeQuery(sql, rs -> {
     		if (null != rs) {
         		return selectByResultSet(rs, clazz);
@@ -790,17 +1011,24 @@ public class Db implements AutoCloseable {
     public int executeUpdate(String preparedStmnt, Object ... args) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
     	
+    	StatementTimer timer = StatementTimer.start(this, preparedStmnt, null == args ? null : Arrays.asList(args));
     	try (PreparedStatement stmnt = this.prepare(preparedStmnt)) {
     		if (null != args && 0 < args.length) {
 				for (int i = 0; i < args.length; i++){
 					stmnt.setObject(i + 1, args[i]); // +1 is because parameters in database APIs start with 1 not with 0
 				}
 	    	}
+    		timer.prepared();
     		this.multiCallCache.clearReEntrent();
-    		if (factory.isShowSQL())
-    			StatementLogger.update(preparedStmnt);
-	    	return stmnt.executeUpdate();
+    		showSQL(Type.UPDATE, preparedStmnt, null == args || 0 == args.length ? null : Arrays.asList(args));
+	    	int rows = stmnt.executeUpdate();
+	    	timer.executed();
+	    	timer.written(rows);
+	    	wrote();
+	    	return rows;
     	}
 		catch (SQLException e) {
 			throw new JaquError(e, e.getMessage());
@@ -854,6 +1082,9 @@ public class Db implements AutoCloseable {
 	 * list merging.
 	 */
 	public <T> void addSession(T t) {
+		if (readOnly)
+			// a read only session does not attach what it reads
+			return;
 		try {
 			if (null != t.getClass().getAnnotation(Entity.class) || null != t.getClass().getAnnotation(MappedSuperclass.class)) {
 				// instrument this instance of the class
@@ -871,6 +1102,8 @@ public class Db implements AutoCloseable {
 	public PojoUtils pojoUtils() {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	if (this.readOnly)
+    		throw new JaquError(SESSION_IS_READ_ONLY);
 
 		if (null == this.pojoUtils)
 			this.pojoUtils = new PojoUtils(this);
@@ -1023,26 +1256,32 @@ public class Db implements AutoCloseable {
 
 		if (!Collection.class.isAssignableFrom(definition.field.getType()))
 			throw new JaquError("%s relation is not a collection type!!!", fieldName);
+		if (null != factory.getMetrics())
+			factory.getMetrics().lazyLoad(def.tableName, fieldName);
+		Object event = JaquEvents.beginLoad();
+		Object[] outer = enterLoad(myObject.getClass(), fieldName);
 		try {
-			List result = Utils.newArrayList();
-			for (Class<?> dataType : definition.relationDefinition.dataType) {
-				result.addAll(getRelationFromDb(definition, factory.getPrimaryKey(myObject), dataType));
-			}
-			if (definition.relationDefinition.dataType.length > 1 && null != definition.relationDefinition.orderByField) {
-				result.sort(new FieldComperator(definition.relationDefinition.dataType[0], definition.relationDefinition.orderByField));
-			}
+			List result;
+			if (definition.relationDefinition.dataType.length > 1)
+				result = getPolymorphicRelation(definition, factory.getPrimaryKey(myObject));
+			else
+				result = getRelationFromDb(definition, factory.getPrimaryKey(myObject), definition.relationDefinition.dataType[0]);
+			JaquEvents.commitLoad(event, def.tableName, fieldName, result.size());
 			if (definition.field.getType().isAssignableFrom(result.getClass()))
-				return new JaquList<>(result, this, definition, factory.getPrimaryKey(myObject));
+				return snapshotRelation(new JaquList<>(result, this, definition, factory.getPrimaryKey(myObject)));
 			else {
 				// only when the type is a Set type we will be here
 				HashSet<T> set = Utils.newHashSet();
 				set.addAll(result);
-				return new JaquSet<>(set, this, definition, factory.getPrimaryKey(myObject));
+				return snapshotRelation(new JaquSet<>(set, this, definition, factory.getPrimaryKey(myObject)));
 			}
 		}
 		catch (Exception e) {
 			throw new JaquError(e, e.getMessage());
 		}
+		finally {
+			exitLoad(outer);
+		}
 	}
 
 	/**
@@ -1082,33 +1321,108 @@ public class Db implements AutoCloseable {
 
 	<T> List<T> getRelationByRelationTable(FieldDefinition def, Object myPrimaryKey, Class<T> type){
 		TableDefinition<T> targetDef = define(type);
-		// for String primary keys do the following
-		String pk = (myPrimaryKey instanceof String) ? "'" + myPrimaryKey.toString() + "'" : myPrimaryKey.toString();
 		StatementBuilder builder = new StatementBuilder("SELECT target.* FROM ").append(targetDef.tableName).append(" target, ").append(def.relationDefinition.relationTableName);
-		builder.append(" rt where rt.").append(def.relationDefinition.relationFieldName).append("=").append(pk).append(" and rt.").append(def.relationDefinition.relationColumnName);
-		builder.append("= target.").append(targetDef.getPrimaryKeyFields().get(0).columnName);
+		builder.append(" rt where rt.").append(def.relationDefinition.relationFieldName).append(" = ? and rt.").append(def.relationDefinition.relationColumnName);
+		builder.append(" = target.").append(targetDef.getPrimaryKeyFields().get(0).columnName);
 
 		if (null != def.relationDefinition.orderByColumn)
 			builder.append(" order by rt." + def.relationDefinition.orderByColumn + " " + def.relationDefinition.direction);
+
+		// the key is bound, so the statement is timed, counted and shaped like every other relation load
+		SQLStatement stat = new SQLStatement(this);
+		stat.setSQL(builder.toString());
+		stat.addParameter((myPrimaryKey instanceof java.util.UUID) ? myPrimaryKey.toString() : myPrimaryKey);
 		List<T> result = Utils.newArrayList();
-		ResultSet rs = null;
-		try {
-			if (factory.isShowSQL())
-				StatementLogger.info(builder.toString());
+		stat.executeQuery(rs -> {
+			while (rs.next())
+				result.add(targetDef.readRow(rs, this));
+			return null;
+		});
+		return result;
+	}
 
-        	rs = prepare(builder.toString()).executeQuery();
-            while (rs.next()) {
-                T item = targetDef.readRow(rs, this);
-                result.add(item);
-            }
-        }
-        catch (SQLException e) {
-            throw new JaquError(e, e.getMessage());
-        }
-        finally {
-            JdbcUtils.closeSilently(rs);
-        }
-        return result;
+	/**
+	 * Returns the objects of a relation declaring several types. The rows of all the types are selected in one UNION ALL statement and ordered by the
+	 * database. Each row carries the index of its type in a tag column and is read by that type's definition.
+	 *
+	 * @param def
+	 * @param myPrimaryKey
+	 * @return List&lt;Object&gt;
+	 */
+	List<Object> getPolymorphicRelation(FieldDefinition def, Object myPrimaryKey) {
+		TableDefinition.RelationDefinition relation = def.relationDefinition;
+		TableDefinition<?>[] types = new TableDefinition<?>[relation.dataType.length];
+		// the union selects the columns of all the types by name, a type that does not have a column selects a null in its place
+		Map<String, FieldDefinition> columns = new LinkedHashMap<>();
+		for (int i = 0; i < types.length; i++) {
+			types[i] = define(relation.dataType[i]);
+			for (FieldDefinition field : types[i].getSelectFields())
+				columns.putIfAbsent(field.columnName.toUpperCase(), field);
+		}
+		String orderBy = null;
+		if (null == relation.relationTableName && null != relation.orderByField) {
+			FieldDefinition orderField = types[0].getDefinitionForField(relation.orderByField);
+			if (null == orderField)
+				throw new JaquError("%s does not have a field named %s to order by", relation.dataType[0].getName(), relation.orderByField);
+			orderBy = orderField.columnName + ("DESC".equals(relation.direction) ? " DESC" : "");
+		}
+		else if (null != relation.relationTableName && null != relation.orderByColumn)
+			orderBy = UNION_ORDER + " " + relation.direction;
+
+		Object key = (myPrimaryKey instanceof java.util.UUID) ? myPrimaryKey.toString() : myPrimaryKey;
+		SQLStatement stat = new SQLStatement(this);
+		StatementBuilder buff = new StatementBuilder();
+		for (int i = 0; i < types.length; i++) {
+			TableDefinition<?> type = types[i];
+			Map<String, FieldDefinition> typeColumns = Utils.newHashMap();
+			for (FieldDefinition field : type.getSelectFields())
+				typeColumns.put(field.columnName.toUpperCase(), field);
+			if (i > 0)
+				buff.append(" UNION ALL ");
+			buff.append("SELECT ").append(i).append(" AS ").append(UNION_TAG);
+			for (Map.Entry<String, FieldDefinition> column : columns.entrySet()) {
+				FieldDefinition field = typeColumns.get(column.getKey());
+				buff.append(", ");
+				if (null != field)
+					buff.append("T.").append(field.columnName);
+				else if (null != column.getValue().dataType)
+					buff.append(factory.getDialect().getTypedNull(column.getValue().dataType));
+				else
+					buff.append("NULL");
+				buff.append(" AS ").append(column.getValue().columnName);
+			}
+			if (null == relation.relationTableName) {
+				FieldDefinition fkField = type.getDefinitionForField(relation.relationFieldName);
+				// a two sided relationship has the column of the field holding the other side, a one sided relationship names the column itself
+				String fkColumn = (null != fkField) ? fkField.columnName : relation.relationFieldName;
+				buff.append(" FROM ").append(type.tableName).append(" T WHERE T.").append(fkColumn).append(" = ?");
+			}
+			else {
+				if (null != orderBy)
+					buff.append(", rt.").append(relation.orderByColumn).append(" AS ").append(UNION_ORDER);
+				buff.append(" FROM ").append(type.tableName).append(" T, ").append(relation.relationTableName).append(" rt WHERE rt.")
+					.append(relation.relationFieldName).append(" = ? AND rt.").append(relation.relationColumnName).append(" = T.")
+					.append(type.getPrimaryKeyFields().get(0).columnName);
+			}
+			if (InheritedType.DISCRIMINATOR == type.inheritedType)
+				buff.append(" AND T.").append(type.discriminatorColumn).append(" = '").append(type.discriminatorValue).append('\'');
+			stat.addParameter(key);
+		}
+		if (null != orderBy)
+			buff.append(" ORDER BY ").append(orderBy);
+		stat.setSQL(buff.toString());
+		stat.showSQL(Type.SELECT);
+
+		List<Object> result = Utils.newArrayList();
+		stat.executeQuery(rs -> {
+			while (rs.next()) {
+				Object item = types[rs.getInt(UNION_TAG)].readRow(rs, this);
+				addSession(item);
+				result.add(item);
+			}
+			return null;
+		});
+		return result;
 	}
 
 	/**
@@ -1256,11 +1570,13 @@ public class Db implements AutoCloseable {
 	int executeUpdate(boolean cleanRenentrent, String sql) {
     	if (this.closed)
     		throw new JaquError(SESSION_IS_CLOSED);
+    	StatementTimer timer = StatementTimer.start(this, sql);
     	try (Statement stat = conn.createStatement()) {
-        	if (factory.isShowSQL()) {
-    			StatementLogger.update(sql);
-        	}
+        	showSQL(Type.UPDATE, sql, null);
             int updateCount = stat.executeUpdate(sql);
+            timer.executed();
+            timer.written(updateCount);
+            wrote();
             if (cleanRenentrent)
             	this.multiCallCache.clearReEntrent();
             return updateCount;
@@ -1270,6 +1586,219 @@ public class Db implements AutoCloseable {
         }
     }
 
+	/*
+	 * the meta data of the underlying connection, used when checking the schema
+	 */
+	DatabaseMetaData getMetaData() {
+		try {
+			return conn.getMetaData();
+		}
+		catch (SQLException e) {
+			throw new JaquError(e, e.getMessage());
+		}
+	}
+
+	/*
+	 * keep the current column values of the entity as its dirty checking snapshot
+	 */
+	void snapshot(Object obj) {
+		snapshots.put(obj, define(obj.getClass()).snapshotValues(this, obj));
+	}
+
+	/*
+	 * keep the current elements of the relation collection as its dirty checking snapshot
+	 */
+	<C extends Collection<?>> C snapshotRelation(C relation) {
+		if (factory.isDirtyChecking() && !readOnly)
+			snapshots.put(relation, relation.toArray());
+		return relation;
+	}
+
+	/*
+	 * remember that the lazy column of the entity was not read. A read only session does not load lazy columns so it keeps nothing.
+	 */
+	void markUnloaded(Object obj, String fieldName) {
+		if (!readOnly)
+			unloadedColumns.computeIfAbsent(obj, k -> new HashSet<>()).add(fieldName);
+	}
+
+	/*
+	 * true when the lazy column of the entity was not read yet
+	 */
+	boolean isUnloaded(Object obj, String fieldName) {
+		Set<String> unloaded = unloadedColumns.get(obj);
+		return null != unloaded && unloaded.contains(fieldName);
+	}
+
+	/**
+	 * Reads a lazy column of the entity, the first time it is accessed. Called by the getter of a field annotated with
+	 * {@link com.centimia.orm.jaqu.annotation.Lazy}, you should not need to call it directly.
+	 *
+	 * @param fieldName
+	 * @param obj
+	 * @return Object the value of the column, null when it was already read or the entity was not read by this session
+	 */
+	public Object getLazyColumn(String fieldName, Object obj) {
+		if (this.closed)
+			throw new JaquError(SESSION_IS_CLOSED);
+		Set<String> unloaded = unloadedColumns.get(obj);
+		if (null == unloaded || !unloaded.remove(fieldName))
+			return null;
+		if (unloaded.isEmpty())
+			unloadedColumns.remove(obj);
+		TableDefinition<?> def = define(obj.getClass());
+		if (null != factory.getMetrics())
+			factory.getMetrics().lazyLoad(def.tableName, fieldName);
+		Object event = JaquEvents.beginLoad();
+		Object[] outer = enterLoad(obj.getClass(), fieldName);
+		try {
+			Object value = def.readLazyColumn(this, obj, fieldName);
+			JaquEvents.commitLoad(event, def.tableName, fieldName, 1);
+			return value;
+		}
+		finally {
+			exitLoad(outer);
+		}
+	}
+
+	/*
+	 * the session wrote. Once the write is committed the thread reads from the primary for a while, a connection committing every statement
+	 * has committed it already
+	 */
+	void wrote() {
+		if (!factory.hasReplicas())
+			return;
+		boolean autoCommit;
+		try {
+			autoCommit = conn.getAutoCommit();
+		}
+		catch (SQLException e) {
+			autoCommit = false;
+		}
+		if (autoCommit)
+			factory.wrote(writeStamp);
+		else
+			uncommittedWrites = true;
+	}
+
+	/*
+	 * logs the statement when the factory shows SQL, through the factory's asynchronous log when it has one
+	 */
+	void showSQL(Type type, String sql, List<?> params) {
+		if (!factory.isShowSQL())
+			return;
+		AsyncSQLLog log = factory.getAsyncSQLLog();
+		if (null != log)
+			log.offer(type, sql, params);
+		else
+			StatementLogger.log(type, SQLStatement.logSQL(sql, null == params ? null : params.toArray()));
+	}
+
+	/*
+	 * counts a statement about to run when the factory detects repeated queries, counting starts over when the session commits or rolls back
+	 */
+	void countStatement(String sql) {
+		if (0 == factory.getRepeatedQueryThreshold())
+			return;
+		if (null == repeatedQueries)
+			repeatedQueries = new RepeatedQueryDetector();
+		repeatedQueries.executed(factory, sql);
+	}
+
+	/*
+	 * the statements run until exitLoad load the field of the entity, returns the relation loaded before
+	 */
+	Object[] enterLoad(Class<?> entity, String field) {
+		if (0 == factory.getRepeatedQueryThreshold())
+			return null;
+		if (null == repeatedQueries)
+			repeatedQueries = new RepeatedQueryDetector();
+		return repeatedQueries.enter(entity, field);
+	}
+
+	void exitLoad(Object[] outer) {
+		if (null != outer && null != repeatedQueries)
+			repeatedQueries.exit(outer);
+	}
+
+	/*
+	 * returns the dirty checking snapshot of the entity or relation collection, null if it has none
+	 */
+	Object[] getSnapshot(Object obj) {
+		return snapshots.get(obj);
+	}
+
+	/*
+	 * true when the relation collection holds the very same elements it held when its snapshot was taken
+	 */
+	boolean isRelationUnchanged(Collection<?> relation) {
+		Object[] snapshot = snapshots.get(relation);
+		if (null == snapshot || snapshot.length != relation.size())
+			return false;
+		int i = 0;
+		for (Object element: relation) {
+			if (element != snapshot[i++])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * merge the objects in the order given, each run of consecutive objects of the same table definition as a set. Objects of different
+	 * types are not reordered, so a row is written after the rows the objects before it refer to
+	 */
+	@SuppressWarnings("unchecked")
+	private void mergeAll(Collection<?> objects) {
+		TableDefinition<?> runDefinition = null;
+		List<Object> run = Utils.newArrayList();
+		for (Object t : objects) {
+			t = checkSession(t);
+			TableDefinition<?> definition = define(t.getClass());
+			if (null == unitOfWork && definition != runDefinition && !run.isEmpty()) {
+				runDefinition.mergeBatch(this, run);
+				run = Utils.newArrayList();
+			}
+			if (null != definition.getInterceptor())
+				definition.getInterceptor().onMerge(t);
+			if (null != unitOfWork)
+				unitOfWork.add(t, UnitOfWork.Operation.MERGE);
+			else {
+				runDefinition = definition;
+				run.add(t);
+			}
+		}
+		if (!run.isEmpty())
+			runDefinition.mergeBatch(this, run);
+	}
+
+	/*
+	 * delete the objects in the order given, each run of consecutive objects of the same table definition as a set. Objects of different
+	 * types are not reordered, so a row is deleted before the rows the objects after it refer to
+	 */
+	private void deleteRuns(Collection<?> objects) {
+		TableDefinition<?> runDefinition = null;
+		List<Object> run = Utils.newArrayList();
+		for (Object t : objects) {
+			if (null == factory.getPrimaryKey(t))
+				// if I don't have a primary key I can't delete the object, don't know how
+				continue;
+			t = checkSession(t);
+			if (null != unitOfWork) {
+				unitOfWork.add(t, UnitOfWork.Operation.DELETE);
+				continue;
+			}
+			TableDefinition<?> definition = define(t.getClass());
+			if (definition != runDefinition && !run.isEmpty()) {
+				runDefinition.deleteBatch(this, run);
+				run = Utils.newArrayList();
+			}
+			runDefinition = definition;
+			run.add(t);
+		}
+		if (!run.isEmpty())
+			runDefinition.deleteBatch(this, run);
+	}
+
 	private void clearReEntrentCache() {
 		StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
 		if (null != stackTrace[3] && stackTrace[3].getClassName().indexOf(COM_CENTIMIA_ORM) == -1)
@@ -1359,6 +1888,13 @@ public class Db implements AutoCloseable {
 		reEntrantCache.clearReEntrent();
 		multiCallCache.clearReEntrent();
 		tokens.clear();
+		snapshots.clear();
+		unitOfWork = null;
+		repeatedQueries = null;
+		if (null != onClose) {
+			onClose.run();
+			onClose = null;
+		}
 	}
 
 	/**
@@ -24,6 +24,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.temporal.TemporalAccessor;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import com.centimia.orm.jaqu.dialect.DB2Dialect;
 import com.centimia.orm.jaqu.dialect.Functions;
@@ -95,13 +97,23 @@ public enum Dialect {
 	}
 
 	/**
-	 * Check if the table object (given by name) exists in the DB
-	 * @param tableName
+	 * Read the tables of the schema and their columns
+	 * @param db
+	 * @return SchemaCatalog
+	 * @throws SQLException
+	 */
+	SchemaCatalog readCatalog(Db db) throws SQLException {
+		return new SchemaCatalog(dialect.readCatalog(db));
+	}
+
+	/**
+	 * Read the indices of the tables of the schema
 	 * @param db
-	 * @return boolean true if given table name exists in the DB
+	 * @return Map&lt;String, Map&lt;String, List&lt;String&gt;&gt;&gt;
+	 * @throws SQLException
 	 */
-	boolean checkTableExists(String tableName, Db db) {
-		return dialect.checkTableExists(tableName, db);
+	Map<String, Map<String, List<String>>> readIndices(Db db) throws SQLException {
+		return dialect.readIndices(db);
 	}
 
 	/**
@@ -116,18 +128,6 @@ public enum Dialect {
 		return dialect.createDiscrimantorColumn(tableName, discriminatorName);
 	}
 
-	/**
-	 * Checks if the discriminator column exists.
-	 *
-	 * @param joinTableName
-	 * @param discriminatorName
-	 * @param db
-	 * @return boolean
-	 */
-	boolean checkDiscriminatorExists(String joinTableName, String discriminatorName, Db db) {
-		return dialect.checkDiscriminatorExists(joinTableName, discriminatorName, db);
-	}
-
 	/**
 	 * Returns a String representing the column type of an Identity field in this Dialect
 	 * @return String
@@ -232,4 +232,26 @@ public enum Dialect {
 	public String getSequenceQuery(String seqName) {
 		return dialect.getSequnceQuery(seqName);
 	}
+
+	/**
+	 * Returns the single statement upsert of this dialect, or null if the dialect does not have one.
+	 *
+	 * @param tableName
+	 * @param primaryKeys
+	 * @param columns
+	 * @return String
+	 */
+	String getMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		return dialect.createMergeStatement(tableName, primaryKeys, columns);
+	}
+
+	/**
+	 * Returns a null typed as the given data type in this dialect
+	 *
+	 * @param dataType
+	 * @return String
+	 */
+	String getTypedNull(String dataType) {
+		return dialect.getTypedNull(dataType);
+	}
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+/**
+ * The mapping of an entity class as recorded by the post compile enhancer. For every {@link com.centimia.orm.jaqu.annotation.Entity} and
+ * {@link com.centimia.orm.jaqu.annotation.MappedSuperclass} it enhances the enhancer writes a class named [className]$JaquMetadata implementing
+ * this interface, which the session factory loads when it defines the table instead of scanning the class and its annotations.
+ * <p>
+ * <b>Note:</b> This interface is implemented by generated code only. When a class has no metadata, or its metadata no longer matches the class,
+ * the class is mapped by reflection.
+ *
+ * @author Shai Bentin
+ */
+public interface EntityMetadata {
+
+	/**
+	 * Returns the names of the persisted fields declared by the class, in declaration order. Static, final and transient fields and fields
+	 * annotated {@link com.centimia.orm.jaqu.annotation.Transient} are not listed.
+	 *
+	 * @return String[]
+	 */
+	String[] fields();
+
+	/**
+	 * Returns, for each of the {@link #fields()}, the simple names of the JaQu annotations present on the field separated by a space.
+	 *
+	 * @return String[]
+	 */
+	String[] annotations();
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The default {@link JaquMetrics}. Keeps lock free latency histograms and counters, which are read through {@link JaquMetricsMXBean} and can be
+ * published to the platform MBean server under <code>com.centimia.orm.jaqu:type=Metrics,name=[name]</code>.
+ *
+ * @author Shai Bentin
+ */
+public class HistogramMetrics implements JaquMetrics, JaquMetricsMXBean {
+
+	private static final String NO_TABLE = "";
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LatencyHistogram prepare = new LatencyHistogram();
+	private final LatencyHistogram execute = new LatencyHistogram();
+	private final LatencyHistogram mapping = new LatencyHistogram();
+	private final Map<Kind, LongAdder> byKind = new EnumMap<>(Kind.class);
+	private final Map<String, LongAdder> byTable = new ConcurrentHashMap<>();
+	private final LongAdder rowsRead = new LongAdder();
+	private final LongAdder rowsWritten = new LongAdder();
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	private final LongAdder lazyLoads = new LongAdder();
+	private ObjectName objectName;
+
+	public HistogramMetrics() {
+		// all kinds exist up front so the map is only read
+		for (Kind kind : Kind.values())
+			byKind.put(kind, new LongAdder());
+	}
+
+	/**
+	 * Publishes these metrics to the platform MBean server.
+	 *
+	 * @param name - the name of the factory, unique in the JVM
+	 * @return HistogramMetrics
+	 * @throws JaquError when the MBean can not be registered
+	 */
+	public synchronized HistogramMetrics register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName registered = new ObjectName("com.centimia.orm.jaqu:type=Metrics,name=" + ObjectName.quote(name));
+			server.registerMBean(this, registered);
+			this.objectName = registered;
+			return this;
+		}
+		catch (JMException e) {
+			throw new JaquError(e, "Unable to register metrics %s - %s", name, e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes these metrics from the platform MBean server, if they were published.
+	 */
+	public synchronized void unregister() {
+		if (null == objectName)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+		}
+		catch (JMException e) {
+			StatementLogger.error(String.format("Unable to unregister metrics %s - %s", objectName, e.getMessage()));
+		}
+		objectName = null;
+	}
+
+	/*
+	 * @see com.centimia.orm.jaqu.JaquMetrics#statement(com.centimia.orm.jaqu.JaquMetrics.Kind, java.lang.String, long, long, long, int)
+	 */
+	@Override
+	public void statement(Kind kind, String table, long prepareNanos, long executeNanos, long mappingNanos, int rows) {
+		latency.record(prepareNanos + executeNanos + mappingNanos);
+		prepare.record(prepareNanos);
+		execute.record(executeNanos);
+		if (Kind.SELECT == kind) {
+			mapping.record(mappingNanos);
+			rowsRead.add(rows);
+		}
+		else if (rows > 0)
+			rowsWritten.add(rows);
+		byKind.get(kind).increment();
+		byTable.computeIfAbsent(null == table ? NO_TABLE : table, t -> new LongAdder()).increment();
+	}
+
+	/*
+	 * @see com.centimia.orm.jaqu.JaquMetrics#cacheHit(java.lang.String)
+	 */
+	@Override
+	public void cacheHit(String table) {
+		cacheHits.increment();
+	}
+
+	/*
+	 * @see com.centimia.orm.jaqu.JaquMetrics#cacheMiss(java.lang.String)
+	 */
+	@Override
+	public void cacheMiss(String table) {
+		cacheMisses.increment();
+	}
+
+	/*
+	 * @see com.centimia.orm.jaqu.JaquMetrics#lazyLoad(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void lazyLoad(String table, String field) {
+		lazyLoads.increment();
+	}
+
+	@Override
+	public long getStatements() {
+		return latency.count();
+	}
+
+	@Override
+	public Map<String, Long> getStatementsByKind() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<Kind, LongAdder> entry : byKind.entrySet())
+			result.put(entry.getKey().name(), entry.getValue().sum());
+		return result;
+	}
+
+	@Override
+	public Map<String, Long> getStatementsByTable() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, LongAdder> entry : byTable.entrySet())
+			result.put(entry.getKey(), entry.getValue().sum());
+		return result;
+	}
+
+	@Override
+	public long getRowsRead() {
+		return rowsRead.sum();
+	}
+
+	@Override
+	public long getRowsWritten() {
+		return rowsWritten.sum();
+	}
+
+	@Override
+	public long getCacheHits() {
+		return cacheHits.sum();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return cacheMisses.sum();
+	}
+
+	@Override
+	public long getLazyLoads() {
+		return lazyLoads.sum();
+	}
+
+	@Override
+	public double getMeanLatency() {
+		return latency.meanMillis();
+	}
+
+	@Override
+	public double getMedianLatency() {
+		return latency.percentileMillis(0.5);
+	}
+
+	@Override
+	public double get99thPercentileLatency() {
+		return latency.percentileMillis(0.99);
+	}
+
+	@Override
+	public double getMaxLatency() {
+		return latency.maxMillis();
+	}
+
+	@Override
+	public double getMeanPrepareTime() {
+		return prepare.meanMillis();
+	}
+
+	@Override
+	public double getMeanExecuteTime() {
+		return execute.meanMillis();
+	}
+
+	@Override
+	public double getMeanMappingTime() {
+		return mapping.meanMillis();
+	}
+
+	@Override
+	public long[] getLatencyHistogram() {
+		return latency.counts();
+	}
+
+	@Override
+	public void reset() {
+		latency.reset();
+		prepare.reset();
+		execute.reset();
+		mapping.reset();
+		for (LongAdder adder : byKind.values())
+			adder.reset();
+		byTable.clear();
+		rowsRead.reset();
+		rowsWritten.reset();
+		cacheHits.reset();
+		cacheMisses.reset();
+		lazyLoads.reset();
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs units of work on an executor, each on a session and connection of its own, and returns their result as a {@link CompletableFuture}.
+ * Independent queries submitted together run side by side, so reading them takes as long as the slowest and not as long as all of them.
+ * <pre>
+ * CompletableFuture&lt;List&lt;Person&gt;&gt; persons = factory.async().query(db -&gt; db.from(new Person()).select());
+ * CompletableFuture&lt;List&lt;Phone&gt;&gt; phones = factory.async().query(db -&gt; db.from(new Phone()).select());
+ * CompletableFuture.allOf(persons, phones).join();
+ * </pre>
+ * The number of units of work running or queued is bounded, when it is reached submitting waits for one to complete. The session of a unit of
+ * work is closed when it completes, relations that are not loaded eagerly must be read within it. A unit of work should use the session it is
+ * given and not the session of its thread, and should not wait for other units of work submitted to the same executor.
+ *
+ * @see JaquSessionFactory#async()
+ * @author Shai Bentin
+ */
+public final class JaquAsync {
+
+	private final JaquSessionFactory factory;
+	private final Executor executor;
+	private final Semaphore permits;
+	private final int maxInFlight;
+
+	JaquAsync(JaquSessionFactory factory, Executor executor, int maxInFlight) {
+		this.factory = factory;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		this.permits = new Semaphore(maxInFlight, true);
+	}
+
+	/**
+	 * Run the reading unit of work on a session of its own. Nothing is committed.
+	 *
+	 * @param work - given the session, returns the result
+	 * @return CompletableFuture&lt;T&gt; - completed with the result or with the error the unit of work threw
+	 * @throws JaquError when interrupted while waiting for a unit of work to complete
+	 */
+	public <T> CompletableFuture<T> query(Function<Db, T> work) {
+		return submit(work, false);
+	}
+
+	/**
+	 * Run the unit of work on a session of its own and commit it. When the unit of work throws the session is rolled back. The commit counts as
+	 * a write of the submitting thread, whose read sessions are then opened on the primary (see {@link JaquSessionFactory#getReadSession()}).
+	 *
+	 * @param work - given the session, returns the result
+	 * @return CompletableFuture&lt;T&gt; - completed with the result once committed or with the error the unit of work threw
+	 * @throws JaquError when interrupted while waiting for a unit of work to complete
+	 */
+	public <T> CompletableFuture<T> write(Function<Db, T> work) {
+		return submit(work, true);
+	}
+
+	/**
+	 * @return int - the units of work running or queued
+	 */
+	public int getInFlight() {
+		return maxInFlight - permits.availablePermits();
+	}
+
+	/**
+	 * @return int - the number of units of work at most running or queued
+	 */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @return int - an estimate of the threads waiting to submit a unit of work
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	private <T> CompletableFuture<T> submit(Function<Db, T> work, boolean commit) {
+		try {
+			permits.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JaquError(e, "Interrupted while waiting to submit a unit of work");
+		}
+		CompletableFuture<T> future = new CompletableFuture<>();
+		// the writes are stamped for the submitting thread, which reads their result
+		AtomicLong writeStamp = commit ? factory.writeStamp() : null;
+		try {
+			executor.execute(() -> {
+				T result;
+				try {
+					result = run(work, commit, writeStamp);
+				}
+				catch (Throwable t) {
+					permits.release();
+					future.completeExceptionally(t);
+					return;
+				}
+				// the permit is free before anything waiting on the result runs
+				permits.release();
+				future.complete(result);
+			});
+		}
+		catch (RejectedExecutionException e) {
+			permits.release();
+			future.completeExceptionally(new JaquError(e, "The executor rejected the unit of work"));
+		}
+		return future;
+	}
+
+	private <T> T run(Function<Db, T> work, boolean commit, AtomicLong writeStamp) {
+		Db db = factory.newLocalSession();
+		db.writeStamp = writeStamp;
+		try {
+			T result = work.apply(db);
+			if (commit)
+				db.commit();
+			return result;
+		}
+		catch (RuntimeException | Error e) {
+			if (commit)
+				db.rollback();
+			throw e;
+		}
+		finally {
+			db.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+/**
+ * Emits JDK Flight Recorder events for statements, relations and lazy columns loaded on first access, and table definitions.
+ * <p>
+ * This is the Java 8 version, it records nothing. The jar is a multi release jar, on Java 11 and later the version under META-INF/versions/11 is
+ * loaded in its place and emits the events whenever a recording enables them. A begin method returns the started event, or null when the event is
+ * not recorded, and the matching commit method ignores a null event.
+ *
+ * @author Shai Bentin
+ */
+final class JaquEvents {
+
+	private JaquEvents() {}
+
+	static Object beginStatement() {
+		return null;
+	}
+
+	/**
+	 * @param event
+	 * @param kind - the {@link JaquMetrics.Kind} of the statement
+	 * @param sql - the statement with its literals replaced
+	 * @param table - the first table the statement names
+	 * @param rows - the rows mapped, or the update count
+	 * @param prepareNanos
+	 * @param executeNanos
+	 * @param mappingNanos
+	 */
+	static void commitStatement(Object event, String kind, String sql, String table, int rows, long prepareNanos, long executeNanos, long mappingNanos) {
+		// nothing is recorded before Java 11
+	}
+
+	static Object beginLoad() {
+		return null;
+	}
+
+	/**
+	 * @param event
+	 * @param table - the table of the entity holding the field
+	 * @param field
+	 * @param rows - the entities loaded into a relation, 1 for a column
+	 */
+	static void commitLoad(Object event, String table, String field, int rows) {
+		// nothing is recorded before Java 11
+	}
+
+	static Object beginDefine() {
+		return null;
+	}
+
+	/**
+	 * @param event
+	 * @param type - the class defined
+	 * @param table
+	 */
+	static void commitDefine(Object event, Class<?> type, String table) {
+		// nothing is recorded before Java 11
+	}
+}
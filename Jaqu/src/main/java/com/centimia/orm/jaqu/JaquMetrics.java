@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+/**
+ * Receives the statements a factory runs and what its sessions read from their caches. Register an implementation with
+ * {@link JaquSessionFactory#setMetrics(JaquMetrics)}, or use {@link JaquSessionFactory#enableMetrics(String)} for the default {@link HistogramMetrics}.
+ * <p>
+ * Methods are called on the thread running the session, once per statement, and must not block. Nothing is measured when no metrics are set.
+ *
+ * @author Shai Bentin
+ */
+public interface JaquMetrics {
+
+	/**
+	 * The kind of a statement, by its first keyword.
+	 */
+	enum Kind {
+		SELECT, INSERT, UPDATE, MERGE, DELETE, DDL, OTHER;
+
+		/**
+		 * Returns the kind of the given statement.
+		 * @param sql
+		 * @return Kind
+		 */
+		public static Kind of(String sql) {
+			int start = 0;
+			while (start < sql.length() && (Character.isWhitespace(sql.charAt(start)) || '(' == sql.charAt(start)))
+				start++;
+			int end = start;
+			while (end < sql.length() && Character.isLetter(sql.charAt(end)))
+				end++;
+			switch (sql.substring(start, end).toUpperCase()) {
+				case "SELECT": case "WITH": return SELECT;
+				case "INSERT": return INSERT;
+				case "UPDATE": return UPDATE;
+				case "MERGE": return MERGE;
+				case "DELETE": return DELETE;
+				case "CREATE": case "ALTER": case "DROP": case "TRUNCATE": return DDL;
+				default: return OTHER;
+			}
+		}
+	}
+
+	/**
+	 * A statement was run.
+	 *
+	 * @param kind
+	 * @param table - the first table the statement names, null when it names none
+	 * @param prepareNanos - time taken to prepare the statement and bind its parameters
+	 * @param executeNanos - time taken by the database to execute it
+	 * @param mappingNanos - time taken to map the result into objects, 0 for statements that write
+	 * @param rows - the rows mapped into entities by a query, or the update count of a statement that writes
+	 */
+	void statement(Kind kind, String table, long prepareNanos, long executeNanos, long mappingNanos, int rows);
+
+	/**
+	 * A row read from the database was already in the session's cache and was not mapped again.
+	 * @param table
+	 */
+	void cacheHit(String table);
+
+	/**
+	 * A row read from the database was not in the session's cache.
+	 * @param table
+	 */
+	void cacheMiss(String table);
+
+	/**
+	 * A relation or a lazy column was loaded on first access.
+	 *
+	 * @param table - the table of the entity holding the field
+	 * @param field
+	 */
+	void lazyLoad(String table, String field);
+}
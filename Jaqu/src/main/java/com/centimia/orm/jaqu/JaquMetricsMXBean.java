@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link HistogramMetrics}. Latencies are in milliseconds and cover the time from preparing a statement to the end of mapping its result.
+ *
+ * @author Shai Bentin
+ */
+public interface JaquMetricsMXBean {
+
+	/** @return the number of statements run */
+	long getStatements();
+
+	/** @return the number of statements run by {@link JaquMetrics.Kind} */
+	Map<String, Long> getStatementsByKind();
+
+	/** @return the number of statements run by the first table they name */
+	Map<String, Long> getStatementsByTable();
+
+	/** @return the rows mapped into entities */
+	long getRowsRead();
+
+	/** @return the rows inserted, updated or deleted */
+	long getRowsWritten();
+
+	/** @return the rows found in the session cache */
+	long getCacheHits();
+
+	/** @return the rows not found in the session cache */
+	long getCacheMisses();
+
+	/** @return the relations and lazy columns loaded on first access */
+	long getLazyLoads();
+
+	/** @return the mean latency of all statements */
+	double getMeanLatency();
+
+	/** @return the latency 50% of the statements are below, to the bucket's upper bound */
+	double getMedianLatency();
+
+	/** @return the latency 99% of the statements are below, to the bucket's upper bound */
+	double get99thPercentileLatency();
+
+	/** @return the longest latency seen */
+	double getMaxLatency();
+
+	/** @return the mean time taken to prepare a statement and bind its parameters */
+	double getMeanPrepareTime();
+
+	/** @return the mean time taken by the database to execute a statement */
+	double getMeanExecuteTime();
+
+	/** @return the mean time taken to map the result of a query */
+	double getMeanMappingTime();
+
+	/** @return the number of statements per latency bucket, bucket i counts the statements that took less than 2^i microseconds */
+	long[] getLatencyHistogram();
+
+	/**
+	 * Clears all counters.
+	 */
+	void reset();
+}
@@ -22,8 +22,23 @@ package com.centimia.orm.jaqu;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 import javax.sql.CommonDataSource;
 import javax.transaction.RollbackException;
@@ -43,6 +58,10 @@ public final class JaquSessionFactory {
 
 	private final ThreadLocal<Db> currentSession = new ThreadLocal<>();
 	private final Map<Class<?>, TableDefinition<?>> classMap;
+	// the definitions being registered, by class
+	private final Map<Class<?>, Registration> registrations = new ConcurrentHashMap<>();
+	// the registration each thread is waiting for, used to find threads waiting on each other
+	private final Map<Thread, Registration> waiting = new ConcurrentHashMap<>();
 
 	enum ACID_CONFIG {INTERNAL, EXTERNAL}
 
@@ -63,6 +82,31 @@ public final class JaquSessionFactory {
 	/** When true JaQu will output to log the sql statements it produces */
 	private boolean showSQL = false;
 
+	/** When true entities read or written in a session are snapshot and update writes only the changed columns */
+	private boolean dirtyChecking = false;
+
+	/** Receives the statements run by the sessions of this factory, nothing is measured when null */
+	private volatile JaquMetrics metrics;
+	private volatile SlowQueryLog slowQueryLog;
+	private volatile int repeatedQueryThreshold = 0;
+	private volatile Consumer<RepeatedQuery> repeatedQueryListener;
+	private volatile boolean failOnRepeatedQuery = false;
+	private volatile AsyncSQLLog asyncSQLLog;
+	private volatile JaquAsync async;
+	// the pool async() created when no executor was set, shut down when replaced
+	private ExecutorService defaultAsyncPool;
+	// when not null bounds the connections open at once
+	private volatile ConnectionGate connectionGate;
+	// when true getSession only returns the session of an enclosing inSession
+	private volatile boolean scopedSessions = false;
+	// when not null read sessions are opened on the replicas
+	private volatile ReplicaRouter replicas;
+	private volatile ToLongFunction<Connection> replicaLag;
+	private volatile long maxReplicaLagMillis;
+	private volatile long readYourWritesMillis = 1000;
+	// when the writes of the running thread were last committed, only kept while the factory has replicas
+	private final ThreadLocal<AtomicLong> lastWrite = ThreadLocal.withInitial(AtomicLong::new);
+
 	/**
 	 * Determines the isolation level for a single connection.<p>
 	 * <b>Available Isolations:</b><ol>
@@ -80,6 +124,13 @@ public final class JaquSessionFactory {
 	/** If set to false, JaQu will not attempt to create the table from the object and assume it exists */
 	boolean createTable = true;
 
+	/** When true JaQu runs no DDL, the tables of the entities it defines are compared with the database and the differences are reported */
+	private boolean validateSchema = false;
+
+	// the tables and columns of the schema, read when the first table is defined
+	private volatile SchemaCatalog catalog;
+	private final List<String> schemaDrift = new CopyOnWriteArrayList<>();
+
 	/** The underlying relational DB dialect. Default dialect is set to H2 */
 	Dialect dialect = Dialect.H2;
 
@@ -99,9 +150,9 @@ public final class JaquSessionFactory {
     	if (null == ds)
     		throw new JaquError("IllegalState - Missing valid datasource!!!");
     	this.dataSource = new DatasourceWrapper(ds);
-    	// This map is synchronized on put operations, within the @link{#define} process. The reason is that this map can be
-    	// updated by more then one thread and I don't want a situation where two threads update it at the same time with the same definition.
-    	classMap = Utils.newHashMap();
+    	// This map holds the completed definitions and is read without locking. A definition is registered by one thread while
+    	// other threads needing it wait for that registration only, see @link{#updateTableDefinition}.
+    	classMap = new ConcurrentHashMap<>();
 
     	// attempt auto strapping of the dialect
     	this.dialect = Dialect.getDialect(ds.getClass().getName());
@@ -136,11 +187,16 @@ public final class JaquSessionFactory {
 	    	 */
     		Db db = currentSession();
     		if (null == db) {
+    			if (scopedSessions)
+    				throw new JaquError("No session is bound to the running thread. With scoped sessions the work is run through inSession");
     			db = createConnection();
     			currentSession.set(db);
     		}
     		return db;
 		}
+    	catch (JaquError e) {
+    		throw e;
+    	}
 		catch (Exception e) {
 			throw convert(e);
 		}
@@ -161,6 +217,269 @@ public final class JaquSessionFactory {
     	return db;
     }
 
+    /**
+     * Runs the unit of work in a session of its own, which is the session of the running thread only while the unit of work runs. The session is
+     * committed when the unit of work returns and rolled back when it throws, then it is closed and the thread is left with the session it had before.
+     * <p>
+     * Unlike {@link #getSession()} the thread does not keep the session, or its connection, once the unit of work is done. This suits
+     * many short lived threads, such as virtual threads, see {@link #setScopedSessions(boolean)}.
+     *
+     * @param work - given the session, returns the result
+     * @return T - the result of the unit of work
+     */
+    public <T> T inSession(Function<Db, T> work) {
+    	Db outer = currentSession.get();
+    	Db db = newLocalSession();
+    	currentSession.set(db);
+    	try {
+    		T result = work.apply(db);
+    		db.commit();
+    		return result;
+    	}
+    	catch (RuntimeException | Error e) {
+    		db.rollback();
+    		throw e;
+    	}
+    	finally {
+    		try {
+    			db.close();
+    		}
+    		finally {
+    			if (null == outer)
+    				currentSession.remove();
+    			else
+    				currentSession.set(outer);
+    		}
+    	}
+    }
+
+    /**
+     * When true sessions are only bound to a thread by {@link #inSession(Function)}, and {@link #getSession()} outside of it throws a
+     * {@link JaquError} instead of opening a connection the thread would keep. Meant for virtual thread deployments, where every thread opening
+     * its own session would open as many connections. Default is false.
+     *
+     * @param scopedSessions
+     */
+    public JaquSessionFactory setScopedSessions(boolean scopedSessions) {
+    	this.scopedSessions = scopedSessions;
+    	return this;
+    }
+
+    /**
+     * @return boolean - true when sessions are only bound to a thread by {@link #inSession(Function)}
+     */
+    public boolean isScopedSessions() {
+    	return scopedSessions;
+    }
+
+    /**
+     * Bound the connections the sessions of this factory hold open at once. Opening a session while all are open waits, in the order the sessions
+     * were opened, until a session is closed and fails with a {@link JaquError} when none is closed within the timeout. Waiting does not hold
+     * a monitor, so waiting virtual threads do not pin their carrier threads. Zero removes the bound, sessions already open are not affected.
+     * The bound covers the connections to the primary only, read sessions opened on replicas by {@link #getReadSession()} are not counted.
+     * Default is no bound.
+     *
+     * @param maxConnections - the connections open at once, 0 for no bound
+     * @param timeoutMillis - how long opening a session waits for a connection
+     */
+    public JaquSessionFactory setMaxConnections(int maxConnections, long timeoutMillis) {
+    	if (maxConnections < 0)
+    		throw new JaquError("The maximum connections can not be negative, was %s", maxConnections);
+    	this.connectionGate = 0 == maxConnections ? null : new ConnectionGate(maxConnections, timeoutMillis);
+    	return this;
+    }
+
+    /**
+     * @return int - the maximum connections open at once, 0 when not bounded
+     */
+    public int getMaxConnections() {
+    	ConnectionGate gate = connectionGate;
+    	return null == gate ? 0 : gate.getMax();
+    }
+
+    /**
+     * @return int - the connections to the primary open by the sessions of this factory, 0 when not bounded
+     */
+    public int getOpenConnections() {
+    	ConnectionGate gate = connectionGate;
+    	return null == gate ? 0 : gate.getInUse();
+    }
+
+    /**
+     * @return int - an estimate of the sessions waiting for a connection, 0 when not bounded
+     */
+    public int getConnectionQueueLength() {
+    	ConnectionGate gate = connectionGate;
+    	return null == gate ? 0 : gate.getQueueLength();
+    }
+
+    /**
+     * @return long - the sessions that waited for a connection since the bound was set
+     */
+    public long getConnectionWaits() {
+    	ConnectionGate gate = connectionGate;
+    	return null == gate ? 0 : gate.getWaits();
+    }
+
+    /**
+     * @return long - the sessions that failed to get a connection within the timeout since the bound was set
+     */
+    public long getConnectionTimeouts() {
+    	ConnectionGate gate = connectionGate;
+    	return null == gate ? 0 : gate.getTimeouts();
+    }
+
+    /**
+     * Returns a new stateless, read only session on one of the replicas of this factory, see {@link #getStatelessSession()} and
+     * {@link #setReplicas(ReplicaSelection, CommonDataSource...)}. The session is opened on the primary when:
+     * <ul>
+     * <li>the factory has no replicas</li>
+     * <li>writes of the running thread were committed within the read your writes time, so it reads what it wrote. Writes submitted through
+     * {@link JaquAsync#write(Function)} count for the thread that submitted them</li>
+     * <li>no replica gave a connection or all lag too far behind</li>
+     * </ul>
+     * Connections to the replicas are not bounded by {@link #setMaxConnections(int, long)}. It is up to the caller to close the session.
+     *
+     * @return Db
+     */
+    public Db getReadSession() {
+    	ReplicaRouter router = replicas;
+    	if (null == router || wroteRecently())
+    		return getStatelessSession();
+    	ToLongFunction<Connection> lag = replicaLag;
+    	for (ReplicaRouter.Replica replica : router.candidates()) {
+    		Connection conn = null;
+    		try {
+    			conn = openConnection(replica.dataSource);
+    			if (null != lag) {
+    				long millis = lag.applyAsLong(conn);
+    				if (millis > maxReplicaLagMillis) {
+    					conn.close();
+    					router.down(replica, "lags " + millis + " milliseconds behind");
+    					continue;
+    				}
+    			}
+    			Db db = new Db(conn, this, replica.outstanding::decrementAndGet).applyReadOnly();
+    			replica.outstanding.incrementAndGet();
+    			return db;
+    		}
+    		catch (Exception e) {
+    			try {
+    				if (null != conn && !conn.isClosed())
+    					conn.close();
+    			}
+    			catch (SQLException ignore) {
+    				// the replica is left out anyway
+    			}
+    			router.down(replica, e.getMessage());
+    		}
+    	}
+    	return getStatelessSession();
+    }
+
+    /**
+     * Set the replicas {@link #getReadSession()} opens read sessions on. The datasource given to the constructor remains the primary, which
+     * all other sessions are opened on. No replicas routes all reads to the primary. Default is none.
+     *
+     * @param selection - how the replica of a read session is chosen
+     * @param replicas - the datasources of the replicas, expected either javax.sql.Datasource or javax.sql.XADatasource
+     */
+    public JaquSessionFactory setReplicas(ReplicaSelection selection, CommonDataSource ... replicas) {
+    	this.replicas = 0 == replicas.length ? null : new ReplicaRouter(replicas, selection);
+    	return this;
+    }
+
+    /**
+     * @return int - the number of replicas of this factory
+     */
+    public int getReplicaCount() {
+    	ReplicaRouter router = replicas;
+    	return null == router ? 0 : router.size();
+    }
+
+    /**
+     * Set the check of how far a replica lags behind the primary, called with the connection of every read session opened on a replica. A replica
+     * lagging more than the given time is left out for a while and the read session is opened on another. The check should be cheap, such as
+     * reading the replication delay the database reports. Default is no check.
+     *
+     * @param lag - given the connection to the replica returns its lag in milliseconds, null for no check
+     * @param maxLagMillis - the lag above which a replica is left out
+     */
+    public JaquSessionFactory setReplicaLag(ToLongFunction<Connection> lag, long maxLagMillis) {
+    	this.replicaLag = lag;
+    	this.maxReplicaLagMillis = maxLagMillis;
+    	return this;
+    }
+
+    /**
+     * Set how long after the writes of a thread are committed its read sessions are opened on the primary, so that it reads what it wrote even
+     * when the replicas lag behind. Writes of a connection that commits every statement count when they run. Default is 1000 milliseconds.
+     *
+     * @param millis
+     */
+    public JaquSessionFactory setReadYourWritesMillis(long millis) {
+    	this.readYourWritesMillis = millis;
+    	return this;
+    }
+
+    /**
+     * @return long - how long after the writes of a thread are committed its read sessions are opened on the primary
+     */
+    public long getReadYourWritesMillis() {
+    	return readYourWritesMillis;
+    }
+
+    /*
+     * true when read sessions are opened on replicas
+     */
+    boolean hasReplicas() {
+    	return null != replicas;
+    }
+
+    /*
+     * the read your writes stamp of the running thread, null when the factory has no replicas
+     */
+    AtomicLong writeStamp() {
+    	return null == replicas ? null : lastWrite.get();
+    }
+
+    /*
+     * writes of a session were committed, stamped on the given thread's stamp or on the running thread's when null
+     */
+    void wrote(AtomicLong stamp) {
+    	if (null != replicas)
+    		(null == stamp ? lastWrite.get() : stamp).set(System.currentTimeMillis());
+    }
+
+    private boolean wroteRecently() {
+    	return System.currentTimeMillis() - lastWrite.get().get() < readYourWritesMillis;
+    }
+
+    /**
+     * Compiles the query built by the given builder. The builder is given a session of its own, which is closed once the query is compiled.
+     * The compiled query can then be executed on any session.
+     * <pre>
+     * CompiledQuery&lt;Person&gt; byId = factory.compile(db -&gt; {
+     * 	Person p = new Person();
+     * 	return db.from(p).where(p.getId()).is(0L);
+     * });
+     * Person person = byId.bind(id).selectFirst(db);
+     * </pre>
+     *
+     * @see CompiledQuery
+     * @param builder
+     * @return CompiledQuery&lt;T&gt;
+     */
+    public <T> CompiledQuery<T> compile(Function<Db, QueryWhere<T>> builder) {
+    	Db db = newLocalSession();
+    	try {
+    		return builder.apply(db).compile();
+    	}
+    	finally {
+    		db.close();
+    	}
+    }
+
     /**
      * Always returns a new Jaqu session, backed up by an underlying DB connection, which is not associated to the thread
      * and thus it is up to the caller to manage the lifecycle of this session.
@@ -173,11 +492,83 @@ public final class JaquSessionFactory {
     	try {
     		return createConnection();
     	}
+    	catch (JaquError e) {
+    		throw e;
+    	}
     	catch (Exception e) {
 			throw convert(e);
 		}
     }
 
+    /**
+     * Returns a new stateless, read only Jaqu session, which is not associated to the thread. It is meant for reporting and other read paths
+     * that read many rows and change none:
+     * <ul>
+     * <li>the underlying connection is marked read only</li>
+     * <li>what is read is not kept in the session's cache, so reading the same row twice returns two instances and memory does not grow with
+     * the rows read</li>
+     * <li>entities are not attached to the session, relations that are not eagerly loaded are left empty and are not lazy loaded</li>
+     * <li>eagerly loaded relations are plain collections</li>
+     * <li>inserts, updates, merges and deletes throw a {@link JaquError}</li>
+     * </ul>
+     * It is up to the caller to close the session.
+     *
+     * @return Db
+     */
+    public Db getStatelessSession() {
+    	Db db = newLocalSession();
+    	try {
+    		return db.applyReadOnly();
+    	}
+    	catch (RuntimeException e) {
+    		db.close();
+    		throw e;
+    	}
+    }
+
+    /**
+     * Returns the asynchronous facade of this factory, which runs units of work each on a session and connection of its own. Unless set with
+     * {@link #setAsyncExecutor(Executor, int)} the units of work run on a pool of daemon threads, one per processor. As many are in flight as the
+     * factory opens connections when the pool is created (see {@link #setMaxConnections(int, long)}), one per processor when they are not bounded.
+     *
+     * @see JaquAsync
+     * @return JaquAsync
+     */
+    public JaquAsync async() {
+    	JaquAsync current = async;
+    	if (null == current) {
+    		synchronized (this) {
+    			current = async;
+    			if (null == current) {
+    				int threads = Runtime.getRuntime().availableProcessors();
+    				int maxConnections = getMaxConnections();
+    				defaultAsyncPool = Executors.newFixedThreadPool(threads, new AsyncThreadFactory());
+    				current = async = new JaquAsync(this, defaultAsyncPool, 0 == maxConnections ? threads : maxConnections);
+    			}
+    		}
+    	}
+    	return current;
+    }
+
+    /**
+     * Set the executor running the units of work of {@link #async()}. The number of units of work running or queued on it is bounded by
+     * maxInFlight, which is usually the number of threads of the executor or of connections in the pool. The executor is not shut down by the factory,
+     * the default pool it replaces is, once its units of work complete. A null executor returns to the default pool, maxInFlight is then ignored.
+     *
+     * @param executor
+     * @param maxInFlight - the units of work running or queued at most, submitting more waits for one to complete
+     */
+    public synchronized JaquSessionFactory setAsyncExecutor(Executor executor, int maxInFlight) {
+    	if (null != executor && maxInFlight < 1)
+    		throw new JaquError("The units of work in flight must be at least 1, was %s", maxInFlight);
+    	if (null != defaultAsyncPool) {
+    		defaultAsyncPool.shutdown();
+    		defaultAsyncPool = null;
+    	}
+    	this.async = null == executor ? null : new JaquAsync(this, executor, maxInFlight);
+    	return this;
+    }
+
     /**
 	 * Allows changing the {@link ACID_CONFIG} throttle.
 	 * @param isExternal
@@ -217,6 +608,88 @@ public final class JaquSessionFactory {
     	return createTable;
     }
 
+    /**
+     * When set to true the factory runs no DDL. The table of every entity it defines is compared with the database instead, and missing tables
+     * and columns are logged and reported by {@link #getSchemaDrift()}. Set before the first session defines its entities.
+     *
+     * @param validateSchema
+     */
+    public JaquSessionFactory setValidateSchema(boolean validateSchema) {
+    	this.validateSchema = validateSchema;
+    	return this;
+    }
+
+    /**
+     * True if this factory validates the tables of its entities instead of creating them.
+     * @return boolean
+     */
+    public boolean isValidateSchema() {
+    	return validateSchema;
+    }
+
+    /**
+     * Returns the differences found between the entities defined so far and the database, when the factory validates the schema.
+     *
+     * @return List&lt;String&gt; one line per missing table or column, empty when the schema matches
+     */
+    public List<String> getSchemaDrift() {
+    	return new ArrayList<>(schemaDrift);
+    }
+
+    /*
+     * true when tables, columns and indices missing in the database are created
+     */
+    boolean createsTables() {
+    	return createTable && !validateSchema;
+    }
+
+    /*
+     * the catalog of the schema, read once with the given session
+     */
+    SchemaCatalog getCatalog(Db db) {
+    	SchemaCatalog current = catalog;
+    	if (null == current) {
+    		synchronized (this) {
+    			current = catalog;
+    			if (null == current) {
+    				try {
+    					current = dialect.readCatalog(db);
+    				}
+    				catch (SQLException e) {
+    					throw new JaquError(e, e.getMessage());
+    				}
+    				catalog = current;
+    			}
+    		}
+    	}
+    	return current;
+    }
+
+    /*
+     * the catalog of the schema with the indices of its tables, which are read once with the given session when first needed
+     */
+    SchemaCatalog getIndexedCatalog(Db db) {
+    	SchemaCatalog current = getCatalog(db);
+    	if (!current.isIndicesRead()) {
+    		synchronized (this) {
+    			if (!current.isIndicesRead()) {
+    				try {
+    					current.addIndices(dialect.readIndices(db));
+    				}
+    				catch (SQLException e) {
+    					throw new JaquError(e, e.getMessage());
+    				}
+    			}
+    		}
+    	}
+    	return current;
+    }
+
+    void reportDrift(String drift) {
+    	schemaDrift.add(drift);
+    	StatementLogger.info(drift);
+    }
+
     /**
      * The DB dialect this factory uses for its connections. Must match the underlying Datasource.
      * @return Dialect
@@ -250,6 +723,190 @@ public final class JaquSessionFactory {
 		return showSQL;
 	}
 
+	/**
+	 * Log the SQL shown by this factory from a background thread instead of the session's thread, see {@link #setShowSQL(boolean)}. The statements and
+	 * their parameters are queued in a ring of the given capacity and formatted by the writer thread, a session never waits for the log and when the
+	 * ring is full the statement is dropped. Only one of every sampleEvery statements is logged, of all statements or of each statement shape.
+	 * A capacity of zero stops the writer once it has written the queued statements, and the SQL is logged by the session's thread again. Default is 0.
+	 *
+	 * @param capacity - the number of statements queued, rounded up to a power of two
+	 * @param sampleEvery - log one of this many statements, 1 logs all statements
+	 * @param perShape - true to sample the statements of each shape apart so that rare statements are logged too
+	 */
+	public synchronized JaquSessionFactory setAsyncSQLLog(int capacity, int sampleEvery, boolean perShape) {
+		AsyncSQLLog previous = this.asyncSQLLog;
+		this.asyncSQLLog = capacity > 0 ? new AsyncSQLLog(capacity, sampleEvery, perShape) : null;
+		if (null != previous)
+			previous.stop();
+		return this;
+	}
+
+	/**
+	 * @return long - the statements written by the asynchronous SQL log, 0 when there is none
+	 */
+	public long getAsyncSQLLogWritten() {
+		AsyncSQLLog log = asyncSQLLog;
+		return null == log ? 0 : log.getWritten();
+	}
+
+	/**
+	 * @return long - the statements the asynchronous SQL log dropped because it was full, 0 when there is none
+	 */
+	public long getAsyncSQLLogDropped() {
+		AsyncSQLLog log = asyncSQLLog;
+		return null == log ? 0 : log.getDropped();
+	}
+
+	AsyncSQLLog getAsyncSQLLog() {
+		return asyncSQLLog;
+	}
+
+	/**
+	 * Set to true to turn on dirty checking. The column values of every entity read from the DB or written to it within a session are kept,
+	 * and an update writes only the columns that changed since. Relations whose contents did not change are not merged again.
+	 * Default is false.
+	 *
+	 * @param dirtyChecking
+	 */
+	public JaquSessionFactory setDirtyChecking(boolean dirtyChecking) {
+		this.dirtyChecking = dirtyChecking;
+		return this;
+	}
+
+	/**
+	 * @return boolean - true if updates write only the columns that changed.
+	 */
+	public boolean isDirtyChecking() {
+		return dirtyChecking;
+	}
+
+	/**
+	 * Set the metrics receiving the latency, rows and table of every statement run by the sessions of this factory, their cache hits and
+	 * their lazy loads. Set to null to stop measuring. Default is null.
+	 *
+	 * @param metrics
+	 */
+	public JaquSessionFactory setMetrics(JaquMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	/**
+	 * Measure this factory with {@link HistogramMetrics} published to the platform MBean server under the given name.
+	 *
+	 * @param name - the name of this factory, unique in the JVM
+	 * @throws JaquError when the MBean can not be registered
+	 */
+	public JaquSessionFactory enableMetrics(String name) {
+		this.metrics = new HistogramMetrics().register(name);
+		return this;
+	}
+
+	/**
+	 * @return JaquMetrics - the metrics of this factory, null if it is not measured.
+	 */
+	public JaquMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Log the statements of this factory's sessions that take longer than the threshold, with their parameters, and aggregate the count, total and
+	 * longest time of all statements by their shape (see {@link #getQueryStatistics()}). Unlike showSQL only slow statements are logged and their
+	 * parameters are only rendered for them. Setting the threshold starts a new aggregation, a negative threshold turns the log off. Default is off.
+	 *
+	 * @param millis - the time in milliseconds from preparing a statement to mapping its result above which it is logged
+	 */
+	public JaquSessionFactory setSlowQueryThreshold(long millis) {
+		this.slowQueryLog = millis < 0 ? null : new SlowQueryLog(millis);
+		return this;
+	}
+
+	/**
+	 * @return long - the slow query threshold in milliseconds, -1 when the slow query log is off.
+	 */
+	public long getSlowQueryThreshold() {
+		SlowQueryLog log = slowQueryLog;
+		return null == log ? -1 : log.getThresholdMillis();
+	}
+
+	/**
+	 * Returns the statements run since the slow query threshold was set, aggregated by their shape and the ones that took the most time in total first.
+	 * Only the first {@value SlowQueryLog#MAX_SHAPES} shapes are aggregated.
+	 *
+	 * @return List&lt;QueryStatistics&gt; - empty when the slow query log is off
+	 */
+	public List<QueryStatistics> getQueryStatistics() {
+		SlowQueryLog log = slowQueryLog;
+		return null == log ? Collections.<QueryStatistics>emptyList() : log.getStatistics();
+	}
+
+	/**
+	 * @return long - the statements run since the slow query threshold was set whose shape did not fit in the aggregation, 0 when the slow query
+	 * log is off
+	 */
+	public long getQueryStatisticsOverflow() {
+		SlowQueryLog log = slowQueryLog;
+		return null == log ? 0 : log.getOverflow();
+	}
+
+	SlowQueryLog getSlowQueryLog() {
+		return slowQueryLog;
+	}
+
+	/**
+	 * Report a statement shape that a session runs the given number of times between commits, usually a relation loaded one entity at a time
+	 * (an N+1 pattern). The report names the entity and relation field being loaded and the stack the statement ran from, it is logged and passed
+	 * to the repeated query listener. Zero turns the detection off. Default is off.
+	 *
+	 * @param threshold - the number of statements of one shape that is reported
+	 */
+	public JaquSessionFactory setRepeatedQueryThreshold(int threshold) {
+		this.repeatedQueryThreshold = Math.max(threshold, 0);
+		return this;
+	}
+
+	/**
+	 * @return int - the number of statements of one shape a session runs between commits before it is reported, 0 when not detected
+	 */
+	public int getRepeatedQueryThreshold() {
+		return repeatedQueryThreshold;
+	}
+
+	/**
+	 * Set the listener receiving the repeated queries of this factory's sessions, see {@link #setRepeatedQueryThreshold(int)}.
+	 *
+	 * @param listener
+	 */
+	public JaquSessionFactory setRepeatedQueryListener(Consumer<RepeatedQuery> listener) {
+		this.repeatedQueryListener = listener;
+		return this;
+	}
+
+	/**
+	 * @return Consumer&lt;RepeatedQuery&gt; - the listener receiving the repeated queries, null if there is none
+	 */
+	public Consumer<RepeatedQuery> getRepeatedQueryListener() {
+		return repeatedQueryListener;
+	}
+
+	/**
+	 * When true a statement reaching the repeated query threshold throws a {@link JaquError} instead of running, so tests fail on N+1 patterns.
+	 * Default is false.
+	 *
+	 * @param failOnRepeatedQuery
+	 */
+	public JaquSessionFactory setFailOnRepeatedQuery(boolean failOnRepeatedQuery) {
+		this.failOnRepeatedQuery = failOnRepeatedQuery;
+		return this;
+	}
+
+	/**
+	 * @return boolean - true when a repeated query throws an error
+	 */
+	public boolean isFailOnRepeatedQuery() {
+		return failOnRepeatedQuery;
+	}
+
 	/**
      * Extract the primary key for the table represented by the field given.<br>
      * The field must represent a Table which has already been defined.
@@ -286,42 +943,144 @@ public final class JaquSessionFactory {
      */
     @SuppressWarnings("unchecked")
     <T> TableDefinition<T> getTableDefinition(Class<T> clazz) {
-        return (TableDefinition<T>) classMap.get(clazz);
+    	TableDefinition<?> def = classMap.get(clazz);
+    	if (null == def) {
+    		// a definition still being registered is seen by the thread registering it, its O2O relations may lead back to it
+    		Registration registration = registrations.get(clazz);
+    		if (null != registration && registration.owner == Thread.currentThread())
+    			def = registration.mapped;
+    	}
+        return (TableDefinition<T>) def;
     }
 
     /**
-     * Updates the table definition map that lazy loads and holds all the table definitions so we don't go through the
-     * definition on each call. It returns null when we successfully insert a new definition to the map. Before inserting
-     * we check for an existing map. If it exist we return the found map (which means it is already configured)
-     * and does not need reconfiguring.
+     * Registers the definition of the class, unless it is registered already. Each class is registered by one thread, other threads needing the
+     * same class wait for that registration to complete while registrations of other classes go on. A definition is visible to the thread
+     * registering it as soon as its fields are mapped, so O2O relations leading back to a class in registration (directly or through other
+     * classes) get its definition. When two threads wait on each other's registrations the same applies, the one closing the cycle takes
+     * the definition without waiting.
      *
      * @param <T>
      * @param clazz
-     * @param def
-     * @return TableDefinition<T> - when the definition is already in the map, or 'null' when the definition is new and is put into the map.
+     * @param db
+     * @param allowCreate
+     * @return TableDefinition<T>
      */
+    @SuppressWarnings("unchecked")
     <T> TableDefinition<T> updateTableDefinition(Class<T> clazz, Db db, boolean allowCreate){
-    	synchronized (classMap) {
-    		// Within the synchronized block we check again for the existence of the definition
-    		// because some other thread may have created it in the mean time. Only if it is null
-    		// we insert it to the map.
-    		TableDefinition<T> def = getTableDefinition(clazz);
-    		if (null == def) {
-    			def = new TableDefinition<>(clazz, this.dialect);
-    			def.mapFields(db);
-    			// when here we have successfully mapped the fields of the entity and its O2M M2M relationships. Because
-    			// in O2O relationships we may have a circular call for define on the same class so we put the definition
-    			// in the map before we do it and thus we won't run through define again.
-    			classMap.put(clazz, def);
-
-    			// now define the O2O relationships.
-                def.mapOneToOneFields(db);
-                if (this.createTable && allowCreate)
-                	def.createTableIfRequired(db);
+    	Registration registration = new Registration();
+    	Registration current = registrations.putIfAbsent(clazz, registration);
+    	if (null != current)
+    		return (TableDefinition<T>) await(current);
+    	TableDefinition<T> def = (TableDefinition<T>) classMap.get(clazz);
+    	if (null != def) {
+    		// another thread completed the registration after the caller looked for it
+    		registrations.remove(clazz);
+    		registration.done.complete(def);
+    		return def;
+    	}
+    	Object event = JaquEvents.beginDefine();
+    	try {
+			def = new TableDefinition<>(clazz, this.dialect);
+			def.mapFields(db);
+			// when here we have successfully mapped the fields of the entity and its O2M M2M relationships. Because
+			// in O2O relationships we may have a circular call for define on the same class we make the definition visible
+			// to this thread before we do it and thus we won't run through define again.
+			registration.mapped = def;
 
+			// now define the O2O relationships.
+            def.mapOneToOneFields(db);
+            if (this.validateSchema && allowCreate)
+            	def.validateSchema(db);
+            else if (createsTables() && allowCreate)
+            	def.createTableIfRequired(db);
+            classMap.put(clazz, def);
+            registrations.remove(clazz);
+            registration.done.complete(def);
+    	}
+    	catch (RuntimeException | Error e) {
+    		// the next define of the class tries again
+    		registrations.remove(clazz);
+    		registration.done.completeExceptionally(e);
+    		throw e;
+    	}
+        if (createsTables() && allowCreate)
+        	def.createRelationIndices(db, classMap.values());
+        JaquEvents.commitDefine(event, clazz, def.tableName);
+		return def;
+    }
+
+    /*
+     * wait for a registration of another thread to complete. The registration of this thread returns its definition as it is mapped so far,
+     * as does a registration of a thread that is waiting (directly or through other threads) for this one.
+     */
+    private TableDefinition<?> await(Registration registration) {
+    	Thread me = Thread.currentThread();
+    	if (registration.owner == me)
+    		return registration.mapped;
+    	synchronized (waiting) {
+    		// a thread waits while registering its own definitions, which are mapped by then
+    		Registration next = registration;
+    		for (int i = 0; null != next && i <= waiting.size(); i++) {
+    			if (next.owner == me)
+    				return registration.mapped;
+    			next = waiting.get(next.owner);
     		}
-    		return def;
-		}
+    		waiting.put(me, registration);
+    	}
+    	try {
+    		return registration.done.join();
+    	}
+    	catch (CompletionException e) {
+    		if (e.getCause() instanceof JaquError)
+    			throw (JaquError) e.getCause();
+    		throw new JaquError(e.getCause(), e.getCause().getMessage());
+    	}
+    	finally {
+    		waiting.remove(me);
+    	}
+    }
+
+    /**
+     * Defines the given entities in parallel, each on a session of its own, so their mapping is validated and their tables are created before the
+     * first session uses them. Classes already defined are skipped.
+     *
+     * @param classes
+     * @throws JaquError of the first class that failed, the failures of other classes are added to it as suppressed
+     */
+    public void preload(Class<?> ... classes) {
+    	if (0 == classes.length)
+    		return;
+    	ExecutorService executor = Executors.newFixedThreadPool(Math.min(classes.length, Runtime.getRuntime().availableProcessors()));
+    	try {
+    		List<CompletableFuture<Void>> tasks = Utils.newArrayList();
+    		for (Class<?> clazz : classes) {
+    			tasks.add(CompletableFuture.runAsync(() -> {
+    				try (Db db = newLocalSession()) {
+    					define(clazz, db);
+    					db.commit();
+    				}
+    			}, executor));
+    		}
+    		JaquError error = null;
+    		for (CompletableFuture<Void> task : tasks) {
+    			try {
+    				task.join();
+    			}
+    			catch (CompletionException e) {
+    				JaquError failure = (e.getCause() instanceof JaquError) ? (JaquError) e.getCause() : new JaquError(e.getCause(), e.getCause().getMessage());
+    				if (null == error)
+    					error = failure;
+    				else
+    					error.addSuppressed(failure);
+    			}
+    		}
+    		if (null != error)
+    			throw error;
+    	}
+    	finally {
+    		executor.shutdown();
+    	}
     }
 
     /*
@@ -340,6 +1099,25 @@ public final class JaquSessionFactory {
 	 * @throws IllegalStateException
 	 */
 	private Db createConnection() throws Exception {
+		ConnectionGate gate = connectionGate;
+		if (null != gate)
+			gate.acquire();
+		Connection conn;
+		try {
+			conn = openConnection(dataSource);
+		}
+		catch (Exception e) {
+			if (null != gate)
+				gate.release();
+			throw e;
+		}
+		return new Db(conn, this, null == gate ? null : gate::release);
+	}
+
+	/*
+	 * opens a connection of the datasource, the primary or a replica, configured as the factory configures its connections
+	 */
+	private Connection openConnection(DatasourceWrapper dataSource) throws Exception {
 		Connection conn = null;
 		try {
 			// if I'm an XADatasource I know that I'm in a transaction so don't play with autoCommit.
@@ -362,7 +1140,7 @@ public final class JaquSessionFactory {
 		}
 		if (StatementLogger.isDebugEnabled())
 			StatementLogger.debug("opening connection " + conn.toString());
-		return new Db(conn, this);
+		return conn;
 	}
 
     /*
@@ -388,4 +1166,28 @@ public final class JaquSessionFactory {
         }
         return def;
     }
+
+    /*
+     * a definition registered by one thread. 'mapped' is set once the fields of the definition are mapped, 'done' completes when the definition
+     * is ready for all threads
+     */
+    private static final class Registration {
+    	final Thread owner = Thread.currentThread();
+    	final CompletableFuture<TableDefinition<?>> done = new CompletableFuture<>();
+    	volatile TableDefinition<?> mapped;
+    }
+
+    /*
+     * the daemon threads of the default executor of async(), they do not keep the JVM alive
+     */
+    private static final class AsyncThreadFactory implements ThreadFactory {
+    	private final AtomicInteger count = new AtomicInteger();
+
+    	@Override
+    	public Thread newThread(Runnable r) {
+    		Thread thread = new Thread(r, "jaqu-async-" + count.incrementAndGet());
+    		thread.setDaemon(true);
+    		return thread;
+    	}
+    }
 }
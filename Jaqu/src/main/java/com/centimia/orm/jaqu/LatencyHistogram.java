@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of latencies. Latencies fall into buckets by powers of two microseconds. Every bucket is a {@link LongAdder}, which stripes its
+ * count over cells so concurrent threads recording latencies do not contend on one counter.
+ *
+ * @author Shai Bentin
+ */
+final class LatencyHistogram {
+
+	// bucket 0 holds latencies below a microsecond, bucket i those below 2^i microseconds, the last bucket all longer ones
+	static final int BUCKETS = 32;
+
+	private final LongAdder[] buckets = new LongAdder[BUCKETS];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder total = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+	LatencyHistogram() {
+		for (int i = 0; i < BUCKETS; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	void record(long nanos) {
+		long micros = nanos / 1000;
+		buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+		count.increment();
+		total.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	long count() {
+		return count.sum();
+	}
+
+	double meanMillis() {
+		long n = count.sum();
+		return 0 == n ? 0 : total.sum() / (n * 1000000d);
+	}
+
+	double maxMillis() {
+		return max.get() / 1000000d;
+	}
+
+	/*
+	 * the upper bound of the bucket the given fraction of the latencies fall below
+	 */
+	double percentileMillis(double fraction) {
+		long[] counts = counts();
+		long n = 0;
+		for (long c : counts)
+			n += c;
+		if (0 == n)
+			return 0;
+		long rank = (long) Math.ceil(n * fraction);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= rank)
+				return (1L << i) / 1000d;
+		}
+		return maxMillis();
+	}
+
+	long[] counts() {
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			counts[i] = buckets[i].sum();
+		return counts;
+	}
+
+	void reset() {
+		for (LongAdder bucket : buckets)
+			bucket.reset();
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+}
@@ -19,7 +19,8 @@ import java.util.List;
 import java.util.Map;
 
 import com.centimia.orm.jaqu.ISelectTable.JOIN_TYPE;
-import com.centimia.orm.jaqu.TableDefinition.FieldDefinition;
+import com.centimia.orm.jaqu.StatementLogger.Type;
+import com.centimia.orm.jaqu.annotation.Event;
 import com.centimia.orm.jaqu.util.Utils;
 
 /**
@@ -209,6 +210,16 @@ public class Query<T> implements QueryInterface<T> {
     	return this.getSQL(false);
     }
 
+    /* (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.QueryInterface#compile()
+	 */
+    @Override
+    public CompiledQuery<T> compile() {
+    	TableDefinition<T> def = from.getAliasDefinition();
+    	SQLStatement stat = prepare(def.getSelectList(db, from.getAs()), false);
+    	return new CompiledQuery<>(def, stat.getSQL(), stat.getParameters());
+    }
+
     /*
      * (non-Javadoc)
      * @see com.centimia.orm.jaqu.QueryInterface#getDistinctSQL()
@@ -321,30 +332,27 @@ public class Query<T> implements QueryInterface<T> {
 	 */
     @Override
     public int delete() {
+    	if (db.isReadOnly())
+    		throw new JaquError(Db.SESSION_IS_READ_ONLY);
     	try {
 			TableDefinition<T> def = from.getAliasDefinition();
 			SQLStatement stat = new SQLStatement(db);
+			List<T> items = Utils.newArrayList();
+			if (null != def.getInterceptor() && def.hasInterceptEvent(Event.DELETE)) {
+				@SuppressWarnings("unchecked")
+				CRUDInterceptor<T> interceptor = def.getInterceptor();
+				// the interceptor needs the objects
+				items.addAll(select());
+				for (T item : items)
+					interceptor.onDelete(item);
+			}
 			if (def.isAggregateParent) {
-				// before we delete we must take care of relationships
-				stat.appendSQL("SELECT * FROM ");
-				from.appendSQL(stat);
-				appendWhere(stat);
-				if (db.factory.isShowSQL())
-					StatementLogger.select(stat.logSQL());
-
-				stat.executeQuery(rs -> {
-					while (rs.next()) {
-						T item = from.getAliasDefinition().readRow(rs, db);
-						for (FieldDefinition fdef : def.getFields()) {
-							if (fdef.fieldType.isCollectionRelation()) {
-								// this is a relation
-								db.deleteParentRelation(fdef, item); // item has relations so it must be a Entity type
-							}
-						}
-						db.multiCallCache.removeReEntrent(item);
-					}
-					return null;
-				});
+				// before we delete we must take care of relationships. The db cleans them up for all the parents matching this query
+				def.deleteParentRelations(db, this::appendPrimaryKeySelect, () -> {
+					if (items.isEmpty())
+						items.addAll(select());
+					return items;
+				}, Utils.newHashMap());
 			}
 			stat = new SQLStatement(db);
 			// Nasty hack for MYSQL
@@ -354,20 +362,40 @@ public class Query<T> implements QueryInterface<T> {
 				stat.appendSQL("DELETE FROM ");
 			from.appendSQL(stat);
 			appendWhere(stat);
-			if (db.factory.isShowSQL())
-				StatementLogger.delete(stat.logSQL());
-			return stat.executeUpdate();
+			stat.showSQL(Type.DELETE);
+			int rows = stat.executeUpdate();
+			// the loaded objects no longer have rows, the session must not return them
+			for (T item : items)
+				db.multiCallCache.removeReEntrent(item);
+			return rows;
 		}
 		finally {
 			db.multiCallCache.clearReEntrent();
 		}
     }
 
+    /*
+     * appends a select of the primary keys of the rows matching this query
+     */
+    private void appendPrimaryKeySelect(SQLStatement stat) {
+    	String pk = from.getAliasDefinition().getPrimaryKeyFields().get(0).columnName;
+    	// Nasty hack for MYSQL, which can't select from the table being updated unless the select is materialized
+    	if (from.getAliasDefinition().dialect == Dialect.MYSQL)
+    		stat.appendSQL("SELECT " + pk + " FROM (");
+    	stat.appendSQL("SELECT " + from.getAs() + "." + pk + " FROM ");
+    	from.appendSQL(stat);
+    	appendWhere(stat);
+    	if (from.getAliasDefinition().dialect == Dialect.MYSQL)
+    		stat.appendSQL(") parents");
+    }
+
     /* (non-Javadoc)
 	 * @see com.centimia.orm.jaqu.FullQueryInterface#update()
 	 */
     @Override
     public int update() {
+    	if (db.isReadOnly())
+    		throw new JaquError(Db.SESSION_IS_READ_ONLY);
         try {
 			SQLStatement stat = new SQLStatement(db);
 			stat.appendSQL("UPDATE ");
@@ -376,8 +404,7 @@ public class Query<T> implements QueryInterface<T> {
 			appendWhere(stat);
 			if (stat.getSQL().indexOf("SET") == -1)
 				throw new JaquError("IllegalState - To perform update use the set directive after from...!!!");
-			if (db.factory.isShowSQL())
-				StatementLogger.update(stat.logSQL());
+			stat.showSQL(Type.UPDATE);
 			return stat.executeUpdate();
 		}
 		finally {
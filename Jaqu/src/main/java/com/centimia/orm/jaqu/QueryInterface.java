@@ -67,6 +67,14 @@ public interface QueryInterface<T> {
 	 */
 	public abstract String getSQL();
 
+	/**
+	 * Compiles the select into a query that can be executed again and again, on any session, without assembling it again.
+	 *
+	 * @see CompiledQuery
+	 * @return CompiledQuery&lt;T&gt;
+	 */
+	public abstract CompiledQuery<T> compile();
+
 	/**
 	 * Performs a delete query.
 	 * <b>Note</b> Since delete executes without objects the multi reEntrent cache is cleared
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+/**
+ * The statements of one shape run by a factory while its slow query log is on, see {@link JaquSessionFactory#setSlowQueryThreshold(long)}.
+ * Statements share a shape when they differ only in their parameters and literals.
+ *
+ * @author Shai Bentin
+ */
+public final class QueryStatistics {
+
+	private final String fingerprint;
+	private final long count;
+	private final long slowCount;
+	private final long totalNanos;
+	private final long maxNanos;
+
+	QueryStatistics(String fingerprint, long count, long slowCount, long totalNanos, long maxNanos) {
+		this.fingerprint = fingerprint;
+		this.count = count;
+		this.slowCount = slowCount;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+	}
+
+	/**
+	 * @return String - the statement with its literals replaced by '?' and its 'in' lists collapsed to a single '?'
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return long - the number of times statements of this shape ran
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return long - the number of times a statement of this shape took longer than the threshold
+	 */
+	public long getSlowCount() {
+		return slowCount;
+	}
+
+	/**
+	 * @return double - the total time taken by statements of this shape, in milliseconds
+	 */
+	public double getTotalMillis() {
+		return totalNanos / 1000000d;
+	}
+
+	/**
+	 * @return double - the mean time taken by a statement of this shape, in milliseconds
+	 */
+	public double getMeanMillis() {
+		return 0 == count ? 0 : totalNanos / (count * 1000000d);
+	}
+
+	/**
+	 * @return double - the longest time taken by a statement of this shape, in milliseconds
+	 */
+	public double getMaxMillis() {
+		return maxNanos / 1000000d;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s [count=%d, slow=%d, total=%.3fms, max=%.3fms]", fingerprint, count, slowCount, getTotalMillis(), getMaxMillis());
+	}
+}
@@ -368,6 +368,16 @@ public class QueryWhere<T> {
 		return query.selectDistinct();
 	}
 
+	/**
+	 * Compiles the select into a query that can be executed again and again, on any session, without assembling it again.
+	 *
+	 * @see CompiledQuery
+	 * @return CompiledQuery&lt;T&gt;
+	 */
+	public CompiledQuery<T> compile() {
+		return query.compile();
+	}
+
 	/**
 	 * Returns a map of all the query's results where key is one field in the select and value is another.<br>
 	 * It is also available in join queries. You can have a key from any table within the join and a value from any table as well.<br>
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+/**
+ * A statement of one shape a session ran as many times as the factory's repeated query threshold, see
+ * {@link JaquSessionFactory#setRepeatedQueryThreshold(int)}. Usually an N+1 pattern, a relation loaded one entity at a time while iterating over
+ * the result of another query.
+ *
+ * @author Shai Bentin
+ */
+public final class RepeatedQuery {
+
+	private final String fingerprint;
+	private final int count;
+	private final Class<?> entity;
+	private final String field;
+	private final StackTraceElement[] callSite;
+
+	RepeatedQuery(String fingerprint, int count, Class<?> entity, String field, StackTraceElement[] callSite) {
+		this.fingerprint = fingerprint;
+		this.count = count;
+		this.entity = entity;
+		this.field = field;
+		this.callSite = callSite;
+	}
+
+	/**
+	 * @return String - the statement with its literals replaced by '?' and its 'in' lists collapsed to a single '?'
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return int - the number of times the session ran statements of this shape
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return Class&lt;?&gt; - the entity whose relation was loaded by the statement, null when the statement did not load a relation
+	 */
+	public Class<?> getEntity() {
+		return entity;
+	}
+
+	/**
+	 * @return String - the relation field loaded by the statement, null when the statement did not load a relation
+	 */
+	public String getField() {
+		return field;
+	}
+
+	/**
+	 * @return StackTraceElement[] - the stack of the statement that reached the threshold, from the first frame outside of jaqu
+	 */
+	public StackTraceElement[] getCallSite() {
+		return callSite.clone();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder("Statement ran ").append(count).append(" times in one session: ").append(fingerprint);
+		if (null != entity)
+			report.append(" loading ").append(entity.getName()).append('.').append(field);
+		if (callSite.length > 0)
+			report.append(" at ").append(callSite[0]);
+		return report.toString();
+	}
+}
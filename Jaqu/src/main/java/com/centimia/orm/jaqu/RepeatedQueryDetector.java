@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * Counts the statements a session runs by their shape and reports a shape when it reaches the factory's repeated query threshold. The report names
+ * the relation being loaded when the statement ran and the stack it ran from, which is only captured when a shape is reported. Counting starts over
+ * when the session commits or rolls back.
+ * <p>
+ * A detector belongs to a single session and is not thread safe.
+ *
+ * @author Shai Bentin
+ */
+final class RepeatedQueryDetector {
+
+	private final Map<String, Integer> counts = Utils.newHashMap();
+	// the relation loaded by the running statement
+	private Class<?> entity;
+	private String field;
+
+	/*
+	 * the statements run from here on load the field of the entity, until exit is called with the returned relation
+	 */
+	Object[] enter(Class<?> entity, String field) {
+		Object[] outer = {this.entity, this.field};
+		this.entity = entity;
+		this.field = field;
+		return outer;
+	}
+
+	void exit(Object[] outer) {
+		this.entity = (Class<?>)outer[0];
+		this.field = (String)outer[1];
+	}
+
+	/**
+	 * Count a statement about to run.
+	 *
+	 * @param factory
+	 * @param sql
+	 * @throws JaquError when the statement reached the threshold and the factory fails on repeated queries
+	 */
+	void executed(JaquSessionFactory factory, String sql) {
+		String fingerprint = StatementTimer.fingerprint(sql);
+		int count = counts.merge(fingerprint, 1, Integer::sum);
+		if (count != factory.getRepeatedQueryThreshold())
+			return;
+		RepeatedQuery report = new RepeatedQuery(fingerprint, count, entity, field, callSite());
+		StatementLogger.info(report.toString());
+		Consumer<RepeatedQuery> listener = factory.getRepeatedQueryListener();
+		if (null != listener) {
+			try {
+				listener.accept(report);
+			}
+			catch (RuntimeException e) {
+				StatementLogger.error("Repeated query listener failed - " + e.getMessage());
+			}
+		}
+		if (factory.isFailOnRepeatedQuery())
+			throw new JaquError("%s", report);
+	}
+
+	void reset() {
+		counts.clear();
+	}
+
+	/*
+	 * the stack from the first frame outside of jaqu and of the reflection it is called through
+	 */
+	private static StackTraceElement[] callSite() {
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		for (int i = 0; i < stack.length; i++) {
+			String className = stack[i].getClassName();
+			if (!className.startsWith("com.centimia.orm.jaqu.") && !className.startsWith("java.") && !className.startsWith("jdk.")
+					&& !className.startsWith("sun."))
+				return Arrays.copyOfRange(stack, i, stack.length);
+		}
+		return new StackTraceElement[0];
+	}
+}
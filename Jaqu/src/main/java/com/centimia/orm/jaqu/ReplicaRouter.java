@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.CommonDataSource;
+
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * The replicas of a factory and the order read sessions try them in. A replica that fails to give a connection, or lags too far behind the primary,
+ * is left out for a while and then tried again.
+ *
+ * @author Shai Bentin
+ */
+final class ReplicaRouter {
+
+	// how long a replica that failed is left out
+	static final long RETRY_MILLIS = 5000;
+
+	static final class Replica {
+		final DatasourceWrapper dataSource;
+		final int index;
+		// the read sessions open on the replica
+		final AtomicInteger outstanding = new AtomicInteger();
+		volatile long downUntil = 0;
+
+		Replica(CommonDataSource dataSource, int index) {
+			this.dataSource = new DatasourceWrapper(dataSource);
+			this.index = index;
+		}
+	}
+
+	private final List<Replica> replicas = Utils.newArrayList();
+	private final ReplicaSelection selection;
+	private final AtomicInteger next = new AtomicInteger();
+
+	ReplicaRouter(CommonDataSource[] dataSources, ReplicaSelection selection) {
+		for (int i = 0; i < dataSources.length; i++)
+			replicas.add(new Replica(dataSources[i], i));
+		this.selection = selection;
+	}
+
+	/*
+	 * the replicas that are up, in the order a read session tries them
+	 */
+	List<Replica> candidates() {
+		long now = System.currentTimeMillis();
+		int size = replicas.size();
+		int start = Math.floorMod(next.getAndIncrement(), size);
+		List<Replica> up = Utils.newArrayList();
+		for (int i = 0; i < size; i++) {
+			Replica replica = replicas.get((start + i) % size);
+			if (replica.downUntil <= now)
+				up.add(replica);
+		}
+		if (ReplicaSelection.LEAST_OUTSTANDING == selection)
+			// the sort is stable, replicas with as many sessions are still taken in turn
+			up.sort(Comparator.comparingInt(replica -> replica.outstanding.get()));
+		return up;
+	}
+
+	void down(Replica replica, String reason) {
+		replica.downUntil = System.currentTimeMillis() + RETRY_MILLIS;
+		StatementLogger.error("Replica " + replica.index + " is left out for " + RETRY_MILLIS + " milliseconds - " + reason);
+	}
+
+	ReplicaSelection getSelection() {
+		return selection;
+	}
+
+	int size() {
+		return replicas.size();
+	}
+}
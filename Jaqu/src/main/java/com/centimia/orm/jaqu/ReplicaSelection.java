@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+/**
+ * How {@link JaquSessionFactory#getReadSession()} chooses among the replicas of a factory.
+ *
+ * @author Shai Bentin
+ */
+public enum ReplicaSelection {
+	/** each read session goes to the next replica in turn */
+	ROUND_ROBIN,
+	/** each read session goes to the replica with the fewest read sessions open, in turn among equals */
+	LEAST_OUTSTANDING
+}
@@ -20,6 +20,8 @@
  */
 package com.centimia.orm.jaqu;
 
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
@@ -27,7 +29,14 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.orm.jaqu.dialect.Functions;
 import com.centimia.orm.jaqu.util.StatementBuilder;
@@ -78,8 +87,111 @@ public interface SQLDialect {
 	 * @param tableName
 	 * @param db
 	 * @return boolean
+	 * @deprecated the factory checks its tables against the catalog returned by {@link #readCatalog(Db)}, which this method reads
 	 */
-	public abstract boolean checkTableExists(String tableName, Db db);
+	@Deprecated
+	default boolean checkTableExists(String tableName, Db db) {
+		try {
+			return new SchemaCatalog(readCatalog(db)).hasTable(tableName);
+		}
+		catch (SQLException e) {
+			throw new JaquError(e, e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the tables of the connection's schema and their columns. The factory reads the catalog once, when it first defines a table, and
+	 * checks all the tables and columns it defines against it.<br>
+	 * The default reads the database meta data, dialects read their dictionary views in a single query.
+	 *
+	 * @param db
+	 * @return Map&lt;String, Set&lt;String&gt;&gt; the column names of each table name
+	 * @throws SQLException
+	 */
+	default Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		DatabaseMetaData metaData = db.getMetaData();
+		Connection conn = metaData.getConnection();
+		String schema = null;
+		try {
+			schema = conn.getSchema();
+		}
+		catch (AbstractMethodError | SQLException e) {
+			// drivers older than JDBC 4.1, all schemas are read
+		}
+		try (ResultSet rs = metaData.getColumns(conn.getCatalog(), schema, "%", "%")) {
+			return catalogOf(rs);
+		}
+	}
+
+	/**
+	 * Collects the catalog from a result set with a TABLE_NAME and a COLUMN_NAME column.
+	 *
+	 * @param rs
+	 * @return Map&lt;String, Set&lt;String&gt;&gt;
+	 * @throws SQLException
+	 */
+	static Map<String, Set<String>> catalogOf(ResultSet rs) throws SQLException {
+		Map<String, Set<String>> catalog = new HashMap<>();
+		while (rs.next())
+			catalog.computeIfAbsent(rs.getString("TABLE_NAME"), k -> new HashSet<>()).add(rs.getString("COLUMN_NAME"));
+		return catalog;
+	}
+
+	/**
+	 * Reads the indices of the tables in the connection's schema. The factory reads them once, when it first checks a relation for an index,
+	 * and checks all relations against them.<br>
+	 * The default reads the database meta data of each table, dialects read their dictionary views in a single query.
+	 *
+	 * @param db
+	 * @return Map&lt;String, Map&lt;String, List&lt;String&gt;&gt;&gt; the columns, in order, of each index of each table name
+	 * @throws SQLException
+	 */
+	default Map<String, Map<String, List<String>>> readIndices(Db db) throws SQLException {
+		DatabaseMetaData metaData = db.getMetaData();
+		Connection conn = metaData.getConnection();
+		String schema = null;
+		try {
+			schema = conn.getSchema();
+		}
+		catch (AbstractMethodError | SQLException e) {
+			// drivers older than JDBC 4.1, all schemas are read
+		}
+		List<String> tables = new ArrayList<>();
+		try (ResultSet rs = metaData.getTables(conn.getCatalog(), schema, "%", new String[] {"TABLE"})) {
+			while (rs.next())
+				tables.add(rs.getString("TABLE_NAME"));
+		}
+		Map<String, Map<String, List<String>>> indices = new HashMap<>();
+		for (String table : tables) {
+			try (ResultSet rs = metaData.getIndexInfo(conn.getCatalog(), schema, table, false, true)) {
+				indicesOf(rs, indices);
+			}
+		}
+		return indices;
+	}
+
+	/**
+	 * Collects the indices from a result set with a TABLE_NAME, an INDEX_NAME, a COLUMN_NAME and an ORDINAL_POSITION column.
+	 *
+	 * @param rs
+	 * @param indices - the indices collected so far
+	 * @return Map&lt;String, Map&lt;String, List&lt;String&gt;&gt;&gt;
+	 * @throws SQLException
+	 */
+	static Map<String, Map<String, List<String>>> indicesOf(ResultSet rs, Map<String, Map<String, List<String>>> indices) throws SQLException {
+		while (rs.next()) {
+			String indexName = rs.getString("INDEX_NAME");
+			String columnName = rs.getString("COLUMN_NAME");
+			int position = rs.getInt("ORDINAL_POSITION");
+			if (null == indexName || null == columnName || position < 1)
+				continue;
+			List<String> columns = indices.computeIfAbsent(rs.getString("TABLE_NAME"), k -> new HashMap<>()).computeIfAbsent(indexName, k -> new ArrayList<>());
+			while (columns.size() < position)
+				columns.add(null);
+			columns.set(position - 1, columnName);
+		}
+		return indices;
+	}
 
 	/**
 	 * The type of field type used for Identity in the Dialect Jargon
@@ -110,8 +222,17 @@ public interface SQLDialect {
 	 * @param discriminatorName
 	 * @param db
 	 * @return boolean
+	 * @deprecated the factory checks its columns against the catalog returned by {@link #readCatalog(Db)}, which this method reads
 	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db);
+	@Deprecated
+	default boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
+		try {
+			return new SchemaCatalog(readCatalog(db)).hasColumn(tableName, discriminatorName);
+		}
+		catch (SQLException e) {
+			throw new JaquError(e, e.getMessage());
+		}
+	}
 
 	/**
 	 * returns the function that is the right function syntax for this dialect
@@ -199,4 +320,66 @@ public interface SQLDialect {
 		StatementBuilder builder = new StatementBuilder("SELECT NEXT VALUE FOR ").append(seqName);
 		return builder.toString();
 	}
+
+	/**
+	 * Returns a single statement that inserts the row, or updates it when a row with the same primary key already exists.
+	 * Every column is bound by a '?' parameter in the order the columns are given.<br>
+	 * Default returns null, meaning the dialect has no such statement and merge falls back to checking if the row exists.
+	 *
+	 * @param tableName
+	 * @param primaryKeys - the primary key columns. These are also part of 'columns'
+	 * @param columns - all the columns written by the statement
+	 * @return String
+	 */
+	default String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		return null;
+	}
+
+	/**
+	 * Appends the ON clause and the WHEN MATCHED/WHEN NOT MATCHED parts of a standard MERGE statement where the target is aliased 't' and the
+	 * source 's'. Used by the dialects whose {@link #createMergeStatement(String, String[], String[])} is a MERGE, after the opening "ON (".
+	 *
+	 * @param buff - the statement up to the ON clause
+	 * @param primaryKeys
+	 * @param columns
+	 * @return StatementBuilder - the given builder
+	 */
+	static StatementBuilder mergeBody(StatementBuilder buff, String[] primaryKeys, String[] columns) {
+		buff.resetCount();
+		for (String key: primaryKeys) {
+			buff.appendExceptFirst(" AND ");
+			buff.append("t.").append(key).append(" = s.").append(key);
+		}
+		buff.append(")").resetCount();
+		List<String> keys = Arrays.asList(primaryKeys);
+		for (String column: columns) {
+			if (keys.contains(column))
+				continue;
+			buff.appendOnlyFirst(" WHEN MATCHED THEN UPDATE SET ");
+			buff.appendExceptFirst(", ");
+			buff.append("t.").append(column).append(" = s.").append(column);
+		}
+		buff.append(" WHEN NOT MATCHED THEN INSERT (").resetCount();
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append(column);
+		}
+		buff.append(") VALUES (").resetCount();
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append("s.").append(column);
+		}
+		return buff.append(')');
+	}
+
+	/**
+	 * Returns a null typed as the given data type, used where a query selects a null in place of a column, such as a union of tables that
+	 * do not all have the column. Default is a cast of null to the data type.
+	 *
+	 * @param dataType - the data type of the column as returned by {@link #getDataType(Class)}
+	 * @return String
+	 */
+	default String getTypedNull(String dataType) {
+		return "CAST(NULL AS " + dataType + ")";
+	}
 }
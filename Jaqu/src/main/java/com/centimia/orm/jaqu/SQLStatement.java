@@ -12,12 +12,16 @@
  */
 package com.centimia.orm.jaqu;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 
+import com.centimia.orm.jaqu.StatementLogger.Type;
+
 /**
  * This class represents a parameterized SQL statement.
  */
@@ -54,7 +58,16 @@ public class SQLStatement {
     }
 
     String logSQL() {
-    	StringBuilder log = new StringBuilder(buff.toString()).append(" [");
+    	return logSQL(buff.toString(), params.toArray());
+    }
+
+    /*
+     * the statement followed by its parameters, params may be null when the statement has none
+     */
+    static String logSQL(String sql, Object[] params) {
+    	if (null == params)
+    		return sql;
+    	StringBuilder log = new StringBuilder(sql).append(" [");
     	boolean first = true;
     	for (Object obj: params) {
     		if (!first)
@@ -69,17 +82,32 @@ public class SQLStatement {
     	return log.toString();
     }
 
+    /*
+     * log the statement when the factory shows SQL
+     */
+    void showSQL(Type type) {
+    	db.showSQL(type, getSQL(), params);
+    }
+
     SQLStatement addParameter(Object o) {
         params.add(o);
         return this;
     }
 
+    Object[] getParameters() {
+    	return params.toArray();
+    }
+
     <T> T executeQuery(IResultProcessor<T> processor) {
-        if (db.factory.isShowSQL())
-        	StatementLogger.select(logSQL());
+        showSQL(Type.SELECT);
+        StatementTimer timer = StatementTimer.start(db, getSQL(), params);
         try (PreparedStatement ps = prepare(EMPTY_PK)) {
+        	timer.prepared();
         	try (ResultSet rs = ps.executeQuery()) {
-        		return processor.processResult(rs);
+        		timer.executed();
+        		T result = processor.processResult(rs);
+        		timer.mapped();
+        		return result;
         	}
         }
         catch (SQLException e) {
@@ -97,6 +125,8 @@ public class SQLStatement {
 			    setValue(prep, i + 1, o);
 			}
 			prep.addBatch();
+			// the parameters of the next row are added from scratch
+			params.clear();
 		}
 		catch (SQLException e) {
 			throw new JaquError(e, e.getMessage());
@@ -104,10 +134,21 @@ public class SQLStatement {
     }
 
     int[] executeBatch(boolean clean) {
+    	if (null == prep)
+    		// nothing was batched
+    		return new int[0];
     	try {
+    		StatementTimer timer = StatementTimer.start(db, getSQL());
 			int[] result = prep.executeBatch();
+			timer.executed();
+			int rows = 0;
+			for (int count : result)
+				rows += Math.max(count, 0);
+			timer.written(rows);
+			db.wrote();
 			if (clean) {
 				// we need to clear this statement from here
+				prep.close();
 				prep = null;
 			}
 			return result;
@@ -119,8 +160,14 @@ public class SQLStatement {
     }
 
 	int executeUpdate() {
+		StatementTimer timer = StatementTimer.start(db, getSQL(), params);
 		try (PreparedStatement ps = prepare(EMPTY_PK)) {
-        	return ps.executeUpdate();
+			timer.prepared();
+			int rows = ps.executeUpdate();
+			timer.executed();
+			timer.written(rows);
+			db.wrote();
+        	return rows;
         }
         catch (SQLException e) {
         	db.factory.dialect.dialect.handleDeadlockException(e);
@@ -129,8 +176,13 @@ public class SQLStatement {
     }
 
 	Long executeUpdateWithId(String[] idColumnNames) {
+		StatementTimer timer = StatementTimer.start(db, getSQL(), params);
 		try (PreparedStatement ps = prepare(idColumnNames)) {
+			timer.prepared();
 			int size = ps.executeUpdate();
+			timer.executed();
+			timer.written(size);
+			db.wrote();
 			if (size > 0)
 				return getGeneratedKeys(ps.getGeneratedKeys(), size);
 			return null;
@@ -161,9 +213,29 @@ public class SQLStatement {
 
 	private void setValue(PreparedStatement prep, int parameterIndex, Object x) {
         try {
-        	if (x instanceof java.util.Date)
-        		x = new Timestamp(((java.util.Date) x).getTime());
-            prep.setObject(parameterIndex, x);
+        	// the common types are bound through their typed setters, the driver does not need to inspect them
+        	if (x instanceof String)
+        		prep.setString(parameterIndex, (String) x);
+        	else if (x instanceof Long)
+        		prep.setLong(parameterIndex, (Long) x);
+        	else if (x instanceof Integer)
+        		prep.setInt(parameterIndex, (Integer) x);
+        	else if (x instanceof Boolean)
+        		prep.setBoolean(parameterIndex, (Boolean) x);
+        	else if (x instanceof Double)
+        		prep.setDouble(parameterIndex, (Double) x);
+        	else if (x instanceof Timestamp)
+        		// already a timestamp, copying it would also lose its nanos
+        		prep.setTimestamp(parameterIndex, (Timestamp) x);
+        	else if (x instanceof java.util.Date)
+        		prep.setTimestamp(parameterIndex, new Timestamp(((java.util.Date) x).getTime()));
+        	else if (x instanceof InputStream)
+        		// streamed to the db, the content is never held in memory
+        		prep.setBinaryStream(parameterIndex, (InputStream) x);
+        	else if (x instanceof Reader)
+        		prep.setCharacterStream(parameterIndex, (Reader) x);
+        	else
+        		prep.setObject(parameterIndex, x);
         }
         catch (SQLException e) {
             throw new JaquError(e, e.getMessage());
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The tables and columns of the database schema, read once by the factory when it first defines a table. The factory checks the tables and
+ * columns of the entities it defines against the catalog instead of querying the database for each one, and adds what it creates to it.
+ * Names are matched ignoring case, as databases store unquoted identifiers in upper or lower case.<br>
+ * The indices of the tables are read once as well, when the factory first checks a relation for an index.
+ *
+ * @author Shai Bentin
+ */
+final class SchemaCatalog {
+
+	// the columns of each table, all names in upper case
+	private final Map<String, Set<String>> tables = new ConcurrentHashMap<>();
+
+	// the columns, in order, of the indices of each table, all names in upper case
+	private final Map<String, List<List<String>>> indices = new ConcurrentHashMap<>();
+
+	private volatile boolean indicesRead;
+
+	// the missing indices already reported, so each is reported once
+	private final Set<String> missingIndices = ConcurrentHashMap.newKeySet();
+
+	SchemaCatalog(Map<String, Set<String>> tables) {
+		for (Map.Entry<String, Set<String>> table : tables.entrySet()) {
+			Set<String> columns = ConcurrentHashMap.newKeySet();
+			for (String column : table.getValue())
+				columns.add(column.toUpperCase());
+			this.tables.merge(table.getKey().toUpperCase(), columns, (a, b) -> {
+				a.addAll(b);
+				return a;
+			});
+		}
+	}
+
+	boolean hasTable(String table) {
+		return tables.containsKey(table.toUpperCase());
+	}
+
+	boolean hasColumn(String table, String column) {
+		return getColumns(table).contains(column.toUpperCase());
+	}
+
+	/**
+	 * Returns the columns of the table, upper case. Empty when the table does not exist.
+	 *
+	 * @param table
+	 * @return Set&lt;String&gt;
+	 */
+	Set<String> getColumns(String table) {
+		Set<String> columns = tables.get(table.toUpperCase());
+		return null == columns ? Collections.<String>emptySet() : Collections.unmodifiableSet(columns);
+	}
+
+	/**
+	 * Record a table or columns created by the factory.
+	 *
+	 * @param table
+	 * @param columns
+	 */
+	void add(String table, String ... columns) {
+		Set<String> tableColumns = tables.computeIfAbsent(table.toUpperCase(), k -> ConcurrentHashMap.newKeySet());
+		for (String column : columns)
+			tableColumns.add(column.toUpperCase());
+	}
+
+	boolean isIndicesRead() {
+		return indicesRead;
+	}
+
+	/**
+	 * Record the indices read from the database.
+	 *
+	 * @param indices - the columns, in order, of each index of each table
+	 */
+	void addIndices(Map<String, Map<String, List<String>>> indices) {
+		for (Map.Entry<String, Map<String, List<String>>> table : indices.entrySet()) {
+			for (List<String> columns : table.getValue().values())
+				addIndex(table.getKey(), columns.toArray(new String[0]));
+		}
+		indicesRead = true;
+	}
+
+	/**
+	 * Record an index created by the factory.
+	 *
+	 * @param table
+	 * @param columns
+	 */
+	void addIndex(String table, String ... columns) {
+		List<String> indexColumns = new ArrayList<>();
+		for (String column : columns)
+			indexColumns.add(null == column ? null : column.toUpperCase());
+		this.indices.computeIfAbsent(table.toUpperCase(), k -> new CopyOnWriteArrayList<>()).add(indexColumns);
+	}
+
+	/**
+	 * Record a missing index of a table that existed before.
+	 *
+	 * @param table
+	 * @param columns
+	 * @return boolean true the first time the index is recorded
+	 */
+	boolean addMissingIndex(String table, String ... columns) {
+		return missingIndices.add((table + "(" + String.join(",", columns) + ")").toUpperCase());
+	}
+
+	/**
+	 * true if the table has an index whose leading columns are the given columns, in order.
+	 *
+	 * @param table
+	 * @param columns
+	 * @return boolean
+	 */
+	boolean hasIndex(String table, String ... columns) {
+		List<List<String>> tableIndices = indices.get(table.toUpperCase());
+		if (null == tableIndices)
+			return false;
+		for (List<String> indexColumns : tableIndices) {
+			if (indexColumns.size() < columns.length)
+				continue;
+			boolean match = true;
+			for (int i = 0; i < columns.length && match; i++)
+				match = columns[i].equalsIgnoreCase(indexColumns.get(i));
+			if (match)
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Aggregates the statements of a factory by their shape and logs the statements that take longer than the threshold, with their parameters.
+ * Parameters are only rendered for slow statements. The table of shapes is bounded, statements of shapes beyond it are only counted as overflow.
+ *
+ * @author Shai Bentin
+ */
+final class SlowQueryLog {
+
+	static final int MAX_SHAPES = 1000;
+
+	private final long thresholdNanos;
+	private final Map<String, Shape> shapes = new ConcurrentHashMap<>();
+	private final LongAdder overflow = new LongAdder();
+
+	SlowQueryLog(long thresholdMillis) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+	}
+
+	long getThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	void record(String fingerprint, long nanos, Supplier<String> statement) {
+		Shape shape = shapes.get(fingerprint);
+		if (null == shape) {
+			if (shapes.size() >= MAX_SHAPES) {
+				overflow.increment();
+				shape = null;
+			}
+			else
+				shape = shapes.computeIfAbsent(fingerprint, f -> new Shape());
+		}
+		boolean slow = nanos > thresholdNanos;
+		if (null != shape) {
+			shape.count.increment();
+			shape.total.add(nanos);
+			shape.max.accumulate(nanos);
+			if (slow)
+				shape.slow.increment();
+		}
+		if (slow)
+			StatementLogger.slow(String.format("%.3fms %s", nanos / 1000000d, statement.get()));
+	}
+
+	/*
+	 * the shapes, the ones that took the most time in total first
+	 */
+	List<QueryStatistics> getStatistics() {
+		List<QueryStatistics> statistics = new ArrayList<>();
+		for (Map.Entry<String, Shape> entry : shapes.entrySet()) {
+			Shape shape = entry.getValue();
+			statistics.add(new QueryStatistics(entry.getKey(), shape.count.sum(), shape.slow.sum(), shape.total.sum(), shape.max.get()));
+		}
+		statistics.sort((a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+		return statistics;
+	}
+
+	long getOverflow() {
+		return overflow.sum();
+	}
+
+	private static final class Shape {
+		final LongAdder count = new LongAdder();
+		final LongAdder slow = new LongAdder();
+		final LongAdder total = new LongAdder();
+		final LongAccumulator max = new LongAccumulator(Long::max, 0);
+	}
+}
@@ -24,7 +24,8 @@ import com.centimia.orm.jaqu.util.Slf4jLogger;
  * Default output stream is System.out.<br>
  * Statement logging is disabled by default.
  * <p>
- * This class also tracks the counts for generated statements by major type.
+ * This class also tracks the counts for generated statements by major type, for all factories and only while showSQL is on.
+ * For the statements of a single factory, with their latencies, see {@link JaquMetrics}.
  *
  */
 public class StatementLogger {
@@ -50,6 +51,13 @@ public class StatementLogger {
     private static final AtomicLong ALTER_COUNT = new AtomicLong();
     private static boolean isGathering = false;
 
+    /**
+     * The major types of statements counted.
+     */
+    enum Type {
+    	CREATE, INSERT, UPDATE, MERGE, DELETE, SELECT, ALTER
+    }
+
     static void create(String statement) {
         CREATE_COUNT.incrementAndGet();
         log(statement);
@@ -85,6 +93,19 @@ public class StatementLogger {
         log(statement);
     }
 
+    static void log(Type type, String statement) {
+    	switch (type) {
+    		case CREATE: create(statement); break;
+    		case INSERT: insert(statement); break;
+    		case UPDATE: update(statement); break;
+    		case MERGE: merge(statement); break;
+    		case DELETE: delete(statement); break;
+    		case SELECT: select(statement); break;
+    		case ALTER: alter(statement); break;
+    		default: log(statement);
+    	}
+    }
+
     static void log(String statement) {
     	if (logger.isDebugEnabled()) {
     		isGathering = true;
@@ -92,6 +113,10 @@ public class StatementLogger {
     	}
     }
 
+    static void slow(String statement) {
+    	logger.info("Slow statement " + statement);
+    }
+
     static void error(String statement) {
     	logger.error(statement);
     }
@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.centimia.orm.jaqu.JaquMetrics.Kind;
+
+/**
+ * Times the phases of one statement and reports them to the factory's {@link JaquMetrics}, to its slow query log (see {@link SlowQueryLog}) and as a
+ * flight recorder event (see {@link JaquEvents}). When the factory has no metrics nor slow query log and the event is not recorded the shared
+ * {@link #NONE} timer is used and nothing is measured.
+ * <p>
+ * The rows of a query are the entities mapped while its result is processed. A query run while mapping (an eagerly loaded relation) counts its own
+ * rows, not those of the statement it was run from.
+ *
+ * @author Shai Bentin
+ */
+final class StatementTimer {
+
+	static final StatementTimer NONE = new StatementTimer(null, null, null, null, null, null);
+
+	private static final Pattern TABLE = Pattern.compile("\\b(?:FROM|INTO|UPDATE|TABLE)\\s+([\\w.$\"`\\[\\]]+)", Pattern.CASE_INSENSITIVE);
+	// string and number literals, replaced in the fingerprint of a statement
+	private static final Pattern LITERAL = Pattern.compile("'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b");
+	// the aliases of the tables, numbered anew in every query
+	private static final Pattern ALIAS = Pattern.compile("\\bT\\d+\\b");
+	// a list of parameters, an 'in' list of any length has the same shape
+	private static final Pattern LIST = Pattern.compile("\\?(?:\\s*,\\s*\\?)+");
+	private static final Pattern SPACES = Pattern.compile("\\s+");
+	// the longest string parameter rendered in the log of a slow statement
+	private static final int MAX_BIND_LENGTH = 100;
+	// the table of a statement, most statements are built once and repeat
+	private static final Map<String, String> TABLES = new ConcurrentHashMap<>();
+	private static final int MAX_TABLES = 4096;
+	// the fingerprint of a statement, computed once for the statements that repeat
+	private static final Map<String, String> FINGERPRINTS = new ConcurrentHashMap<>();
+	private static final String NO_TABLE = "";
+
+	private final JaquMetrics metrics;
+	private final Object event;
+	private final SlowQueryLog slowLog;
+	private final Db db;
+	private final String sql;
+	private final List<?> binds;
+	private final long start;
+	private long prepared;
+	private long executed;
+	private int outerRows;
+
+	private StatementTimer(JaquMetrics metrics, Object event, SlowQueryLog slowLog, Db db, String sql, List<?> binds) {
+		this.metrics = metrics;
+		this.event = event;
+		this.slowLog = slowLog;
+		this.db = db;
+		this.sql = sql;
+		this.binds = binds;
+		this.start = null == db ? 0 : System.nanoTime();
+		if (null != db) {
+			this.outerRows = db.rowsRead;
+			db.rowsRead = 0;
+		}
+	}
+
+	static StatementTimer start(Db db, String sql) {
+		return start(db, sql, null);
+	}
+
+	/*
+	 * binds are the parameters of the statement, they are only read when the statement is slow
+	 */
+	static StatementTimer start(Db db, String sql, List<?> binds) {
+		db.countStatement(sql);
+		JaquMetrics metrics = db.factory.getMetrics();
+		SlowQueryLog slowLog = db.factory.getSlowQueryLog();
+		Object event = JaquEvents.beginStatement();
+		return null == metrics && null == slowLog && null == event ? NONE : new StatementTimer(metrics, event, slowLog, db, sql, binds);
+	}
+
+	/*
+	 * the statement is prepared and its parameters are bound
+	 */
+	void prepared() {
+		if (NONE != this)
+			prepared = System.nanoTime();
+	}
+
+	/*
+	 * the database returned
+	 */
+	void executed() {
+		if (NONE != this)
+			executed = System.nanoTime();
+	}
+
+	/*
+	 * a query's result was mapped
+	 */
+	void mapped() {
+		if (NONE == this)
+			return;
+		long end = System.nanoTime();
+		int rows = db.rowsRead;
+		db.rowsRead = outerRows;
+		report(Kind.of(sql), end - executed, rows);
+	}
+
+	/*
+	 * a statement that writes returned its update count
+	 */
+	void written(int rows) {
+		if (NONE == this)
+			return;
+		db.rowsRead = outerRows;
+		report(Kind.of(sql), 0, rows);
+	}
+
+	private void report(Kind kind, long mappingNanos, int rows) {
+		long prepare = 0 == prepared ? 0 : prepared - start;
+		long execute = executed - (0 == prepared ? start : prepared);
+		String table = tableOf(sql);
+		if (null != event)
+			JaquEvents.commitStatement(event, kind.name(), fingerprint(sql), table, rows, prepare, execute, mappingNanos);
+		if (null != slowLog)
+			slowLog.record(fingerprint(sql), prepare + execute + mappingNanos, this::render);
+		if (null == metrics)
+			return;
+		try {
+			metrics.statement(kind, table, prepare, execute, mappingNanos, rows);
+		}
+		catch (RuntimeException e) {
+			StatementLogger.error("Metrics failed - " + e.getMessage());
+		}
+	}
+
+	/*
+	 * the first table the statement names
+	 */
+	static String tableOf(String sql) {
+		String table = TABLES.get(sql);
+		if (null == table) {
+			Matcher m = TABLE.matcher(sql);
+			table = m.find() ? m.group(1) : NO_TABLE;
+			if (TABLES.size() < MAX_TABLES)
+				TABLES.put(sql, table);
+		}
+		return table.isEmpty() ? null : table;
+	}
+
+	/*
+	 * the statement with its literals replaced by '?', its lists of parameters collapsed to one and its table aliases unnumbered, so statements
+	 * differing only in their values share a fingerprint
+	 */
+	static String fingerprint(String sql) {
+		String shape = FINGERPRINTS.get(sql);
+		if (null == shape) {
+			shape = ALIAS.matcher(sql).replaceAll("T");
+			shape = LITERAL.matcher(shape).replaceAll("?");
+			shape = LIST.matcher(shape).replaceAll("?");
+			shape = SPACES.matcher(shape).replaceAll(" ").trim();
+			if (FINGERPRINTS.size() < MAX_TABLES)
+				FINGERPRINTS.put(sql, shape);
+		}
+		return shape;
+	}
+
+	/*
+	 * the statement with its parameters, long strings are cut and LOBs are not read
+	 */
+	private String render() {
+		if (null == binds || binds.isEmpty())
+			return sql;
+		StringBuilder log = new StringBuilder(sql).append(" [");
+		boolean first = true;
+		for (Object bind : binds) {
+			if (!first)
+				log.append(", ");
+			first = false;
+			if (null == bind)
+				log.append("null");
+			else if (bind instanceof InputStream || bind instanceof Blob || bind instanceof byte[])
+				log.append("<binary>");
+			else if (bind instanceof Reader || bind instanceof Clob)
+				log.append("<text>");
+			else {
+				String value = bind.toString();
+				if (value.length() > MAX_BIND_LENGTH)
+					log.append(value, 0, MAX_BIND_LENGTH).append("...");
+				else
+					log.append(value);
+			}
+		}
+		return log.append("]").toString();
+	}
+}
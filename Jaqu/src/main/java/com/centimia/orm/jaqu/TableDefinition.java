@@ -12,24 +12,35 @@
  */
 package com.centimia.orm.jaqu;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
+import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.Clob;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
+import com.centimia.orm.jaqu.StatementLogger.Type;
 import com.centimia.orm.jaqu.annotation.Cascade;
 import com.centimia.orm.jaqu.annotation.Column;
 import com.centimia.orm.jaqu.annotation.Converter;
@@ -54,7 +65,6 @@ import com.centimia.orm.jaqu.annotation.Transient;
 import com.centimia.orm.jaqu.annotation.Version;
 import com.centimia.orm.jaqu.constant.Constants;
 import com.centimia.orm.jaqu.util.ClassUtils;
-import com.centimia.orm.jaqu.util.FieldComperator;
 import com.centimia.orm.jaqu.util.JaquConverter;
 import com.centimia.orm.jaqu.util.StatementBuilder;
 import com.centimia.orm.jaqu.util.StringUtils;
@@ -67,6 +77,12 @@ import com.centimia.orm.jaqu.util.Utils;
  */
 class TableDefinition<T> {
 	private static final String TO_DB = "toDb";
+	/** the enhancer generated metadata of the classes looked up, empty for the classes it did not generate it for */
+	private static final Map<Class<?>, Optional<EntityMetadata>> METADATA = new ConcurrentHashMap<>();
+	/** the maximum number of parameters bound in a single 'IN' list. Kept below the limits of the supported databases (Oracle allows 1000) */
+	static final int MAX_IN_PARAMETERS = 500;
+	/** the number of rows sent in a single JDBC batch */
+	static final int BATCH_SIZE = 500;
 
 	enum FieldType {
 		NORMAL, FK, M2M, O2M, M2O;
@@ -100,6 +116,13 @@ class TableDefinition<T> {
 		boolean notNull;
 		boolean isVersion = false;
 		boolean isExtension;
+		/** the converter of the field, when annotated with {@link Converter} */
+		@SuppressWarnings("rawtypes")
+		JaquConverter converter;
+		/** reads the column of a plain field, null when the column is read through the dialect */
+		Codec codec;
+		/** a plain column annotated with {@link Lazy}, it is left out of selects and read on first access */
+		boolean isLazyColumn;
 
 		@SuppressWarnings("rawtypes")
 		Object getValue(Object obj) {
@@ -129,6 +152,18 @@ class TableDefinition<T> {
 			}
 		}
 
+		/*
+		 * the eagerly loaded relation as it is set on the field. A read only session gets the plain collection, it has nothing to track
+		 */
+		@SuppressWarnings({ "rawtypes", "unchecked" })
+		private Collection relationValue(Db db, Object objToSet, Collection values) {
+			if (db.isReadOnly())
+				return values;
+			if (values instanceof List)
+				return new JaquList((List)values, db, this, db.factory.getPrimaryKey(objToSet));
+			return new JaquSet((Set)values, db, this, db.factory.getPrimaryKey(objToSet));
+		}
+
 		Object initWithNewObject(Object obj) {
 			if (Types.ENUM == type || Types.ENUM_INT == type) {
 				// initialize with the first value in the enum (to be used as key)
@@ -180,6 +215,8 @@ class TableDefinition<T> {
 
 		@SuppressWarnings({ "unchecked", "rawtypes" })
 		void setValue(final Object objToSet, Object fieldValueFromDb, final Db db) {
+			// the statements loading a relation are attributed to it when the session detects repeated queries
+			Object[] outer = (FieldType.NORMAL == fieldType || null == db) ? null : db.enterLoad(objToSet.getClass(), field.getName());
 			try {
 				Object tmp = fieldValueFromDb;
 				switch (fieldType) {
@@ -291,35 +328,38 @@ class TableDefinition<T> {
 					case O2M: {
 						if (relationDefinition.eagerLoad && db != null) {
 							if (relationDefinition.relationTableName != null) {
-								List resultList = Utils.newArrayList();
-								for (Class<?> lDataType: relationDefinition.dataType) {
-									resultList.addAll(db.getRelationByRelationTable(this, db.factory.getPrimaryKey(objToSet), lDataType));
-								}
+								List resultList;
+								if (relationDefinition.dataType.length > 1)
+									resultList = db.getPolymorphicRelation(this, db.factory.getPrimaryKey(objToSet));
+								else
+									resultList = db.getRelationByRelationTable(this, db.factory.getPrimaryKey(objToSet), relationDefinition.dataType[0]);
 
 								if (!resultList.isEmpty()) {
-									if (relationDefinition.dataType.length > 1 && null != relationDefinition.orderByField) {
-										resultList.sort(new FieldComperator(relationDefinition.dataType[0], relationDefinition.orderByField));
-									}
 									if (this.field.getType().isAssignableFrom(resultList.getClass()))
-										fieldValueFromDb = new JaquList(resultList, db, this, db.factory.getPrimaryKey(objToSet));
+										fieldValueFromDb = relationValue(db, objToSet, resultList);
 									else {
 										// only when the type is a Set type we will be here
 										HashSet set = Utils.newHashSet();
 										set.addAll(resultList);
-										fieldValueFromDb = new JaquSet(set, db, this, db.factory.getPrimaryKey(objToSet));
+										fieldValueFromDb = relationValue(db, objToSet, set);
 									}
 								}
 								else {
 									// on eager loading if no result exists we set to an empty collection
 									if (this.field.getType().isAssignableFrom(resultList.getClass()))
-										fieldValueFromDb = new JaquList(Utils.newArrayList(), db, this, db.factory.getPrimaryKey(objToSet)) ;
+										fieldValueFromDb = relationValue(db, objToSet, Utils.newArrayList());
 									else
-										fieldValueFromDb = new JaquSet(Utils.newHashSet(), db, this, db.factory.getPrimaryKey(objToSet));
+										fieldValueFromDb = relationValue(db, objToSet, Utils.newHashSet());
 								}
 							}
 							else {
-								List resultList = Utils.newArrayList();
-								for (Class<?> lDataType: relationDefinition.dataType) {
+								List resultList;
+								if (relationDefinition.dataType.length > 1)
+									// all the types are selected in one statement
+									resultList = db.getPolymorphicRelation(this, db.factory.getPrimaryKey(objToSet));
+								else {
+									resultList = Utils.newArrayList();
+									Class<?> lDataType = relationDefinition.dataType[0];
 									Object descriptor = Utils.newObject(lDataType);
 									QueryWhere<?> where = db.from(descriptor).where(st -> {
 										FieldDefinition fdef = ((SelectTable)st).getAliasDefinition().getDefinitionForField(relationDefinition.relationFieldName);
@@ -346,24 +386,21 @@ class TableDefinition<T> {
 										resultList.addAll(where.select());
 								}
 								if (!resultList.isEmpty()) {
-									if (relationDefinition.dataType.length > 1 && null != relationDefinition.orderByField) {
-										resultList.sort(new FieldComperator(relationDefinition.dataType[0], relationDefinition.orderByField));
-									}
 									if (this.field.getType().isAssignableFrom(resultList.getClass()))
-										fieldValueFromDb = new JaquList(resultList, db, this, db.factory.getPrimaryKey(objToSet));
+										fieldValueFromDb = relationValue(db, objToSet, resultList);
 									else {
 										// only when the type is a Set type we will be here
 										HashSet set = Utils.newHashSet();
 										set.addAll(resultList);
-										fieldValueFromDb = new JaquSet(set, db, this, db.factory.getPrimaryKey(objToSet));
+										fieldValueFromDb = relationValue(db, objToSet, set);
 									}
 								}
 								else {
 									// on eager loading if no result exists we set to an empty collection
 									if (this.field.getType().isAssignableFrom(resultList.getClass()))
-										fieldValueFromDb = new JaquList(Utils.newArrayList(), db, this, db.factory.getPrimaryKey(objToSet)) ;
+										fieldValueFromDb = relationValue(db, objToSet, Utils.newArrayList());
 									else
-										fieldValueFromDb = new JaquSet(Utils.newHashSet(), db, this, db.factory.getPrimaryKey(objToSet));
+										fieldValueFromDb = relationValue(db, objToSet, Utils.newHashSet());
 								}
 							}
 						}
@@ -372,10 +409,13 @@ class TableDefinition<T> {
 							Field dbField = objToSet.getClass().getField("db");
 							// put the open connection on the object. As long as the connection is open calling the getter method on the
 							// 'obj' will produce the relation
-							dbField.set(objToSet, db);
+							if (null == db || !db.isReadOnly())
+								dbField.set(objToSet, db);
 							fieldValueFromDb = null;
 						}
 						field.set(objToSet, fieldValueFromDb);
+						if (null != fieldValueFromDb)
+							db.snapshotRelation((Collection)fieldValueFromDb);
 						break;
 					}
 					case M2M: {
@@ -383,7 +423,8 @@ class TableDefinition<T> {
 						Field dbField = objToSet.getClass().getField("db");
 						// put the open connection on the object. As long as the connection is open calling the getter method on the 'obj'
 						// will produce the relation
-						dbField.set(objToSet, db);
+						if (null == db || !db.isReadOnly())
+							dbField.set(objToSet, db);
 						break;
 					}
 					default:
@@ -396,6 +437,10 @@ class TableDefinition<T> {
 				String msg = String.format(OBJECT_VALUE, objectString, valueString);
 				throw new JaquError(e, msg + e.getMessage());
 			}
+			finally {
+				if (null != outer)
+					db.exitLoad(outer);
+			}
 		}
 
 		Object read(ResultSet rs, Dialect dialect) {
@@ -461,6 +506,8 @@ class TableDefinition<T> {
 		String orderByColumn = null;
 		/** the direction of order by. Default is ASC" */
 		String direction = "ASC";
+		/** When true the columns holding the relation are indexed when JaQu creates the tables. 'true' is default */
+		boolean index = true;
 	}
 
 	final Dialect dialect;
@@ -479,6 +526,16 @@ class TableDefinition<T> {
 	@SuppressWarnings("rawtypes")
 	private CRUDInterceptor	interceptor;
 	private Event[]	interceptorEvents;
+	/** the single statement merge of this table in the current dialect, resolved on first merge. Empty when not applicable */
+	private String mergeStatement = null;
+	/** true when the relations of this table lead back to it, resolved on first list merge */
+	private Boolean selfReachable = null;
+	/** true when the table was created by this factory, only such tables get their relation indices created */
+	private boolean created = false;
+	/** the select by primary keys of this table, by the number of keys it binds */
+	private final Map<Integer, String> findStatements = new ConcurrentHashMap<>();
+	/** the JaQu annotations of the fields mapped from generated metadata, fields mapped by reflection are not in the map */
+	private final Map<Field, Set<String>> fieldAnnotations = Utils.newHashMap();
 
 	TableDefinition(Class<T> clazz, Dialect dialect) {
 		this.dialect = dialect;
@@ -574,6 +631,7 @@ class TableDefinition<T> {
 			}
 		}
 		def.direction = many2Many.direction();
+		def.index = many2Many.index();
 
 		if (fieldDefinition != null) {
 			fieldDefinition.relationDefinition = def;
@@ -585,7 +643,7 @@ class TableDefinition<T> {
 			def.relationColumnName = relationColumnName;
 			def.relationFieldName = relationFieldName;
 		}
-		if (db.factory.createTable) {
+		if (db.factory.createsTables()) {
 			// Try to get the primary key of the relationship
 			Class<?> childPkType = many2Many.childPkType();
 			if (Object.class.equals(childPkType)) {
@@ -598,7 +656,7 @@ class TableDefinition<T> {
 							"You declared a join table, but JaQu was not able to find your child Primary Key. Try setting the 'childPkType' property on the @one2Many annotation");
 				}
 			}
-			createRelationTable(childType[0], many2Many.joinTableName(), relationFieldName, childPkType, def.relationColumnName, db);
+			createRelationTable(childType[0], many2Many.joinTableName(), relationFieldName, childPkType, def.relationColumnName, def.index, db);
 		}
 	}
 
@@ -638,6 +696,7 @@ class TableDefinition<T> {
 			}
 		}
 		def.direction = one2ManyAnnotation.direction();
+		def.index = one2ManyAnnotation.index();
 		if (one2ManyAnnotation.cascadeType() != null)
 			def.cascadeType = one2ManyAnnotation.cascadeType();
 
@@ -651,7 +710,7 @@ class TableDefinition<T> {
 			def.relationFieldName = relationFieldName;
 		}
 
-		if (db.factory.createTable && one2ManyAnnotation.joinTableName() != null && !"".equals(one2ManyAnnotation.joinTableName())) {
+		if (db.factory.createsTables() && one2ManyAnnotation.joinTableName() != null && !"".equals(one2ManyAnnotation.joinTableName())) {
 			// add relation table creation
 			// Try to get the primary key of the relationship
 			Class<?> childPkType = one2ManyAnnotation.childPkType();
@@ -663,7 +722,7 @@ class TableDefinition<T> {
 					throw new JaquError(e, "You declared a join table, but JaQu was not able to find your child Primary Key. Try setting the 'childPkType' property on the @one2Many annotation");
 				}
 			}
-			createRelationTable(childType[0], one2ManyAnnotation.joinTableName(), relationFieldName, childPkType, def.relationColumnName, db);
+			createRelationTable(childType[0], one2ManyAnnotation.joinTableName(), relationFieldName, childPkType, def.relationColumnName, def.index, db);
 		}
 	}
 
@@ -679,14 +738,14 @@ class TableDefinition<T> {
 				continue;
 
 			// don't persist ignored fields.
-			if (null != f.getAnnotation(Transient.class))
+			if (null != getAnnotation(f, Transient.class))
 				continue;
 
 			Class<?> classType = f.getType();
 			if (classType.isPrimitive()) {
 				throw new JaquError("Jaqu does not allow primitive types. See documentation! Field %s was decalred %s", f.getName(), f.getType());
 			}
-			Converter converter = f.getAnnotation(Converter.class);
+			Converter converter = getAnnotation(f, Converter.class);
 			if (null != converter) {
 				Method[] methods = converter.value().getMethods();
 				if (0 < methods.length) {
@@ -700,13 +759,15 @@ class TableDefinition<T> {
 			}
 			f.setAccessible(true);
 			FieldDefinition fieldDef = new FieldDefinition();
-			if (null != f.getAnnotation(Extension.class))
+			if (null != getAnnotation(f, Extension.class))
 				fieldDef.isExtension = true;
 			fieldDef.field = f;
 			fieldDef.columnName = f.getName();
+			if (null != converter)
+				fieldDef.converter = Utils.newObject(converter.value());
 			fields.add(fieldDef);
 			fieldMap.put(f.getName(), fieldDef);
-			if (null != fieldDef.field.getAnnotation(NoUpdateOnSave.class) ||
+			if (null != getAnnotation(fieldDef.field, NoUpdateOnSave.class) ||
 					null != fieldDef.field.getType().getAnnotation(Immutable.class))
 				// if this field is marked as NoUpdateOnSave we mark it here
 				fieldDef.noUpdateField = true;
@@ -716,7 +777,7 @@ class TableDefinition<T> {
 					|| Blob.class.isAssignableFrom(classType) || Clob.class.isAssignableFrom(classType)
 					|| UUID.class.isAssignableFrom(classType) || classType.isEnum()) {
 
-				if (null != f.getAnnotation(Version.class)) {
+				if (null != getAnnotation(f, Version.class)) {
 					if (null == this.version) {
 						fieldDef.isVersion = true;
 						this.version = fieldDef;
@@ -725,7 +786,7 @@ class TableDefinition<T> {
 						throw new JaquError("Too many version fields defined in this class: %s - %s", tableName, clazz);
 				}
 				// handle column name on annotation
-				Column columnAnnotation = f.getAnnotation(Column.class);
+				Column columnAnnotation = getAnnotation(f, Column.class);
 				fieldDef.type = getTypes(classType);
 				if (String.class.isAssignableFrom(classType) || classType.isEnum()) {
 					// strings have a default size
@@ -748,7 +809,7 @@ class TableDefinition<T> {
 						fieldDef.dataType = getDataType(f.getType());
 				}
 
-				PrimaryKey pkAnnotation = f.getAnnotation(PrimaryKey.class);
+				PrimaryKey pkAnnotation = getAnnotation(f, PrimaryKey.class);
 				if (pkAnnotation != null) {
 					if (null == primaryKeyColumnNames)
 						primaryKeyColumnNames = Utils.newArrayList();
@@ -792,12 +853,12 @@ class TableDefinition<T> {
 					catch (NoSuchMethodException nsme) {
 						throw new JaquError(nsme, "Relation fields must have a getter in the form of get %s in class %s", methodName, clazz.getName());
 					}
-					One2Many one2ManyAnnotation = f.getAnnotation(One2Many.class);
+					One2Many one2ManyAnnotation = getAnnotation(f, One2Many.class);
 					if (one2ManyAnnotation != null) {
 						addOneToMany(fieldDef, one2ManyAnnotation, db);
 						continue;
 					}
-					Many2Many many2ManyAnnotation = f.getAnnotation(Many2Many.class);
+					Many2Many many2ManyAnnotation = getAnnotation(f, Many2Many.class);
 					if (many2ManyAnnotation != null) {
 						addManyToMany(fieldDef, many2ManyAnnotation, db);
 					}
@@ -809,12 +870,12 @@ class TableDefinition<T> {
 				MappedSuperclass mapped = classType.getAnnotation(MappedSuperclass.class);
 				if (null != entity || null != mapped) {
 					// this class is a table
-					Column columnAnnotation = f.getAnnotation(Column.class);
+					Column columnAnnotation = getAnnotation(f, Column.class);
 					if (columnAnnotation != null && !StringUtils.isNullOrEmpty(columnAnnotation.name())) {
 						fieldDef.columnName = columnAnnotation.name();
 					}
 					fieldDef.type = Types.FK;
-					Many2One many2one = f.getAnnotation(Many2One.class);
+					Many2One many2one = getAnnotation(f, Many2One.class);
 					if (null == many2one) {
 						// its a foreign key
 						fieldDef.fieldType = FieldType.FK;
@@ -853,12 +914,13 @@ class TableDefinition<T> {
 					}
 				}
 				else {
-					// this will be stored as a blob...
-					fieldDef.dataType = dialect.getDataType(Blob.class);
-					fieldDef.type = Types.BLOB;
+					// this will be stored as a blob, a character stream as a clob
+					boolean characters = Reader.class.isAssignableFrom(classType);
+					fieldDef.dataType = dialect.getDataType(characters ? Clob.class : Blob.class);
+					fieldDef.type = characters ? Types.CLOB : Types.BLOB;
 
 					// handle column name on annotation
-					Column columnAnnotation = f.getAnnotation(Column.class);
+					Column columnAnnotation = getAnnotation(f, Column.class);
 					if (null != columnAnnotation) {
 						if (!StringUtils.isNullOrEmpty(columnAnnotation.name()))
 							fieldDef.columnName = columnAnnotation.name();
@@ -870,6 +932,11 @@ class TableDefinition<T> {
 				}
 			}
 		}
+		for (FieldDefinition fieldDef : fields) {
+			fieldDef.codec = Codec.forField(fieldDef);
+			fieldDef.isLazyColumn = FieldType.NORMAL == fieldDef.fieldType && !fieldDef.isSilent && !fieldDef.isPrimaryKey && !fieldDef.isVersion
+					&& null != getAnnotation(fieldDef.field, Lazy.class);
+		}
 		// make sure the list of fields is sorted according to field type. we want the list to return the normal simple fields first then the
 		// FK fields and then O2M and M2M. This way we make sure we have the primary key of the object before we try checking for reentrant.
 		Collections.sort(fields);
@@ -902,17 +969,17 @@ class TableDefinition<T> {
 			Class<? super A> superClazz = clazz.getSuperclass();
 			superFields = addSuperClassFields(superClazz);
 			if (null != superFields) {
-				Field[] childFields = clazz.getDeclaredFields();
+				Field[] childFields = declaredFields(clazz);
 				classFields = new Field[superFields.length + childFields.length];
 				System.arraycopy(superFields, 0, classFields, 0, superFields.length);
 				System.arraycopy(childFields, 0, classFields, superFields.length, childFields.length);
 			}
 			else {
-				classFields = clazz.getDeclaredFields();
+				classFields = declaredFields(clazz);
 			}
 		}
 		else {
-			classFields = clazz.getDeclaredFields();
+			classFields = declaredFields(clazz);
 		}
 		return classFields;
 	}
@@ -928,15 +995,72 @@ class TableDefinition<T> {
 
 		if (null == superSuperFields) {
 			// super class is Object.class or not mapped. However this class is mapped so we can get its fields
-			return superClazz.getDeclaredFields();
+			return declaredFields(superClazz);
 		}
-		Field[] declaredFields = superClazz.getDeclaredFields();
+		Field[] declaredFields = declaredFields(superClazz);
 		Field[] allFields = new Field[superSuperFields.length + declaredFields.length];
 		System.arraycopy(superSuperFields, 0, allFields, 0, superSuperFields.length);
 		System.arraycopy(declaredFields, 0, allFields, superSuperFields.length, declaredFields.length);
 		return allFields;
 	}
 
+	/*
+	 * the fields declared by the class. When the enhancer generated the metadata of the class only its persisted fields are returned and their
+	 * annotations are recorded, otherwise, or when the metadata names a field the class does not have, all declared fields are returned
+	 */
+	private Field[] declaredFields(Class<?> type) {
+		EntityMetadata metadata = loadMetadata(type);
+		if (null != metadata) {
+			String[] names = metadata.fields();
+			String[] annotations = metadata.annotations();
+			Field[] all = type.getDeclaredFields();
+			Map<String, Field> byName = Utils.newHashMap();
+			for (Field f : all)
+				byName.put(f.getName(), f);
+			Field[] declared = new Field[names.length];
+			Map<Field, Set<String>> recorded = Utils.newHashMap();
+			for (int i = 0; i < names.length; i++) {
+				declared[i] = byName.get(names[i]);
+				if (null == declared[i]) {
+					StatementLogger.info(String.format("Metadata of %s does not match the class, mapping it by reflection", type.getName()));
+					return all;
+				}
+				recorded.put(declared[i], new HashSet<>(Arrays.asList(annotations[i].split(" "))));
+			}
+			fieldAnnotations.putAll(recorded);
+			return declared;
+		}
+		return type.getDeclaredFields();
+	}
+
+	/*
+	 * the metadata the enhancer generated for the class, null when there is none. Each class is looked up once, so classes that were not
+	 * enhanced do not cost a failed class load every time a table is defined
+	 */
+	private static EntityMetadata loadMetadata(Class<?> type) {
+		return METADATA.computeIfAbsent(type, TableDefinition::findMetadata).orElse(null);
+	}
+
+	private static Optional<EntityMetadata> findMetadata(Class<?> type) {
+		try {
+			Class<?> metadataClass = Class.forName(type.getName() + Constants.METADATA_SUFFIX, true, type.getClassLoader());
+			return Optional.of((EntityMetadata) metadataClass.getConstructor().newInstance());
+		}
+		catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+			return Optional.empty();
+		}
+	}
+
+	/*
+	 * the annotation of the field. When the metadata of the field's class shows the field does not carry the annotation it is not looked up
+	 */
+	private <A extends Annotation> A getAnnotation(Field f, Class<A> annotationType) {
+		Set<String> annotations = fieldAnnotations.get(f);
+		if (null != annotations && !annotations.contains(annotationType.getSimpleName()))
+			return null;
+		return f.getAnnotation(annotationType);
+	}
+
 	private Types getTypes(Class<?> classType) {
 		try {
 			if (classType.isEnum())
@@ -1084,8 +1208,7 @@ class TableDefinition<T> {
         }
 		buff.append(fieldTypes).append(") VALUES(").append(valueTypes).append(')');
 		stat.setSQL(buff.toString());
-		if (db.factory.isShowSQL())
-			StatementLogger.insert(stat.logSQL());
+		stat.showSQL(Type.INSERT);
 
 		if (null != primaryKeyColumnNames && !primaryKeyColumnNames.isEmpty()) {
 			if (nullIdentityField && GeneratorType.IDENTITY == genType) {
@@ -1094,7 +1217,8 @@ class TableDefinition<T> {
 				updateWithId(obj, stat);
 			}
 			else
-				stat.executeUpdate();			
+				stat.executeUpdate();
+			releaseStreams(db, obj);
 			update(db, obj);
 		}
 		else {
@@ -1115,9 +1239,28 @@ class TableDefinition<T> {
 			db.insert(obj);
 			return;
 		}
+		String upsert = getMergeStatement();
+		if (!upsert.isEmpty()) {
+			// plain table, the dialect inserts or updates the row in a single statement
+			SQLStatement stat = new SQLStatement(db);
+			stat.setSQL(upsert);
+			if (InheritedType.DISCRIMINATOR == this.inheritedType)
+				stat.addParameter(String.valueOf(this.discriminatorValue));
+			for (FieldDefinition field : fields) {
+				if (field.isExtension)
+					continue;
+				handleValue(db, obj, stat, field);
+			}
+			stat.showSQL(Type.MERGE);
+			stat.executeUpdate();
+			if (db.factory.isDirtyChecking())
+				db.snapshot(obj);
+			db.addSession(obj);
+			return;
+		}
 		// check if object exists in the DB
 		SQLStatement stat = new SQLStatement(db);
-		StatementBuilder buff = new StatementBuilder("SELECT * FROM ");
+		StatementBuilder buff = new StatementBuilder("SELECT 1 FROM ");
 		buff.append(tableName).append(" WHERE ");
 		buff.resetCount();
 		for (FieldDefinition field : primaryKeyColumnNames) {
@@ -1127,8 +1270,7 @@ class TableDefinition<T> {
 		}
 
 		stat.setSQL(buff.toString());
-		if (db.factory.isShowSQL())
-			StatementLogger.merge(stat.logSQL());
+		stat.showSQL(Type.MERGE);
 		stat.executeQuery(rs -> {
 			if (rs.next()) {
 				// such a row exists do an update
@@ -1140,6 +1282,293 @@ class TableDefinition<T> {
 		});
 	}
 
+	/*
+	 * A merge can be done in a single statement only when the table has nothing but plain columns, no version to check and no interceptor
+	 * expecting the insert or update events. Returns an empty String when the table does not qualify or the dialect has no such statement.
+	 */
+	private String getMergeStatement() {
+		if (null == mergeStatement) {
+			String upsert = null;
+			if (null == interceptor && null == version && GeneratorType.IDENTITY != genType && isPlainTable()) {
+				List<String> columns = Utils.newArrayList();
+				if (InheritedType.DISCRIMINATOR == this.inheritedType)
+					columns.add(this.discriminatorColumn);
+				for (FieldDefinition field : fields) {
+					if (!field.isExtension)
+						columns.add(field.columnName);
+				}
+				String[] keys = primaryKeyColumnNames.stream().map(fd -> fd.columnName).toArray(String[]::new);
+				upsert = dialect.getMergeStatement(tableName, keys, columns.toArray(new String[columns.size()]));
+			}
+			mergeStatement = null == upsert ? "" : upsert;
+		}
+		return mergeStatement;
+	}
+
+	/*
+	 * true when all the fields of this table are plain columns, i.e there are no relations to follow when the object is written
+	 */
+	private boolean isPlainTable() {
+		for (FieldDefinition field : fields) {
+			// a lazy column that was not loaded must not be written, so such objects are updated one at a time
+			if (!field.isExtension && (field.isSilent || field.fieldType != FieldType.NORMAL || field.isLazyColumn))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * merge a list of objects of this table. The rows that already exist are found with one query per chunk of primary keys.
+	 * A plain table is then written with one insert batch and one update batch. Tables with relations or a version are inserted or
+	 * updated one object at a time, in the given order, so their relations are merged as they would be in a single merge.
+	 */
+	@SuppressWarnings("unchecked")
+	void mergeBatch(Db db, List<?> objs) {
+		if (primaryKeyColumnNames == null || primaryKeyColumnNames.isEmpty()) {
+			throw new JaquError("IllegalState - No primary key columns defined for table %s - no merge possible", clazz);
+		}
+		List<Object> probe = Utils.newArrayList();
+		for (Object obj : objs) {
+			if (null != db.factory.getPrimaryKey(obj))
+				probe.add(obj);
+		}
+		Set<Object> existing = findExistingKeys(db, probe);
+
+		boolean plain = null == version && isPlainTable();
+		// when relations lead back to this table merging one object may write another object of the list before its turn
+		boolean recheck = !plain && isSelfReachable(db);
+		List<Object> inserts = Utils.newArrayList();
+		List<Object> updates = Utils.newArrayList();
+		for (Object obj : objs) {
+			Object pk = db.factory.getPrimaryKey(obj);
+			// a key given more then once is inserted by its first occurrence and updated by the following ones
+			boolean exists = null != pk && !existing.add(keyOf(pk));
+			if (!plain) {
+				if (exists)
+					db.update(obj);
+				else if (recheck && null != pk)
+					merge(db, obj);
+				else
+					db.insert(obj);
+			}
+			else if (null != interceptor) {
+				if (exists)
+					interceptor.onUpdate(obj);
+				else
+					interceptor.onInsert(obj);
+			}
+			if (plain) {
+				if (exists) {
+					if (!isUnchangedRow(db, obj))
+						updates.add(obj);
+				}
+				else if (null == pk && GeneratorType.IDENTITY == genType)
+					// the generated key has to be read back so identity rows are inserted one at a time
+					insert(db, obj);
+				else
+					inserts.add(obj);
+			}
+		}
+		if (!inserts.isEmpty())
+			insertBatch(db, BATCH_SIZE, inserts.toArray());
+		if (!updates.isEmpty())
+			updateBatch(db, updates);
+		if (plain) {
+			for (Object obj : objs) {
+				if (db.factory.isDirtyChecking())
+					db.snapshot(obj);
+				db.addSession(obj);
+			}
+		}
+	}
+
+	/*
+	 * with dirty checking, true when the row of a plain table did not change since it was last read or written
+	 */
+	private boolean isUnchangedRow(Db db, Object obj) {
+		Object[] snapshot = db.factory.isDirtyChecking() ? db.getSnapshot(obj) : null;
+		return null != snapshot && Arrays.deepEquals(snapshotValues(db, obj), snapshot);
+	}
+
+	/*
+	 * insert the objects queued by a unit of work. A plain table is written with one insert batch, except for identity rows which need their
+	 * generated key read back. Other tables are inserted one object at a time so their relations are written.
+	 */
+	void insertQueued(Db db, List<?> objs) {
+		boolean plain = null == version && isPlainTable();
+		List<Object> inserts = Utils.newArrayList();
+		for (Object obj : objs) {
+			if (plain && !(GeneratorType.IDENTITY == genType && null == db.factory.getPrimaryKey(obj)))
+				inserts.add(obj);
+			else {
+				insert(db, obj);
+				db.reEntrantCache.clearReEntrent();
+			}
+		}
+		if (!inserts.isEmpty()) {
+			insertBatch(db, BATCH_SIZE, inserts.toArray());
+			for (Object obj : inserts) {
+				if (db.factory.isDirtyChecking() && null != primaryKeyColumnNames && !primaryKeyColumnNames.isEmpty())
+					db.snapshot(obj);
+				db.addSession(obj);
+			}
+		}
+	}
+
+	/*
+	 * update the objects queued by a unit of work. A plain table is written with one update batch, other tables are updated one object at a time.
+	 */
+	void updateQueued(Db db, List<?> objs) {
+		if (null != version || !isPlainTable()) {
+			for (Object obj : objs) {
+				update(db, obj);
+				db.reEntrantCache.clearReEntrent();
+			}
+			return;
+		}
+		List<Object> updates = Utils.newArrayList();
+		for (Object obj : objs) {
+			if (!isUnchangedRow(db, obj))
+				updates.add(obj);
+		}
+		if (!updates.isEmpty())
+			updateBatch(db, updates);
+		for (Object obj : objs) {
+			if (db.factory.isDirtyChecking())
+				db.snapshot(obj);
+			db.addSession(obj);
+		}
+	}
+
+	/*
+	 * true when this table holds a foreign key to the other table, i.e the other table's rows have to exist before this table's rows are written
+	 */
+	boolean references(TableDefinition<?> other) {
+		for (FieldDefinition field : fields) {
+			if (field.isExtension || (FieldType.FK != field.fieldType && FieldType.M2O != field.fieldType))
+				continue;
+			Class<?>[] types = (null != field.relationDefinition && null != field.relationDefinition.dataType) ? field.relationDefinition.dataType : new Class<?>[] {field.field.getType()};
+			for (Class<?> type : types) {
+				if (type.isAssignableFrom(other.clazz))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * follows the relation types of this table and reports whether any of them leads back to this table's class
+	 */
+	private boolean isSelfReachable(Db db) {
+		if (null == selfReachable) {
+			Set<Class<?>> visited = Utils.newHashSet();
+			List<TableDefinition<?>> toVisit = Utils.newArrayList();
+			toVisit.add(this);
+			boolean found = false;
+			while (!found && !toVisit.isEmpty()) {
+				TableDefinition<?> def = toVisit.remove(toVisit.size() - 1);
+				for (FieldDefinition field : def.fields) {
+					if (field.isExtension || FieldType.NORMAL == field.fieldType)
+						continue;
+					Class<?>[] types = (null != field.relationDefinition && null != field.relationDefinition.dataType) ? field.relationDefinition.dataType : new Class<?>[] {field.field.getType()};
+					for (Class<?> type : types) {
+						if (type.isAssignableFrom(clazz) || clazz.isAssignableFrom(type)) {
+							found = true;
+							break;
+						}
+						if (visited.add(type))
+							toVisit.add(db.define(type));
+					}
+				}
+			}
+			selfReachable = found;
+		}
+		return selfReachable;
+	}
+
+	/*
+	 * returns the primary keys, as compared by keyOf, of the given objects that already exist in the underlying db
+	 */
+	private Set<Object> findExistingKeys(Db db, List<?> objs) {
+		Set<Object> keys = Utils.newHashSet();
+		FieldDefinition pkDef = primaryKeyColumnNames.get(0);
+		for (int from = 0; from < objs.size(); from += MAX_IN_PARAMETERS) {
+			SQLStatement stat = new SQLStatement(db);
+			StatementBuilder buff = new StatementBuilder("SELECT ").append(pkDef.columnName).append(" FROM ").append(tableName);
+			buff.append(" WHERE ").append(pkDef.columnName).append(" IN (");
+			for (Object obj : objs.subList(from, Math.min(objs.size(), from + MAX_IN_PARAMETERS))) {
+				buff.appendExceptFirst(", ");
+				buff.append('?');
+				handleValue(db, obj, stat, pkDef);
+			}
+			stat.setSQL(buff.append(')').toString());
+			stat.executeQuery(rs -> {
+				while (rs.next())
+					keys.add(keyOf(rs.getObject(1)));
+				return null;
+			});
+		}
+		return keys;
+	}
+
+	/*
+	 * the primary key value in a form equal for the same key whichever type holds it. Drivers return the type of the key column, which may
+	 * differ from the type of the key field, such as an Integer or a BigDecimal for a Long field or a String for a UUID field
+	 */
+	private Object keyOf(Object key) {
+		Class<?> type = primaryKeyColumnNames.get(0).field.getType();
+		if (type.isPrimitive())
+			type = ClassUtils.getWrapperClass(type);
+		if (key instanceof Number) {
+			if (Long.class == type || Integer.class == type || Short.class == type || Byte.class == type)
+				return Utils.convert(key, Long.class);
+			// decimals are equal whatever their scale
+			return new BigDecimal(key.toString()).stripTrailingZeros();
+		}
+		if (UUID.class == type || key instanceof UUID || key instanceof Character)
+			return key.toString();
+		return key;
+	}
+
+	/*
+	 * update a batch of objects of a plain table, i.e with no relationships or version.
+	 */
+	private void updateBatch(Db db, List<?> objs) {
+		List<FieldDefinition> columns = Utils.newArrayList();
+		StatementBuilder buff = new StatementBuilder("UPDATE ").append(tableName).append(" SET ");
+		for (FieldDefinition field : fields) {
+			if (field.isExtension || field.isPrimaryKey)
+				continue;
+			buff.appendExceptFirst(", ");
+			buff.append(field.columnName).append(" = ?");
+			columns.add(field);
+		}
+		if (columns.isEmpty())
+			// nothing but the primary key, the rows are as they should be
+			return;
+		buff.append(" WHERE ").resetCount();
+		for (FieldDefinition field : primaryKeyColumnNames) {
+			buff.appendExceptFirst(" AND ");
+			buff.append(field.columnName).append(" = ?");
+			columns.add(field);
+		}
+		SQLStatement stat = new SQLStatement(db);
+		stat.setSQL(buff.toString());
+		int count = 0;
+		for (Object obj : objs) {
+			for (FieldDefinition field : columns) {
+				handleValue(db, obj, stat, field);
+			}
+			stat.showSQL(Type.UPDATE);
+			stat.prepareBatch();
+
+			if (++count % BATCH_SIZE == 0) {
+		        stat.executeBatch(false);
+		    }
+		}
+		stat.executeBatch(true);
+	}
+
 	void update(Db db, Object obj) {
 		if (db.reEntrantCache.checkReEntrent(obj))
 			return;
@@ -1154,11 +1583,20 @@ class TableDefinition<T> {
 		StatementBuilder innerUpdate = new StatementBuilder();
 		innerUpdate.resetCount();
 		boolean hasNoneSilent = false;
-		for (FieldDefinition field : fields) {
+		// with dirty checking only the columns that changed since the object was last read or written are updated
+		Object[] snapshot = db.factory.isDirtyChecking() ? db.getSnapshot(obj) : null;
+		boolean bumpVersion = false;
+		for (int i = 0; i < fields.size(); i++) {
+			FieldDefinition field = fields.get(i);
 			if (field.isExtension)
 				continue;
 			if (!field.isPrimaryKey) {
-				if (null != field.field.getAnnotation(Lazy.class)) {
+				if (field.isLazyColumn) {
+					// a lazy column that was never read keeps its value in the db
+					if (null == field.getValue(obj) && db.isUnloaded(obj, field.field.getName()))
+						continue;
+				}
+				else if (null != field.field.getAnnotation(Lazy.class)) {
 					try {
 						Object value = field.getValue(obj);
 						if (null != value) {
@@ -1175,6 +1613,11 @@ class TableDefinition<T> {
 					}
 				}
 				if (field.isVersion) {
+					if (null != snapshot) {
+						// the version is bumped only if some other column is updated
+						bumpVersion = true;
+						continue;
+					}
 					innerUpdate.appendExceptFirst(", ");
 					innerUpdate.append(as + ".");
 					innerUpdate.append(field.columnName);
@@ -1182,6 +1625,8 @@ class TableDefinition<T> {
 					hasNoneSilent = true;
 					continue;
 				}
+				if (null != snapshot && isUnchanged(db, obj, field, snapshot[i]))
+					continue;
 				if (!field.isSilent) {
 					innerUpdate.appendExceptFirst(", ");
 					innerUpdate.append(as + ".");
@@ -1192,6 +1637,12 @@ class TableDefinition<T> {
 				handleValue(db, obj, stat, field);
 			}
 		}
+		if (bumpVersion && hasNoneSilent) {
+			innerUpdate.appendExceptFirst(", ");
+			innerUpdate.append(as + ".");
+			innerUpdate.append(this.version.columnName);
+			innerUpdate.append(" = " + this.version.columnName + " + 1");
+		}
 		if (hasNoneSilent) {
 			// if all fields were silent they were handled in handleValue and there would be nothing to do here
 			// so we don't do the update.
@@ -1218,10 +1669,10 @@ class TableDefinition<T> {
 				query.addConditionToken(new Condition<>(aliasValue, lVersion, CompareType.EQUAL));
 			}
 			query.appendWhere(stat);
-			if (db.factory.isShowSQL())
-				StatementLogger.update(stat.logSQL());
+			stat.showSQL(Type.UPDATE);
 
 			int numOfResults = stat.executeUpdate();
+			releaseStreams(db, obj);
 			if (0 == numOfResults) {
 				// No update was done. This is probably because of a concurrency error
 				// an sql error would be a -1 and a successful update will have a number higher than 0
@@ -1240,10 +1691,109 @@ class TableDefinition<T> {
 				}
 			}
 		}
+		if (db.factory.isDirtyChecking())
+			db.snapshot(obj);
 		// if the object inserted successfully and is a Table add the session to it.
 		db.addSession(obj);
 	}
 
+	/**
+	 * Returns the values this object's fields are written with, in the order of the table fields. Relation collections are not part of it, the
+	 * collections are snapshot on their own. Used by dirty checking to find which columns changed.
+	 *
+	 * @param db
+	 * @param obj
+	 * @return Object[]
+	 */
+	Object[] snapshotValues(Db db, Object obj) {
+		Object[] values = new Object[fields.size()];
+		for (int i = 0; i < fields.size(); i++) {
+			FieldDefinition field = fields.get(i);
+			if (!field.isExtension)
+				values[i] = snapshotValue(db, obj, field);
+		}
+		return values;
+	}
+
+	/*
+	 * the value kept in the snapshot for this field, a copy of the column value or the primary key of the related object
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object snapshotValue(Db db, Object obj, FieldDefinition field) {
+		switch (field.fieldType) {
+			case NORMAL: {
+				Object value = field.getValue(obj);
+				if (null != field.converter)
+					value = field.converter.toDb(value);
+				// keep a copy of the mutable values so changes made in place are detected
+				if (value instanceof byte[])
+					return ((byte[])value).clone();
+				if (value instanceof java.util.Date)
+					return ((java.util.Date)value).clone();
+				return value;
+			}
+			case FK:
+			case M2O: {
+				Object value = field.getValue(obj);
+				return (null == value) ? null : db.factory.getPrimaryKey(value);
+			}
+			default:
+				return null;
+		}
+	}
+
+	/*
+	 * Returns true when the field did not change since its snapshot. Relations that did not change are still cascaded so that changes
+	 * within the related objects are written, but the relation itself is not written again.
+	 */
+	private boolean isUnchanged(Db db, Object obj, FieldDefinition field, Object snapshotValue) {
+		switch (field.fieldType) {
+			case NORMAL:
+				return Objects.deepEquals(snapshotValue(db, obj, field), snapshotValue);
+			case FK: {
+				Object value = field.getValue(obj);
+				if (null == value)
+					return null == snapshotValue;
+				Object pk = db.factory.getPrimaryKey(value);
+				if (null == pk || !pk.equals(snapshotValue))
+					return false;
+				if (!field.noUpdateField) {
+					db.reEntrantCache.prepareReEntrent(obj);
+					db.merge(value);
+				}
+				return true;
+			}
+			case M2O: {
+				Object value = field.getValue(obj);
+				if (null == value)
+					return true;
+				Object pk = db.factory.getPrimaryKey(value);
+				if (null == pk || !pk.equals(snapshotValue))
+					return false;
+				if (!field.noUpdateField) {
+					db.reEntrantCache.prepareReEntrent(obj);
+					db.merge(value);
+				}
+				return true;
+			}
+			case O2M:
+			case M2M: {
+				Object value = field.getValue(obj);
+				if (null == value || !db.isRelationUnchanged((Collection<?>)value))
+					return false;
+				if (!field.noUpdateField) {
+					for (Object table : (Collection<?>) value) {
+						db.reEntrantCache.prepareReEntrent(obj);
+						db.merge(table);
+					}
+				}
+				return true;
+			}
+			default:
+				return false;
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	void delete(Db db, Object obj) {
 		db.reEntrantCache.prepareReEntrent(obj);
@@ -1304,14 +1854,328 @@ class TableDefinition<T> {
 		StatementBuilder buff = dialect.wrapDeleteQuery(null, tableName, as);
 		stat.setSQL(buff.toString());
 		query.appendWhere(stat);
-		if (db.factory.isShowSQL())
-			StatementLogger.delete(stat.logSQL());
+		stat.showSQL(Type.DELETE);
 		stat.executeUpdate();
 		// multi cache is responsible for multi calls to the session thus if removed from the underlying db
 		// this object should be removed from the cache.
 		db.multiCallCache.removeReEntrent(obj);
 	}
 
+	/*
+	 * delete a list of objects of this table. Rows, relation table entries and cascaded children are removed with set based statements,
+	 * a chunk of primary keys at a time. Objects are loaded only where an interceptor needs them.
+	 */
+	@SuppressWarnings("unchecked")
+	void deleteBatch(Db db, List<?> objs) {
+		if (primaryKeyColumnNames == null || primaryKeyColumnNames.isEmpty()) {
+			throw new JaquError("IllegalState - No primary key columns defined for table %s - no update possible", clazz);
+		}
+		boolean intercept = null != interceptor && hasInterceptEvent(Event.DELETE);
+		List<Object> keys = Utils.newArrayList();
+		for (Object obj : objs) {
+			Object pk = db.factory.getPrimaryKey(obj);
+			if (null == pk)
+				continue;
+			db.reEntrantCache.prepareReEntrent(obj);
+			if (intercept)
+				interceptor.onDelete(obj);
+			keys.add(pk);
+		}
+		deleteByKeys(db, keys, false, Utils.newHashMap());
+		if (isAggregateParent || null != oneToOneRelations)
+			// children were removed by their keys, their cached instances are no longer valid
+			db.multiCallCache.clearReEntrent();
+		else {
+			for (Object obj : objs)
+				db.multiCallCache.removeReEntrent(obj);
+		}
+	}
+
+	/*
+	 * delete the rows with the given primary keys together with their relations. When 'intercept' is true the objects are loaded for a registered
+	 * delete interceptor. 'visited' holds the keys, per table, already being deleted so relations that lead back to a table being deleted end.
+	 */
+	@SuppressWarnings("unchecked")
+	private void deleteByKeys(Db db, List<?> keys, boolean intercept, Map<String, Set<String>> visited) {
+		Set<String> deleted = visited.computeIfAbsent(tableName, k -> Utils.newHashSet());
+		List<Object> toDelete = Utils.newArrayList();
+		for (Object key : keys) {
+			if (deleted.add(key.toString()))
+				toDelete.add(key);
+		}
+		String pkColumn = primaryKeyColumnNames.get(0).columnName;
+		for (int from = 0; from < toDelete.size(); from += MAX_IN_PARAMETERS) {
+			List<Object> chunk = toDelete.subList(from, Math.min(toDelete.size(), from + MAX_IN_PARAMETERS));
+			List<T> objs = null;
+			if (intercept && null != interceptor && hasInterceptEvent(Event.DELETE)) {
+				objs = loadByKeys(db, chunk);
+				for (Object obj : objs)
+					interceptor.onDelete(obj);
+			}
+			if (this.isAggregateParent) {
+				final List<T> loaded = objs;
+				deleteParentRelations(db, keysIn(chunk), () -> null != loaded ? loaded : loadByKeys(db, chunk), visited);
+			}
+			// the keys of cascaded one to one relations are read before their holding rows are removed
+			Map<FieldDefinition, List<Object>> o2oKeys = Utils.newHashMap();
+			if (null != this.oneToOneRelations) {
+				for (FieldDefinition fdef : this.oneToOneRelations) {
+					if (fdef.field.getAnnotation(Cascade.class) != null)
+						o2oKeys.put(fdef, selectIn(db, fdef.columnName, tableName, pkColumn, keysIn(chunk)));
+				}
+			}
+			executeIn(db, "DELETE FROM " + tableName, pkColumn, keysIn(chunk));
+			for (Map.Entry<FieldDefinition, List<Object>> o2o : o2oKeys.entrySet()) {
+				if (!o2o.getValue().isEmpty())
+					db.define(o2o.getKey().field.getType()).deleteByKeys(db, o2o.getValue(), true, visited);
+			}
+		}
+	}
+
+	/*
+	 * Set based cleanup of the collection relations of the parents selected by 'parentKeys', which appends the parents' primary keys to the
+	 * 'IN' clause of each statement. Relations that can't be handled by keys are removed one parent at a time from the objects given by 'parents'.
+	 */
+	void deleteParentRelations(Db db, Consumer<SQLStatement> parentKeys, Supplier<List<T>> parents, Map<String, Set<String>> visited) {
+		List<T> objs = null;
+		for (FieldDefinition fdef : fields) {
+			if (fdef.fieldType.isCollectionRelation() && !deleteRelations(db, fdef, parentKeys, visited)) {
+				if (null == objs)
+					objs = parents.get();
+				for (Object obj : objs)
+					db.deleteParentRelation(fdef, obj);
+			}
+		}
+	}
+
+	/*
+	 * Set based version of Db.deleteParentRelation for the parents selected by 'parentKeys'. Returns false when the relation
+	 * can not be removed by keys alone, i.e the children span more then one table or an update interceptor expects the children.
+	 */
+	private boolean deleteRelations(Db db, FieldDefinition fdef, Consumer<SQLStatement> parentKeys, Map<String, Set<String>> visited) {
+		RelationDefinition relation = fdef.relationDefinition;
+		TableDefinition<?> childDef = db.define(relation.dataType[0]);
+		for (Class<?> type : relation.dataType) {
+			if (!childDef.tableName.equals(db.define(type).tableName))
+				return false;
+		}
+		String childPk = childDef.primaryKeyColumnNames.get(0).columnName;
+		if (relation.cascadeType == CascadeType.DELETE) {
+			// the children are deleted as well, together with their own relations
+			if (childDef.hasNoDeleteCascade()) {
+				// nothing hangs on the children, the db removes them directly
+				if (null == relation.relationTableName)
+					executeIn(db, "DELETE FROM " + childDef.tableName, relation.relationFieldName, parentKeys);
+				else {
+					String relationTable = relation.relationTableName;
+					executeIn(db, "DELETE FROM " + childDef.tableName, childPk, stat -> {
+						stat.appendSQL("SELECT " + relation.relationColumnName + " FROM " + relationTable + " WHERE " + relation.relationFieldName + " IN (");
+						parentKeys.accept(stat);
+						stat.appendSQL(")");
+					});
+				}
+			}
+			else {
+				List<Object> childKeys;
+				if (null == relation.relationTableName)
+					childKeys = selectIn(db, childPk, childDef.tableName, relation.relationFieldName, parentKeys);
+				else
+					childKeys = selectIn(db, relation.relationColumnName, relation.relationTableName, relation.relationFieldName, parentKeys);
+				childDef.deleteByKeys(db, childKeys, true, visited);
+			}
+			if (null != relation.relationTableName)
+				executeIn(db, "DELETE FROM " + relation.relationTableName, relation.relationFieldName, parentKeys);
+			return true;
+		}
+		if (null != childDef.interceptor && childDef.hasInterceptEvent(Event.UPDATE))
+			return false;
+		if (null == relation.relationTableName)
+			executeIn(db, "UPDATE " + childDef.tableName + " SET " + relation.relationFieldName + " = null", relation.relationFieldName, parentKeys);
+		else
+			executeIn(db, "DELETE FROM " + relation.relationTableName, relation.relationFieldName, parentKeys);
+		return true;
+	}
+
+	/*
+	 * true when deleting rows of this table involves nothing but the rows themselves
+	 */
+	private boolean hasNoDeleteCascade() {
+		if (isAggregateParent || (null != interceptor && hasInterceptEvent(Event.DELETE)))
+			return false;
+		if (null != oneToOneRelations) {
+			for (FieldDefinition fdef : oneToOneRelations) {
+				if (fdef.field.getAnnotation(Cascade.class) != null)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * load the objects of this table with the given primary keys
+	 */
+	@SuppressWarnings("unchecked")
+	private List<T> loadByKeys(Db db, List<?> keys) {
+		T desc = Utils.newObject(clazz);
+		return db.from(desc).primaryKey().in(keys.toArray()).select();
+	}
+
+	/**
+	 * Returns the objects with the given primary keys, in the order of the keys, with null for a key that has no row. Objects already fetched
+	 * by the session are taken from its cache, the rest are selected with one statement per chunk of keys.
+	 *
+	 * @param db
+	 * @param keys
+	 * @return List&lt;T&gt;
+	 * @throws JaquError when the table does not have a single column primary key
+	 */
+	List<T> find(Db db, Collection<?> keys) {
+		if (null == primaryKeyColumnNames || primaryKeyColumnNames.size() != 1)
+			throw new JaquError("%s does not have a single column primary key, it can not be found by key", clazz.getName());
+		// keys are matched by their normalized value, so a key given as an Integer finds the row of a Long primary key and 5.0 finds 5
+		Map<Object, T> found = new HashMap<>();
+		List<Object> missing = Utils.newArrayList();
+		for (Object key : keys) {
+			if (null == key || found.containsKey(keyOf(key)))
+				continue;
+			Object value = keyValue(key);
+			@SuppressWarnings("unchecked")
+			T cached = (T) db.multiCallCache.checkReEntrent(clazz, value);
+			found.put(keyOf(key), cached);
+			if (null == cached)
+				missing.add(value);
+			else if (null != db.factory.getMetrics())
+				db.factory.getMetrics().cacheHit(tableName);
+		}
+		for (int from = 0; from < missing.size(); from += MAX_IN_PARAMETERS) {
+			for (T row : selectByKeys(db, missing.subList(from, Math.min(missing.size(), from + MAX_IN_PARAMETERS))))
+				found.put(keyOf(db.factory.getPrimaryKey(row)), row);
+		}
+		List<T> result = Utils.newArrayList();
+		for (Object key : keys)
+			result.add(null == key ? null : found.get(keyOf(key)));
+		return result;
+	}
+
+	/*
+	 * the key as the type of the primary key field, which is the form the session cache holds it in. A key that can not be converted is
+	 * returned as is
+	 */
+	private Object keyValue(Object key) {
+		Class<?> type = primaryKeyColumnNames.get(0).field.getType();
+		if (type.isPrimitive())
+			type = ClassUtils.getWrapperClass(type);
+		if (type.isInstance(key))
+			return key;
+		if (key instanceof Number) {
+			Number n = (Number) key;
+			if (Long.class == type)
+				return n.longValue();
+			if (Integer.class == type)
+				return n.intValue();
+			if (Short.class == type)
+				return n.shortValue();
+			if (Byte.class == type)
+				return n.byteValue();
+			if (Double.class == type)
+				return n.doubleValue();
+			if (Float.class == type)
+				return n.floatValue();
+			if (BigDecimal.class == type)
+				return new BigDecimal(key.toString());
+		}
+		if (UUID.class == type)
+			return UUID.fromString(key.toString());
+		if (String.class == type)
+			return key.toString();
+		return key;
+	}
+
+	/*
+	 * select the rows with the given keys. The statement is built once per table and number of keys, and the number of keys is rounded up to a power
+	 * of two (repeating the last key) so only a handful of statements exist and the database can reuse their plans.
+	 */
+	private List<T> selectByKeys(Db db, List<Object> keys) {
+		int size = Math.min(Integer.highestOneBit(keys.size() * 2 - 1), MAX_IN_PARAMETERS);
+		String sql = findStatements.computeIfAbsent(size, count -> {
+			String as = "T";
+			StatementBuilder buff = new StatementBuilder("SELECT ").append(getSelectList(db, as).getSQL()).append(" FROM ").append(tableName).append(' ')
+					.append(as).append(" WHERE ").append(as).append('.').append(primaryKeyColumnNames.get(0).columnName).append(" IN (");
+			for (int i = 0; i < count; i++) {
+				buff.appendExceptFirst(", ");
+				buff.append('?');
+			}
+			buff.append(')');
+			if (InheritedType.DISCRIMINATOR == this.inheritedType)
+				buff.append(" AND ").append(as).append('.').append(discriminatorColumn).append(" = '").append(discriminatorValue).append('\'');
+			return buff.toString();
+		});
+		boolean uuid = Types.UUID == primaryKeyColumnNames.get(0).type;
+		SQLStatement stat = new SQLStatement(db);
+		stat.setSQL(sql);
+		for (int i = 0; i < size; i++) {
+			Object key = keys.get(Math.min(i, keys.size() - 1));
+			stat.addParameter(uuid ? key.toString() : key);
+		}
+		List<T> result = Utils.newArrayList();
+		stat.executeQuery(rs -> {
+			while (rs.next()) {
+				T item = readRow(rs, db);
+				db.addSession(item);
+				result.add(item);
+			}
+			return null;
+		});
+		return result;
+	}
+
+	/*
+	 * select the non null values of 'column' from 'table' in the rows where 'inColumn' is in the keys appended by 'in'
+	 */
+	private List<Object> selectIn(Db db, String column, String table, String inColumn, Consumer<SQLStatement> in) {
+		List<Object> result = Utils.newArrayList();
+		SQLStatement stat = new SQLStatement(db);
+		stat.appendSQL("SELECT " + column + " FROM " + table + " WHERE " + inColumn + " IN (");
+		in.accept(stat);
+		stat.appendSQL(")");
+		stat.executeQuery(rs -> {
+			while (rs.next()) {
+				Object value = rs.getObject(1);
+				if (null != value)
+					result.add(value);
+			}
+			return null;
+		});
+		return result;
+	}
+
+	/*
+	 * execute the given delete or update statement for the rows where 'inColumn' is in the keys appended by 'in'
+	 */
+	private void executeIn(Db db, String statement, String inColumn, Consumer<SQLStatement> in) {
+		SQLStatement stat = new SQLStatement(db);
+		stat.appendSQL(statement + " WHERE " + inColumn + " IN (");
+		in.accept(stat);
+		stat.appendSQL(")");
+		stat.showSQL(statement.startsWith("UPDATE") ? Type.UPDATE : Type.DELETE);
+		stat.executeUpdate();
+	}
+
+	/*
+	 * returns an appender of the given keys as '?' parameters of the statement
+	 */
+	private static Consumer<SQLStatement> keysIn(List<?> keys) {
+		return stat -> {
+			StatementBuilder buff = new StatementBuilder();
+			for (Object key : keys) {
+				buff.appendExceptFirst(", ");
+				buff.append('?');
+				stat.addParameter(key);
+			}
+			stat.appendSQL(buff.toString());
+		};
+	}
+
 	/*
 	 * The last identity called using this connection would be the one that inserted the parameter 'obj'. we use it to set the value
 	 */
@@ -1371,14 +2235,8 @@ class TableDefinition<T> {
 		}
 		switch (field.fieldType) {
 			case NORMAL:
-				Converter converter = field.field.getAnnotation(Converter.class);
-				if (null != converter) {
-					@SuppressWarnings("rawtypes")
-					JaquConverter convert = Utils.newObject(converter.value());
-					value = convert.toDb(value);
-					stat.addParameter(value);
-					break;
-				}
+				if (null != field.converter)
+					value = field.converter.toDb(value);
 				stat.addParameter(value);
 				break;
 			case FK: {
@@ -1428,6 +2286,8 @@ class TableDefinition<T> {
 						}
 					}
 				}
+				if (value != null)
+					db.snapshotRelation((Collection<?>)field.getValue(obj));
 				break;
 			}
 			case M2O: {
@@ -1479,14 +2339,15 @@ class TableDefinition<T> {
 
 		StatementBuilder buff = dialect.wrapDeleteQuery(new StatementBuilder(), tableName, as);
 		stat.setSQL(buff.toString());
-		if (db.factory.isShowSQL())
-			StatementLogger.delete(stat.logSQL());
+		stat.showSQL(Type.DELETE);
 		return stat.executeUpdate();
 	}
 
 	TableDefinition<T> createTableIfRequired(Db db) {
-		if (dialect.checkTableExists(tableName, db))
+		SchemaCatalog catalog = db.factory.getCatalog(db);
+		if (catalog.hasTable(tableName))
 			return this;
+		List<String> columns = Utils.newArrayList();
 		SQLStatement stat = new SQLStatement(db);
 		StatementBuilder buff = new StatementBuilder(dialect.getCreateTableStatment(tableName));
 		buff.append('(');
@@ -1494,6 +2355,7 @@ class TableDefinition<T> {
 			if (!field.isSilent && !field.isExtension) {
 				buff.appendExceptFirst(", ");
 				buff.append(field.columnName).append(' ').append(field.dataType);
+				columns.add(field.columnName);
 				if (field.isPrimaryKey && field.field.getAnnotation(PrimaryKey.class).generatorType() == GeneratorType.IDENTITY) {
 					// add identity info
 					buff.append(' ').append(this.dialect.getIdentitySuppliment());
@@ -1514,9 +2376,12 @@ class TableDefinition<T> {
 		}
 		buff.append(')');
 		stat.setSQL(buff.toString());
-		if (db.factory.isShowSQL())
-			StatementLogger.create(stat.logSQL());
+		stat.showSQL(Type.CREATE);
 		stat.executeUpdate();
+		catalog.add(tableName, columns.toArray(new String[0]));
+		if (primaryKeyColumnNames != null && !primaryKeyColumnNames.isEmpty())
+			catalog.addIndex(tableName, primaryKeyColumnNames.stream().map(n -> n.columnName).toArray(String[]::new));
+		created = true;
 		try {
 			createIndices(db);
 		}
@@ -1536,21 +2401,107 @@ class TableDefinition<T> {
 				SQLStatement stat = new SQLStatement(db);
 				StatementBuilder buff = new StatementBuilder(query);
 				stat.setSQL(buff.toString());
-				if (db.factory.isShowSQL())
-					StatementLogger.alter(stat.logSQL());
+				stat.showSQL(Type.ALTER);
 				stat.executeUpdate();
+				db.factory.getCatalog(db).addIndex(tableName, index.columns());
+			}
+		}
+	}
+
+	/*
+	 * Index the foreign key columns of the one to many relations between this table and the tables already defined, in both directions.
+	 * Each relation is indexed once both of its tables are defined. Relations held in a relation table are indexed when the relation table
+	 * is created.
+	 */
+	void createRelationIndices(Db db, Collection<TableDefinition<?>> defined) {
+		Set<String> done = Utils.newHashSet();
+		for (TableDefinition<?> parentDef : defined) {
+			for (FieldDefinition field : parentDef.fields) {
+				if (FieldType.O2M != field.fieldType || null != field.relationDefinition.relationTableName || !field.relationDefinition.index)
+					continue;
+				for (Class<?> type : field.relationDefinition.dataType) {
+					TableDefinition<?> childDef = (parentDef == this) ? db.factory.getTableDefinition(type) : (clazz.equals(type) ? this : null);
+					if (null == childDef)
+						continue;
+					FieldDefinition fkDef = childDef.getDefinitionForField(field.relationDefinition.relationFieldName);
+					String column = (null != fkDef) ? fkDef.columnName : field.relationDefinition.relationFieldName;
+					if (done.add(childDef.tableName + "." + column))
+						childDef.createRelationIndex(db, childDef.tableName, childDef.created, column);
+				}
 			}
 		}
 	}
 
+	/*
+	 * Create an index on the given columns of the table unless an index starting with these columns exists. Tables that existed before are not
+	 * altered, the missing index is reported in the log instead.
+	 */
+	private void createRelationIndex(Db db, String table, boolean tableCreated, String... columns) {
+		try {
+			SchemaCatalog catalog = db.factory.getIndexedCatalog(db);
+			if (catalog.hasIndex(table, columns))
+				return;
+			if (!tableCreated) {
+				if (catalog.addMissingIndex(table, columns))
+					StatementLogger.info("Missing relation index on " + table + " (" + String.join(", ", columns) + ")");
+				return;
+			}
+			String name = "IDX_" + table + "_" + String.join("_", columns);
+			if (name.length() > 30)
+				// keep within the shortest identifier length of the supported dialects
+				name = "IDX_" + table.substring(0, Math.min(table.length(), 16)) + "_" + Integer.toHexString(name.hashCode());
+			SQLStatement stat = new SQLStatement(db);
+			stat.setSQL(dialect.getIndexStatement(name, table, false, columns));
+			stat.showSQL(Type.ALTER);
+			stat.executeUpdate();
+			catalog.addIndex(table, columns);
+		}
+		catch (Exception any) {
+			StatementLogger.info("Unable to create relation index on " + table + " (" + String.join(", ", columns) + "). " + any.getMessage());
+		}
+	}
+
 	private void alterTableDiscriminatorIfRequired(Db db) {
-		if (inheritedType == InheritedType.DISCRIMINATOR && !dialect.checkDiscriminatorExists(tableName, discriminatorColumn, db)) {
+		SchemaCatalog catalog = db.factory.getCatalog(db);
+		if (inheritedType == InheritedType.DISCRIMINATOR && !catalog.hasColumn(tableName, discriminatorColumn)) {
 			SQLStatement stat = new SQLStatement(db);
 			StatementBuilder buff = new StatementBuilder(dialect.getDiscriminatorStatment(tableName, discriminatorColumn));
 			stat.setSQL(buff.toString());
-			if (db.factory.isShowSQL())
-				StatementLogger.alter(stat.logSQL());
+			stat.showSQL(Type.ALTER);
 			stat.executeUpdate();
+			catalog.add(tableName, discriminatorColumn);
+		}
+	}
+
+	/**
+	 * Compares the table, its columns and its relation tables with the database and reports what is missing. Nothing is created.
+	 *
+	 * @param db
+	 */
+	void validateSchema(Db db) {
+		SchemaCatalog catalog = db.factory.getCatalog(db);
+		if (!catalog.hasTable(tableName))
+			db.factory.reportDrift(String.format("Missing table %s of %s", tableName, clazz.getName()));
+		else {
+			for (FieldDefinition field : fields) {
+				if (!field.isSilent && !field.isExtension && !catalog.hasColumn(tableName, field.columnName))
+					db.factory.reportDrift(String.format("Missing column %s.%s of %s.%s", tableName, field.columnName, clazz.getName(), field.field.getName()));
+			}
+			if (InheritedType.DISCRIMINATOR == inheritedType && !catalog.hasColumn(tableName, discriminatorColumn))
+				db.factory.reportDrift(String.format("Missing discriminator column %s.%s of %s", tableName, discriminatorColumn, clazz.getName()));
+		}
+		for (FieldDefinition field : fields) {
+			if (null == field.relationDefinition || null == field.relationDefinition.relationTableName || FieldType.M2O == field.fieldType)
+				continue;
+			RelationDefinition relation = field.relationDefinition;
+			if (!catalog.hasTable(relation.relationTableName))
+				db.factory.reportDrift(String.format("Missing relation table %s of %s.%s", relation.relationTableName, clazz.getName(), field.field.getName()));
+			else {
+				for (String column : new String[] {relation.relationFieldName, relation.relationColumnName}) {
+					if (!catalog.hasColumn(relation.relationTableName, column))
+						db.factory.reportDrift(String.format("Missing column %s.%s of %s.%s", relation.relationTableName, column, clazz.getName(), field.field.getName()));
+				}
+			}
 		}
 	}
 
@@ -1565,16 +2516,21 @@ class TableDefinition<T> {
 	@SuppressWarnings("unchecked")
 	T readRow(ResultSet rs, Db db) {
 		T item = Utils.newObject(clazz);
+		JaquMetrics metrics = db.factory.getMetrics();
+		db.rowsRead++;
 		if (null != primaryKeyColumnNames && !primaryKeyColumnNames.isEmpty()) {
 			// this class has a primary key
 			// 1. get the primaryKey value, 2. check if we have an object with such value in cache, 3. if so return it
 			// if not continue.			
 			for (FieldDefinition def: primaryKeyColumnNames) {
 				Object key = def.read(rs, dialect);
-				Object o = db.multiCallCache.checkReEntrent(clazz, key);
+				// a read only session does not keep what it reads, only an object still being read (reached again through its relations) is reused
+				Object o = db.isReadOnly() ? null : db.multiCallCache.checkReEntrent(clazz, key);
 				if (null == o)
 					o = db.reEntrantCache.checkReEntrent(clazz, key);
 				if (null != o) {
+					if (null != metrics)
+						metrics.cacheHit(tableName);
 					try {
 						return (T)o;
 					}
@@ -1586,25 +2542,101 @@ class TableDefinition<T> {
 					doRead(rs, db, item, def);
 				}
 			}
+			if (null != metrics)
+				metrics.cacheMiss(tableName);
 		}
 		for (FieldDefinition def: fields) {
+			if (def.isLazyColumn) {
+				// not selected, read when first accessed
+				db.markUnloaded(item, def.field.getName());
+				continue;
+			}
 			if (!def.isPrimaryKey) {
 				db.reEntrantCache.prepareReEntrent(item);
 				doRead(rs, db, item, def);
 				db.reEntrantCache.removeReEntrent(item);
 			}
 		}
-		if (null != primaryKeyColumnNames && !primaryKeyColumnNames.isEmpty()) {
+		if (null != primaryKeyColumnNames && !primaryKeyColumnNames.isEmpty() && !db.isReadOnly()) {
+			if (db.factory.isDirtyChecking())
+				db.snapshot(item);
 			db.multiCallCache.prepareReEntrent(item);			
 		}
 		return item;
 	}
 
+	/*
+	 * a stream is consumed by the statement that wrote it. The lazy column is cleared and read again from the db when next accessed
+	 */
+	private void releaseStreams(Db db, Object obj) {
+		for (FieldDefinition def : fields) {
+			if (!def.isLazyColumn)
+				continue;
+			Object value = def.getValue(obj);
+			if (value instanceof InputStream || value instanceof Reader) {
+				def.setValue(obj, null, db);
+				db.markUnloaded(obj, def.field.getName());
+			}
+		}
+	}
+
+	/**
+	 * Reads a lazy column of the object from its row, sets it on the field and returns it.
+	 *
+	 * @param db
+	 * @param obj
+	 * @param fieldName
+	 * @return Object the field's value, null when the row no longer exists
+	 */
+	@SuppressWarnings("unchecked")
+	Object readLazyColumn(Db db, Object obj, String fieldName) {
+		FieldDefinition def = fieldMap.get(fieldName);
+		SQLStatement stat = new SQLStatement(db);
+		StatementBuilder buff = new StatementBuilder("SELECT ").append(def.columnName).append(" FROM ").append(tableName).append(" WHERE ");
+		buff.resetCount();
+		for (FieldDefinition field : primaryKeyColumnNames) {
+			buff.appendExceptFirst(" AND ");
+			buff.append(field.columnName).append(" = ?");
+			stat.addParameter(field.getValue(obj));
+		}
+		stat.setSQL(buff.toString());
+		stat.showSQL(Type.SELECT);
+		return stat.executeQuery(rs -> {
+			if (!rs.next())
+				return null;
+			doRead(rs, db, (T)obj, def);
+			Object[] snapshot = db.factory.isDirtyChecking() ? db.getSnapshot(obj) : null;
+			if (null != snapshot)
+				// the loaded value is what the row holds, it is not a change
+				snapshot[fields.indexOf(def)] = snapshotValue(db, obj, def);
+			try {
+				return def.field.get(obj);
+			}
+			catch (IllegalAccessException e) {
+				throw new JaquError(e, e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Returns the fields read from a row of this table, the ones in its select list.
+	 *
+	 * @return List&lt;FieldDefinition&gt;
+	 */
+	List<FieldDefinition> getSelectFields() {
+		List<FieldDefinition> selectFields = Utils.newArrayList();
+		for (FieldDefinition def: fields) {
+			if (!def.isSilent && !def.isExtension && !def.isLazyColumn)
+				selectFields.add(def);
+		}
+		return selectFields;
+	}
+
 	SQLStatement getSelectList(Db db, String as) {
 		SQLStatement selectList = new SQLStatement(db);
 		int i = 0;
 		for (FieldDefinition def: fields) {
-			if (!def.isSilent && !def.isExtension) {
+			if (!def.isSilent && !def.isExtension && !def.isLazyColumn) {
 				if (i > 0) {
 					selectList.appendSQL(", ");
 				}
@@ -1619,7 +2651,7 @@ class TableDefinition<T> {
 		SQLStatement selectList = new SQLStatement(query.getDb());
 		int i = 0;
 		for (FieldDefinition def: fields) {
-			if (def.isSilent)
+			if (def.isSilent || def.isLazyColumn)
 				continue;
 			if (i > 0) {
 				selectList.appendSQL(", ");
@@ -1648,7 +2680,17 @@ class TableDefinition<T> {
 	private void doRead(ResultSet rs, Db db, T item, FieldDefinition def) {
 		if (StatementLogger.isDebugEnabled())
 			StatementLogger.debug("Working on Field: " + def.field.getName());
-		if (!def.isSilent) {
+		if (null != def.codec) {
+			// a plain column, read straight into its field
+			try {
+				Object o = def.codec.read(rs, def.columnName);
+				def.field.set(item, null != def.converter ? def.converter.fromDb(o) : o);
+			}
+			catch (SQLException | IllegalArgumentException | IllegalAccessException e) {
+				throw new JaquError(e, "Unable to read column %s of %s --> %s", def.columnName, item.getClass().getName(), e.getMessage());
+			}
+		}
+		else if (!def.isSilent) {
 			Object o;
 			try {
 				o = def.read(rs, dialect);
@@ -1658,11 +2700,8 @@ class TableDefinition<T> {
 					return;
 				throw sqle;
 			}
-			Converter converter = def.field.getAnnotation(Converter.class);
-			if (null != converter) {				
-				JaquConverter convert = Utils.newObject(converter.value());
-				o = convert.fromDb(o);
-			}
+			if (null != def.converter)
+				o = def.converter.fromDb(o);
 			def.setValue(item, o, db);
 		}
 		else
@@ -1687,12 +2726,19 @@ class TableDefinition<T> {
 	 * @param myColumnNameInRelation
 	 * @param relationPkName
 	 * @param relationColumnName
+	 * @param index - when true both directions of the relation are indexed
 	 */
 	private void createRelationTable(Class<?> childType, String joinTableName, String myColumnNameInRelation, Class<?> relationPkClass,
-			String relationColumnName, Db db) {
+			String relationColumnName, boolean index, Db db) {
 		try {
-			if (dialect.checkTableExists(joinTableName, db))
+			SchemaCatalog catalog = db.factory.getCatalog(db);
+			if (catalog.hasTable(joinTableName)) {
+				if (index) {
+					createRelationIndex(db, joinTableName, false, myColumnNameInRelation, relationColumnName);
+					createRelationIndex(db, joinTableName, false, relationColumnName, myColumnNameInRelation);
+				}
 				return;
+			}
 			FieldDefinition myPkDef = this.getPrimaryKeyFields().get(0);
 			String myPkLength = myPkDef.maxLength != 0 ? "(" + myPkDef.maxLength + ")" : "";
 
@@ -1714,6 +2760,11 @@ class TableDefinition<T> {
 			builder.append(getDataType(primaryKeyColumnNames.get(0).field.getType())).append(myPkLength + ", ").append(relationColumnName).append(" ");
 			builder.append(dialect.getDataType(relationPkClass)).append(relationPkLength + ")");
 			db.executeUpdate(false, builder.toString());
+			catalog.add(joinTableName, myColumnNameInRelation, relationColumnName);
+			if (index) {
+				createRelationIndex(db, joinTableName, true, myColumnNameInRelation, relationColumnName);
+				createRelationIndex(db, joinTableName, true, relationColumnName, myColumnNameInRelation);
+			}
 		}
 		catch (Exception e) {
 			throw new JaquError(e, e.getMessage());
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * Holds the inserts, updates, merges and deletes of a write behind session until they are flushed. Repeated operations on the same object
+ * collapse into one, and the flush writes each table's objects together, in foreign key order.
+ *
+ * @author Shai Bentin
+ */
+final class UnitOfWork {
+
+	enum Operation {
+		INSERT, MERGE, UPDATE, DELETE
+	}
+
+	// the operation pending on each object, by identity
+	private final Map<Object, Operation> pending = new IdentityHashMap<>();
+	// the objects in the order they were first queued. May hold an object more then once or one that is no longer pending
+	private final List<Object> order = Utils.newArrayList();
+
+	/**
+	 * Queue the operation on the object. When the object already has a pending operation the two are collapsed into the one operation
+	 * that leaves the same end result.
+	 *
+	 * @param obj
+	 * @param operation
+	 */
+	void add(Object obj, Operation operation) {
+		Operation current = pending.get(obj);
+		if (null == current) {
+			pending.put(obj, operation);
+			order.add(obj);
+			return;
+		}
+		Operation collapsed = collapse(current, operation);
+		if (null == collapsed)
+			pending.remove(obj);
+		else
+			pending.put(obj, collapsed);
+	}
+
+	boolean isEmpty() {
+		return pending.isEmpty();
+	}
+
+	/**
+	 * Drop all pending operations without writing them.
+	 */
+	void clear() {
+		pending.clear();
+		order.clear();
+	}
+
+	/**
+	 * Write all pending operations. Tables are written parents first, so rows referenced by a foreign key exist before the rows referencing them,
+	 * and deletes are written last, children first. Within a table inserts, merges and updates are each sent as one batch where the table allows it.
+	 *
+	 * @param db
+	 */
+	void flush(Db db) {
+		Map<TableDefinition<?>, Map<Operation, List<Object>>> groups = new LinkedHashMap<>();
+		for (Object obj : order) {
+			Operation operation = pending.remove(obj);
+			if (null == operation)
+				continue;
+			groups.computeIfAbsent(db.define(obj.getClass()), k -> new LinkedHashMap<>()).computeIfAbsent(operation, k -> Utils.newArrayList()).add(obj);
+		}
+		order.clear();
+
+		List<TableDefinition<?>> tables = sortByReference(groups.keySet());
+		for (TableDefinition<?> table : tables) {
+			Map<Operation, List<Object>> operations = groups.get(table);
+			List<Object> objs = operations.get(Operation.INSERT);
+			if (null != objs)
+				table.insertQueued(db, objs);
+			objs = operations.get(Operation.MERGE);
+			if (null != objs)
+				table.mergeBatch(db, objs);
+			objs = operations.get(Operation.UPDATE);
+			if (null != objs)
+				table.updateQueued(db, objs);
+			db.reEntrantCache.clearReEntrent();
+		}
+		for (int i = tables.size() - 1; i >= 0; i--) {
+			List<Object> objs = groups.get(tables.get(i)).get(Operation.DELETE);
+			if (null != objs) {
+				tables.get(i).deleteBatch(db, objs);
+				db.reEntrantCache.clearReEntrent();
+			}
+		}
+	}
+
+	/*
+	 * the operation that has the same end result as 'current' followed by 'next', null when together they leave the database as it was
+	 */
+	private Operation collapse(Operation current, Operation next) {
+		if (Operation.DELETE == next)
+			// a row inserted and deleted within the unit of work is never written
+			return (Operation.INSERT == current) ? null : Operation.DELETE;
+		switch (current) {
+			case INSERT:
+				return Operation.INSERT;
+			case UPDATE:
+				return (Operation.UPDATE == next) ? Operation.UPDATE : Operation.MERGE;
+			default:
+				// a merge stays a merge, a deleted row written again is merged back
+				return Operation.MERGE;
+		}
+	}
+
+	/*
+	 * order the tables so that a table comes after the tables it references. Tables that do not reference each other, or reference each other
+	 * in a cycle, keep the order in which they were first queued.
+	 */
+	private List<TableDefinition<?>> sortByReference(Collection<TableDefinition<?>> tables) {
+		List<TableDefinition<?>> remaining = Utils.newArrayList();
+		remaining.addAll(tables);
+		List<TableDefinition<?>> sorted = Utils.newArrayList();
+		while (!remaining.isEmpty()) {
+			TableDefinition<?> next = remaining.get(0);
+			for (TableDefinition<?> candidate : remaining) {
+				boolean ready = true;
+				for (TableDefinition<?> other : remaining) {
+					if (other != candidate && candidate.references(other)) {
+						ready = false;
+						break;
+					}
+				}
+				if (ready) {
+					next = candidate;
+					break;
+				}
+			}
+			remaining.remove(next);
+			sorted.add(next);
+		}
+		return sorted;
+	}
+}
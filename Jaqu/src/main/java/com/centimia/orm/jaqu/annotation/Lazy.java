@@ -18,7 +18,12 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * Use this annotation on O2O relationships you want to lazy load.
+ * Use this annotation on O2O relationships you want to lazy load.<br>
+ * On a large plain column (a byte array, String, {@link java.io.InputStream} or {@link java.io.Reader}) the column is left out of the select and read
+ * from the db when its getter is first called. An InputStream or Reader field is written as a stream. It is read from the lob with its row, as the lob is
+ * not valid once the result set is closed.<p>
+ * <b>Note:</b> A lazy column is not read by a read only session. Updating an object whose lazy column was never read leaves the column as it is, read it
+ * (call its getter) before setting it to null.
  * @author shai
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -62,4 +62,9 @@ public @interface Many2Many {
 	String orderBy() default "";
 	/** the direction of order by. Default is ASC" */
 	String direction() default "ASC";
+	/**
+	 * When true, and JaQu creates the tables, the relation table is created with an index on each direction of the relation.
+	 * Default true
+	 */
+	boolean index() default true;
 }
@@ -81,4 +81,10 @@ public @interface One2Many {
 	String orderBy() default "";
 	/** the direction of order by. Default is ASC" */
 	String direction() default "ASC";
+	/**
+	 * When true, and JaQu creates the tables, the column holding the relation is indexed. This is the foreign key column in the child table, or
+	 * both directions of the relation table when one is used.
+	 * Default true
+	 */
+	boolean index() default true;
 }
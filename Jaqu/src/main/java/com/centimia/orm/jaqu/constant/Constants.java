@@ -30,4 +30,6 @@ public class Constants {
 	public static final int IO_BUFFER_SIZE = 4 * 1024;
 	public static final String UTF8 = "UTF8";
 	public static final String IS_LAZY = "isLazy";
+	/** the suffix of the metadata class the enhancer generates for an entity */
+	public static final String METADATA_SUFFIX = "$JaquMetadata";
 }
\ No newline at end of file
@@ -22,6 +22,8 @@ package com.centimia.orm.jaqu.dialect;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.orm.jaqu.Db;
 import com.centimia.orm.jaqu.JaquError;
@@ -45,13 +47,12 @@ public class DB2Dialect implements SQLDialect {
 	}
 
 	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkTableExists(java.lang.String, com.centimia.orm.jaqu.Db)
+	 * @see com.centimia.orm.jaqu.SQLDialect#readCatalog(com.centimia.orm.jaqu.Db)
 	 */
-	public boolean checkTableExists(String tableName, Db db) {
-		// if the line above does not do the job, use this method instead...
-		return false;
+	public Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		return db.executeQuery("SELECT tabname AS TABLE_NAME, colname AS COLUMN_NAME FROM syscat.columns WHERE tabschema = CURRENT SCHEMA", SQLDialect::catalogOf);
 	}
-	
+
 	/**
 	 * @see com.centimia.orm.jaqu.SQLDialect#getDataType(java.lang.Class)
 	 */
@@ -178,14 +179,6 @@ public class DB2Dialect implements SQLDialect {
         return "ALTER TABLE " + tableName + " ADD " + discriminatorName + " VARCHAR(2)";
     }
 
-	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkDiscriminatorExists(java.lang.String, java.lang.String, com.centimia.orm.jaqu.Db)
-	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
-		String query = "SELECT 1 FROM syscat.columns WHERE tabname = '" + tableName + "' and colname = '" + discriminatorName + "'" ;
-		return db.executeQuery(query, ResultSet::next);
-	}
-	
 	/*
 	 * (non-Javadoc)
 	 * @see com.centimia.orm.jaqu.SQLDialect#getFunction(com.centimia.orm.jaqu.dialect.Functions)
@@ -234,4 +227,24 @@ public class DB2Dialect implements SQLDialect {
 	public StatementBuilder wrapDeleteQuery(StatementBuilder innerDelete, String tableName, String as) {
 		return new StatementBuilder("DELETE FROM ").append(tableName).append(" ").append(as).append(" ").append(innerDelete);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#createMergeStatement(java.lang.String, java.lang.String[], java.lang.String[])
+	 */
+	@Override
+	public String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		StatementBuilder buff = new StatementBuilder("MERGE INTO ").append(tableName).append(" t USING (VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			buff.appendExceptFirst(", ");
+			buff.append('?');
+		}
+		buff.append(")) AS s (").resetCount();
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append(column);
+		}
+		buff.append(") ON (");
+		return SQLDialect.mergeBody(buff, primaryKeys, columns).toString();
+	}
 }
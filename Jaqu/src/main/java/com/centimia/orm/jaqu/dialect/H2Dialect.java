@@ -24,6 +24,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.temporal.TemporalAccessor;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.orm.jaqu.Db;
 import com.centimia.orm.jaqu.JaquError;
@@ -133,13 +137,26 @@ public class H2Dialect implements SQLDialect{
     }
 	
 	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkTableExists(java.lang.String, com.centimia.orm.jaqu.Db)
+	 * @see com.centimia.orm.jaqu.SQLDialect#readCatalog(com.centimia.orm.jaqu.Db)
 	 */
-	public boolean checkTableExists(String tableName, Db db) {
-		// if the line above does not do the job, use this method instead...
-		return false;
+	public Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		return db.executeQuery("SELECT TABLE_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA()", SQLDialect::catalogOf);
 	}
-	
+
+	/**
+	 * @see com.centimia.orm.jaqu.SQLDialect#readIndices(com.centimia.orm.jaqu.Db)
+	 */
+	public Map<String, Map<String, List<String>>> readIndices(Db db) throws SQLException {
+		try {
+			return db.executeQuery("SELECT TABLE_NAME, INDEX_NAME, COLUMN_NAME, ORDINAL_POSITION FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = SCHEMA()",
+					rs -> SQLDialect.indicesOf(rs, new HashMap<>()));
+		}
+		catch (JaquError e) {
+			// H2 2.x keeps the index columns in a view of their own, read them through the meta data
+			return SQLDialect.super.readIndices(db);
+		}
+	}
+
 	/**
 	 * @see com.centimia.orm.jaqu.SQLDialect#createDiscrimantorColumn(java.lang.String, java.lang.String)
 	 */
@@ -147,14 +164,6 @@ public class H2Dialect implements SQLDialect{
         return "ALTER TABLE " + tableName + " ADD " + discriminatorName + " VARCHAR(2)";
     }
 	
-	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkDiscriminatorExists(java.lang.String, java.lang.String, com.centimia.orm.jaqu.Db)
-	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
-		String query = "SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS C1 WHERE C1.TABLE_NAME = '" + tableName + "' AND C1.COLUMN_NAME = '" + discriminatorName + "'";
-		return db.executeQuery(query, ResultSet::next);
-	}
-	
 	/**
 	 * In H2 mapping is very straight forward between DB types and java types and thus a simple return is used
 	 * 
@@ -270,4 +279,28 @@ public class H2Dialect implements SQLDialect{
 		StatementBuilder builder = new StatementBuilder("SELECT ").append(seqName).append(".nextval from dual");
 		return builder.toString();
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#createMergeStatement(java.lang.String, java.lang.String[], java.lang.String[])
+	 */
+	@Override
+	public String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		StatementBuilder buff = new StatementBuilder("MERGE INTO ").append(tableName).append(" (");
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append(column);
+		}
+		buff.append(") KEY (").resetCount();
+		for (String key: primaryKeys) {
+			buff.appendExceptFirst(", ");
+			buff.append(key);
+		}
+		buff.append(") VALUES (").resetCount();
+		for (int i = 0; i < columns.length; i++) {
+			buff.appendExceptFirst(", ");
+			buff.append('?');
+		}
+		return buff.append(')').toString();
+	}
 }
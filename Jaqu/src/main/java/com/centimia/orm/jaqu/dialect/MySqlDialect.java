@@ -25,6 +25,10 @@ import java.sql.SQLException;
 import java.time.temporal.TemporalAccessor;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.core.ExceptionMessages;
 import com.centimia.core.exception.ResourceDeadLockException;
@@ -56,13 +60,20 @@ public class MySqlDialect implements SQLDialect {
 	}
 	
 	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkTableExists(java.lang.String, com.centimia.orm.jaqu.Db)
+	 * @see com.centimia.orm.jaqu.SQLDialect#readCatalog(com.centimia.orm.jaqu.Db)
 	 */
-	public boolean checkTableExists(String tableName, Db db) {
-		// My SQL support "select TABLE IF NOT EXISTS" so we don't access the DB here to check it...
-		return false;
+	public Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		return db.executeQuery("SELECT TABLE_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = DATABASE()", SQLDialect::catalogOf);
 	}
-	
+
+	/**
+	 * @see com.centimia.orm.jaqu.SQLDialect#readIndices(com.centimia.orm.jaqu.Db)
+	 */
+	public Map<String, Map<String, List<String>>> readIndices(Db db) throws SQLException {
+		return db.executeQuery("SELECT TABLE_NAME, INDEX_NAME, COLUMN_NAME, SEQ_IN_INDEX AS ORDINAL_POSITION FROM INFORMATION_SCHEMA.STATISTICS WHERE TABLE_SCHEMA = DATABASE()",
+				rs -> SQLDialect.indicesOf(rs, new HashMap<>()));
+	}
+
 	/**
 	 * @see com.centimia.orm.jaqu.SQLDialect#createTableString(java.lang.String)
 	 */
@@ -203,14 +214,6 @@ public class MySqlDialect implements SQLDialect {
         return "ALTER TABLE " + tableName + " ADD " + discriminatorName + " VARCHAR(2)";
     }
 
-	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkDiscriminatorExists(java.lang.String, java.lang.String, com.centimia.orm.jaqu.Db)
-	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
-		String query = "SELECT * FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + tableName + "' AND COLUMN_NAME = '" + discriminatorName + "'";
-		return db.executeQuery(query, ResultSet::next);		
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * @see com.centimia.orm.jaqu.SQLDialect#getFunction(com.centimia.orm.jaqu.dialect.Functions)
@@ -282,4 +285,54 @@ public class MySqlDialect implements SQLDialect {
 	public String getQueryStyleDate(Date date) {
 		return null;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#createMergeStatement(java.lang.String, java.lang.String[], java.lang.String[])
+	 */
+	@Override
+	public String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		StatementBuilder buff = new StatementBuilder("INSERT INTO ").append(tableName).append(" (");
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append(column);
+		}
+		buff.append(") VALUES (").resetCount();
+		for (int i = 0; i < columns.length; i++) {
+			buff.appendExceptFirst(", ");
+			buff.append('?');
+		}
+		buff.append(") ON DUPLICATE KEY UPDATE ").resetCount();
+		List<String> keys = Arrays.asList(primaryKeys);
+		for (String column: columns) {
+			if (keys.contains(column))
+				continue;
+			buff.appendExceptFirst(", ");
+			buff.append(column).append(" = VALUES(").append(column).append(')');
+		}
+		// nothing to update besides the key, a no-op assignment keeps the statement valid
+		if (buff.toString().endsWith("UPDATE "))
+			buff.append(primaryKeys[0]).append(" = ").append(primaryKeys[0]);
+		return buff.toString();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#getTypedNull(java.lang.String)
+	 *  mysql only casts to a few types, a plain null is typed by the other selects of a union
+	 */
+	@Override
+	public String getTypedNull(String dataType) {
+		switch (dataType) {
+			case "INTEGER":
+			case "BIGINT":
+			case "SMALLINT":
+			case "TINYINT": return "CAST(NULL AS SIGNED)";
+			case "VARCHAR":
+			case "CHAR": return "CAST(NULL AS CHAR)";
+			case "DATETIME":
+			case "TIME": return "CAST(NULL AS " + dataType + ")";
+			default: return "NULL";
+		}
+	}
 }
@@ -29,6 +29,10 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.TemporalAccessor;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.orm.jaqu.Db;
 import com.centimia.orm.jaqu.JaquError;
@@ -130,13 +134,20 @@ public class OracleDialect implements SQLDialect {
 	}
 
 	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkTableExists(java.lang.String, com.centimia.orm.jaqu.Db)
+	 * @see com.centimia.orm.jaqu.SQLDialect#readCatalog(com.centimia.orm.jaqu.Db)
 	 */
-	public boolean checkTableExists(String tableName, Db db) {
-		String query = "SELECT 1 FROM USER_TABLES WHERE TABLE_NAME = '" + tableName.toUpperCase() + "'";
-		return db.executeQuery(query, ResultSet::next);
+	public Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		return db.executeQuery("SELECT TABLE_NAME, COLUMN_NAME FROM USER_TAB_COLUMNS", SQLDialect::catalogOf);
 	}
-	
+
+	/**
+	 * @see com.centimia.orm.jaqu.SQLDialect#readIndices(com.centimia.orm.jaqu.Db)
+	 */
+	public Map<String, Map<String, List<String>>> readIndices(Db db) throws SQLException {
+		return db.executeQuery("SELECT TABLE_NAME, INDEX_NAME, COLUMN_NAME, COLUMN_POSITION AS ORDINAL_POSITION FROM USER_IND_COLUMNS",
+				rs -> SQLDialect.indicesOf(rs, new HashMap<>()));
+	}
+
 	/**
 	 * Oracle mapping is not straight forward so we map according to the type
 	 * 
@@ -274,14 +285,6 @@ public class OracleDialect implements SQLDialect {
         return "ALTER TABLE " + tableName + " ADD " + discriminatorName + " VARCHAR(2)";
     }
 
-	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkDiscriminatorExists(java.lang.String, java.lang.String, com.centimia.orm.jaqu.Db)
-	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
-		String query = "Select 1 from user_tab_columns c where c.table_name = '" + tableName + "' and c.column_name = '" + discriminatorName + "'";
-		return db.executeQuery(query, ResultSet::next);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * @see com.centimia.orm.jaqu.SQLDialect#getFunction(com.centimia.orm.jaqu.dialect.Functions)
@@ -355,4 +358,19 @@ public class OracleDialect implements SQLDialect {
 	public StatementBuilder wrapDeleteQuery(StatementBuilder innerDelete, String tableName, String as) {
 		return new StatementBuilder("DELETE FROM ").append(tableName).append(" ").append(as).append(" ").append(innerDelete);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#createMergeStatement(java.lang.String, java.lang.String[], java.lang.String[])
+	 */
+	@Override
+	public String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		StatementBuilder buff = new StatementBuilder("MERGE INTO ").append(tableName).append(" t USING (SELECT ");
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append("? ").append(column);
+		}
+		buff.append(" FROM dual) s ON (");
+		return SQLDialect.mergeBody(buff, primaryKeys, columns).toString();
+	}
 }
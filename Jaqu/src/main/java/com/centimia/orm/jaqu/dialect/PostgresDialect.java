@@ -22,6 +22,10 @@ package com.centimia.orm.jaqu.dialect;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.orm.jaqu.Db;
 import com.centimia.orm.jaqu.JaquError;
@@ -39,11 +43,10 @@ import com.centimia.orm.jaqu.util.StatementBuilder;
 public class PostgresDialect implements SQLDialect {
 
 	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkTableExists(java.lang.String, com.centimia.orm.jaqu.Db)
+	 * @see com.centimia.orm.jaqu.SQLDialect#readCatalog(com.centimia.orm.jaqu.Db)
 	 */
-	public boolean checkTableExists(String tableName, Db db) {
-		String query = "SELECT 1 FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = '" + tableName + "'";
-		return db.executeQuery(query, ResultSet::next);
+	public Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		return db.executeQuery("select table_name, column_name from information_schema.columns where table_schema = current_schema()", SQLDialect::catalogOf);
 	}
 
 	/**
@@ -183,14 +186,6 @@ public class PostgresDialect implements SQLDialect {
 		return null;
 	}
 
-	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkDiscriminatorExists(java.lang.String, java.lang.String, com.centimia.orm.jaqu.Db)
-	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
-		String query = "select 1 from information_schema.columns where table_name = '" + tableName + "' and column_name = '" + discriminatorName + "'";
-		return db.executeQuery(query, ResultSet::next);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * @see com.centimia.orm.jaqu.SQLDialect#getFunction(com.centimia.orm.jaqu.dialect.Functions)
@@ -245,4 +240,38 @@ public class PostgresDialect implements SQLDialect {
 		StatementBuilder builder = new StatementBuilder("SELECT nextval('").append(seqName).append("')");
 		return builder.toString();
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#createMergeStatement(java.lang.String, java.lang.String[], java.lang.String[])
+	 */
+	@Override
+	public String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		StatementBuilder buff = new StatementBuilder("INSERT INTO ").append(tableName).append(" (");
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append(column);
+		}
+		buff.append(") VALUES (").resetCount();
+		for (int i = 0; i < columns.length; i++) {
+			buff.appendExceptFirst(", ");
+			buff.append('?');
+		}
+		buff.append(") ON CONFLICT (").resetCount();
+		for (String key: primaryKeys) {
+			buff.appendExceptFirst(", ");
+			buff.append(key);
+		}
+		buff.append(")").resetCount();
+		List<String> keys = Arrays.asList(primaryKeys);
+		for (String column: columns) {
+			if (keys.contains(column))
+				continue;
+			buff.appendOnlyFirst(" DO UPDATE SET ");
+			buff.appendExceptFirst(", ");
+			buff.append(column).append(" = EXCLUDED.").append(column);
+		}
+		buff.appendOnlyFirst(" DO NOTHING");
+		return buff.toString();
+	}
 }
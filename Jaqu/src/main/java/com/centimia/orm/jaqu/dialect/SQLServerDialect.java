@@ -22,6 +22,8 @@ package com.centimia.orm.jaqu.dialect;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
 
 import com.centimia.orm.jaqu.Db;
 import com.centimia.orm.jaqu.JaquError;
@@ -46,13 +48,12 @@ public class SQLServerDialect implements SQLDialect {
 	}
 
 	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkTableExists(java.lang.String, com.centimia.orm.jaqu.Db)
+	 * @see com.centimia.orm.jaqu.SQLDialect#readCatalog(com.centimia.orm.jaqu.Db)
 	 */
-	public boolean checkTableExists(String tableName, Db db) {
-		// if the line above does not do the job, use this method instead...
-		return false;
+	public Map<String, Set<String>> readCatalog(Db db) throws SQLException {
+		return db.executeQuery("SELECT TABLE_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = SCHEMA_NAME()", SQLDialect::catalogOf);
 	}
-	
+
 	/**
 	 * @see com.centimia.orm.jaqu.SQLDialect#getDataType(java.lang.Class)
 	 */
@@ -175,14 +176,6 @@ public class SQLServerDialect implements SQLDialect {
 		return "BIGINT IDENTITY(1,1)";
 	}
 
-	/**
-	 * @see com.centimia.orm.jaqu.SQLDialect#checkDiscriminatorExists(java.lang.String, java.lang.String, com.centimia.orm.jaqu.Db)
-	 */
-	public boolean checkDiscriminatorExists(String tableName, String discriminatorName, Db db) {
-		String query = "SELECT 1 FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = '" + tableName + "' AND COLUMN_NAME = '" + discriminatorName + "'";
-		return db.executeQuery(query, ResultSet::next);
-	}
-
 	/**
 	 * @see com.centimia.orm.jaqu.SQLDialect#createDiscrimantorColumn(java.lang.String, java.lang.String)
 	 */
@@ -242,4 +235,24 @@ public class SQLServerDialect implements SQLDialect {
 	public StatementBuilder wrapDeleteQuery(StatementBuilder innerDelete, String tableName, String as) {
 		return new StatementBuilder("DELETE ").append(as).append(" FROM ").append(tableName).append(" ").append(as).append(" ").append(innerDelete);
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.centimia.orm.jaqu.SQLDialect#createMergeStatement(java.lang.String, java.lang.String[], java.lang.String[])
+	 */
+	@Override
+	public String createMergeStatement(String tableName, String[] primaryKeys, String[] columns) {
+		StatementBuilder buff = new StatementBuilder("MERGE INTO ").append(tableName).append(" t USING (VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			buff.appendExceptFirst(", ");
+			buff.append('?');
+		}
+		buff.append(")) AS s (").resetCount();
+		for (String column: columns) {
+			buff.appendExceptFirst(", ");
+			buff.append(column);
+		}
+		buff.append(") ON (");
+		return SQLDialect.mergeBody(buff, primaryKeys, columns).append(';').toString();
+	}
 }
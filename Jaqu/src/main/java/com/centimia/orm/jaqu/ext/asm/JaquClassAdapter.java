@@ -20,11 +20,18 @@
  */
 package com.centimia.orm.jaqu.ext.asm;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ByteVector;
 import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
@@ -41,11 +48,17 @@ import com.centimia.orm.jaqu.annotation.Entity;
  */
 public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 
+	/** the class attribute marking a class the enhancer has altered, an enhanced class is not altered again */
+	public static final String ENHANCED_ATTRIBUTE = "JaquEnhanced";
 	private static final String $ORIG = "$orig_";
 	private String className;
 	private HashSet<String> relationFields = new HashSet<>();
 	private HashSet<String> lazyLoadFields = new HashSet<>();
+	private HashMap<String, String> fieldDescriptors = new HashMap<>();
 	private HashMap<String, String[]> abstractFields = new HashMap<>();
+	// the persisted fields in declaration order with the annotations found on them
+	private LinkedHashMap<String, StringBuilder> persistedFields = new LinkedHashMap<>();
+	private int version;
 	private boolean isEntityAnnotationPresent = false;
 	private boolean isMappedSupperClass = false;
 	private boolean isInherited = false;
@@ -60,6 +73,7 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
 		this.className = name;
+		this.version = version;
 		cv.visit(version, access, name, signature, superName, interfaces);
 	}
 	
@@ -101,11 +115,15 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 				return super.visitMethod(access, newMethodName, desc, signature, exceptions);
 			}
 			else if (lazyLoadFields.contains(checkName)) {
-				// this is a O2O relationship which should be lazy loaded
 				String newMethodName = $ORIG + methodName;
 				String fieldName = camelCase(methodName);
 				
-				generateLazyRelation(access, desc, exceptions, methodName, newMethodName, fieldName);
+				if (isBasicType(fieldDescriptors.get(checkName)))
+					// this is a large column which should be lazy loaded
+					generateLazyColumn(access, desc, signature, exceptions, methodName, newMethodName, fieldName);
+				else
+					// this is a O2O relationship which should be lazy loaded
+					generateLazyRelation(access, desc, exceptions, methodName, newMethodName, fieldName);
 				return super.visitMethod(access, newMethodName, desc, signature, exceptions);
 			}
 			else
@@ -127,8 +145,12 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 			// collect the fields that are relation by rule. (Collection type fields....)
 			if (desc.indexOf("java/util/List") != -1 || desc.indexOf("java/util/Set") != -1 || desc.indexOf("java/util/Collection") != -1)
 				relationFields.add(name.toLowerCase());
+			fieldDescriptors.put(name.toLowerCase(), desc);
+			if (0 == (access & (ACC_STATIC | ACC_FINAL | ACC_TRANSIENT)))
+				persistedFields.put(name, new StringBuilder());
 		}
-		return new JaquFieldVisitor(Opcodes.ASM9, super.visitField(access, name, desc, signature, value), name.toLowerCase(), relationFields, lazyLoadFields, abstractFields);
+		return new JaquFieldVisitor(Opcodes.ASM9, super.visitField(access, name, desc, signature, value), name.toLowerCase(), relationFields, lazyLoadFields, abstractFields,
+				name, persistedFields);
 	}
 	
 	/* (non-Javadoc)
@@ -148,6 +170,8 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 				fv.visitEnd();
 			}
 		}
+		if (isEntityAnnotationPresent || isMappedSupperClass)
+			cv.visitAttribute(new EnhancedAttribute());
 
 		super.visitEnd();
 	}
@@ -516,6 +540,84 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 		mv.visitEnd();
 	}
 	
+	/**
+	 * Generates the getter of a lazy column, copy the old to a new method and connect them.
+	 * the structure of the new method is:<br>
+	 * <br><b><div style="background:lightgray;color:black">
+	 * <pre>
+	 * public [fieldType] [getterName]() {
+	 *	if ([field] == null && db != null && !db.isClosed())
+	 *		[field] = ([fieldType])db.getLazyColumn("[field]", this);
+	 *	return $orig_[getterName]();
+	 * }
+	 * </pre>
+	 * </div>
+	 * 
+	 * @param access
+	 * @param desc
+	 * @param signature
+	 * @param exceptions
+	 * @param methodName - current method name
+	 * @param newMethodName - new method name (the $orig_[current method name])
+	 * @param fieldName
+	 */
+	public void generateLazyColumn(int access, String desc, String signature, String[] exceptions, String methodName, String newMethodName, String fieldName) {
+		MethodVisitor mv = cv.visitMethod(access, methodName, desc, signature, exceptions);
+		String fieldSignature = desc.substring(desc.indexOf(')') + 1);
+		
+		mv.visitCode();
+		Label l0 = new Label();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, fieldName, fieldSignature);
+		mv.visitJumpInsn(IFNONNULL, l0);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "db", "Lcom/centimia/orm/jaqu/Db;");
+		mv.visitJumpInsn(IFNULL, l0);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "db", "Lcom/centimia/orm/jaqu/Db;");
+		mv.visitMethodInsn(INVOKEVIRTUAL, "com/centimia/orm/jaqu/Db", "isClosed", "()Z", false);
+		mv.visitJumpInsn(IFNE, l0);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitFieldInsn(GETFIELD, className, "db", "Lcom/centimia/orm/jaqu/Db;");
+		mv.visitLdcInsn(fieldName);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKEVIRTUAL, "com/centimia/orm/jaqu/Db", "getLazyColumn", "(Ljava/lang/String;Ljava/lang/Object;)Ljava/lang/Object;", false);
+		mv.visitTypeInsn(CHECKCAST, Type.getType(fieldSignature).getInternalName());
+		mv.visitFieldInsn(PUTFIELD, className, fieldName, fieldSignature);
+		mv.visitLabel(l0);
+		mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKEVIRTUAL, className, newMethodName, desc, false);
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(4, 1);
+		mv.visitEnd();
+	}
+	
+	/**
+	 * Returns the byte code of the metadata class of the visited class, or null when the class is not JaQu annotated.
+	 * 
+	 * @see JaquMetadataWriter
+	 * @return byte[]
+	 */
+	public byte[] getMetadata() {
+		if (!isJaquAnnotated())
+			return null;
+		List<String> fields = new ArrayList<>(persistedFields.keySet());
+		List<String> annotations = new ArrayList<>();
+		for (Map.Entry<String, StringBuilder> field: persistedFields.entrySet())
+			annotations.add(field.getValue().toString());
+		return JaquMetadataWriter.write(version, className, fields, annotations);
+	}
+	
+	/**
+	 * Returns the internal name of the visited class.
+	 * @return String
+	 */
+	public String getClassName() {
+		return this.className;
+	}
+	
 	/**
 	 * Returns true when the adapter has dealt with a JaQu annotated class and altered it.
 	 * @return boolean
@@ -524,6 +626,13 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 		return isEntityAnnotationPresent || isMappedSupperClass;
 	}
 	
+	/*
+	 * true when the field descriptor is of a basic column, an array or a java type, and not of a related entity
+	 */
+	private boolean isBasicType(String fieldDescriptor) {
+		return null != fieldDescriptor && (fieldDescriptor.startsWith("[") || fieldDescriptor.startsWith("Ljava/"));
+	}
+	
 	/**
 	 * @param name
 	 * @return String
@@ -533,4 +642,22 @@ public class JaquClassAdapter extends ClassVisitor implements Opcodes {
 		realName[0] = Character.toLowerCase(realName[0]);
 		return new String(realName);
 	}
+
+	/**
+	 * The {@link JaquClassAdapter#ENHANCED_ATTRIBUTE} attribute. It has no content.
+	 */
+	public static final class EnhancedAttribute extends Attribute {
+		
+		public EnhancedAttribute() {
+			super(ENHANCED_ATTRIBUTE);
+		}
+
+		/*
+		 * @see org.objectweb.asm.Attribute#write(org.objectweb.asm.ClassWriter, byte[], int, int, int)
+		 */
+		@Override
+		protected ByteVector write(ClassWriter classWriter, byte[] code, int codeLength, int maxStack, int maxLocals) {
+			return new ByteVector();
+		}
+	}
 }
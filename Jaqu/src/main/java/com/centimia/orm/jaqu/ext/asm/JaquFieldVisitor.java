@@ -14,6 +14,7 @@ package com.centimia.orm.jaqu.ext.asm;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.FieldVisitor;
@@ -24,17 +25,38 @@ import org.objectweb.asm.FieldVisitor;
  */
 public class JaquFieldVisitor extends FieldVisitor {
 
+	private static final String ANNOTATION_PACKAGE = "Lcom/centimia/orm/jaqu/annotation/";
+
 	private final HashSet<String> relationFields;
 	private final HashSet<String> lazyLoadFields;
 	private final HashMap<String, String[]> abstractFields;
 	private final String name;
+	private final String fieldName;
+	private final Map<String, StringBuilder> persistedFields;
 	
 	public JaquFieldVisitor(int api, FieldVisitor fv, String name, HashSet<String> relationFields, HashSet<String> lazyLoadFields, HashMap<String, String[]> abstractFields) {
+		this(api, fv, name, relationFields, lazyLoadFields, abstractFields, null, null);
+	}
+	
+	/**
+	 * @param api
+	 * @param fv
+	 * @param name - the field name in lower case
+	 * @param relationFields
+	 * @param lazyLoadFields
+	 * @param abstractFields
+	 * @param fieldName - the field name
+	 * @param persistedFields - the annotations of the persisted fields by field name, collected for the metadata class. May be null
+	 */
+	public JaquFieldVisitor(int api, FieldVisitor fv, String name, HashSet<String> relationFields, HashSet<String> lazyLoadFields, HashMap<String, String[]> abstractFields,
+			String fieldName, Map<String, StringBuilder> persistedFields) {
 		super(api, fv);
 		this.name = name;
 		this.relationFields = relationFields;
 		this.lazyLoadFields = lazyLoadFields;
 		this.abstractFields = abstractFields;
+		this.fieldName = fieldName;
+		this.persistedFields = persistedFields;
 	}
 
 	/* (non-Javadoc)
@@ -53,6 +75,15 @@ public class JaquFieldVisitor extends FieldVisitor {
 				this.lazyLoadFields.add(name);
 			}
 			
+			if (null != persistedFields && desc.startsWith(ANNOTATION_PACKAGE)) {
+				StringBuilder annotations = persistedFields.get(fieldName);
+				String annotation = desc.substring(ANNOTATION_PACKAGE.length(), desc.length() - 1);
+				if ("Transient".equals(annotation) || "JaquIgnore".equals(annotation))
+					persistedFields.remove(fieldName);
+				else if (null != annotations)
+					annotations.append(0 == annotations.length() ? "" : " ").append(annotation);
+			}
+			
 			if (desc.indexOf("com/centimia/orm/jaqu/annotation/RelationTypes") != -1)
 				return new JaquAnnotationVisitor(api, name, super.visitAnnotation(desc, visible), abstractFields);
 		}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *  
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu.ext.asm;
+
+import java.util.List;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.centimia.orm.jaqu.EntityMetadata;
+import com.centimia.orm.jaqu.constant.Constants;
+
+/**
+ * Writes the {@link EntityMetadata} class of an entity. The generated class has the form:
+ * <br><b><div style="background:lightgray;color:black">
+ * <pre>
+ * public final class [className]$JaquMetadata implements EntityMetadata {
+ *	public String[] fields() {
+ *		return new String[] {"id", "name", ...};
+ *	}
+ *	public String[] annotations() {
+ *		return new String[] {"PrimaryKey", "Column", ...};
+ *	}
+ * }
+ * </pre>
+ * </div>
+ * 
+ * @author Shai Bentin
+ */
+public class JaquMetadataWriter implements Opcodes {
+
+	private static final String METADATA = EntityMetadata.class.getName().replace('.', '/');
+	
+	private JaquMetadataWriter() {}
+	
+	/**
+	 * Returns the internal name of the metadata class of the given class.
+	 * @param className - internal name of the entity
+	 * @return String
+	 */
+	public static String metadataName(String className) {
+		return className + Constants.METADATA_SUFFIX;
+	}
+	
+	/**
+	 * Returns the byte code of the metadata class.
+	 * 
+	 * @param version - the class file version of the entity
+	 * @param className - internal name of the entity
+	 * @param fields - the persisted fields of the entity in declaration order
+	 * @param annotations - the annotations of each field
+	 * @return byte[]
+	 */
+	public static byte[] write(int version, String className, List<String> fields, List<String> annotations) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		String name = metadataName(className);
+		cw.visit(version, ACC_PUBLIC + ACC_FINAL + ACC_SUPER + ACC_SYNTHETIC, name, null, "java/lang/Object", new String[] {METADATA});
+		
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+		mv.visitCode();
+		mv.visitVarInsn(ALOAD, 0);
+		mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+		mv.visitInsn(RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		
+		writeArray(cw, "fields", fields);
+		writeArray(cw, "annotations", annotations);
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+	
+	/*
+	 * public String[] [methodName]() { return new String[] {values...}; }
+	 */
+	private static void writeArray(ClassWriter cw, String methodName, List<String> values) {
+		MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, methodName, "()[Ljava/lang/String;", null, null);
+		mv.visitCode();
+		mv.visitLdcInsn(values.size());
+		mv.visitTypeInsn(ANEWARRAY, "java/lang/String");
+		for (int i = 0; i < values.size(); i++) {
+			mv.visitInsn(DUP);
+			mv.visitLdcInsn(i);
+			mv.visitLdcInsn(values.get(i));
+			mv.visitInsn(AASTORE);
+		}
+		mv.visitInsn(ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+}
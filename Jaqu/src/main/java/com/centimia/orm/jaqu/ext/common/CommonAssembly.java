@@ -20,79 +20,167 @@ Created		   May 6, 2012		shai
 package com.centimia.orm.jaqu.ext.common;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
+import org.objectweb.asm.Attribute;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 
 import com.centimia.orm.jaqu.ext.asm.JaquClassAdapter;
+import com.centimia.orm.jaqu.ext.asm.JaquMetadataWriter;
 import com.centimia.orm.jaqu.ext.asm.SafeClassWriter;
 
 /**
+ * Enhances the JaQu annotated classes of an output directory. Classes are enhanced in parallel, a class already enhanced by a previous build is
+ * not altered again, and every file is written to a temporary file which then replaces the class file, so a failed build never leaves a
+ * partially written class behind.
+ * 
  * @author shai
  *
  */
 public class CommonAssembly {
 
+	private enum Result { ENHANCED, UNCHANGED, IGNORED }
+	
 	private CommonAssembly() {}
 	
 	public static BuildStats assembleFiles(File outputDir, StringBuilder successReport, StringBuilder failedReport) {
 		ArrayList<File> files = new ArrayList<>();
 		getAllFiles(outputDir, files);
 		
+		// each file gets its result or its failure, the reports are written afterwards in the order of the files
+		ForkJoinPool pool = new ForkJoinPool();
+		List<Object> results;
+		try {
+			results = pool.submit(() -> files.parallelStream().map(CommonAssembly::assembleOrFail).collect(Collectors.toList())).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Post compile was interrupted", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+		}
+		finally {
+			pool.shutdown();
+		}
+		
 		int success = 0, failure = 0, ignored = 0;
-		for (File classFile: files) {
-			try {
-				if (assembleFile(classFile)) {
-					successReport.append(String.format("SUCCESS -- %s%n", classFile));
-					success++;
-				}
-				else {
-					successReport.append(String.format("IGNORED -- %s%n", classFile));
-					ignored++;
-				}
+		for (int i = 0; i < files.size(); i++) {
+			File classFile = files.get(i);
+			Object result = results.get(i);
+			if (Result.ENHANCED == result) {
+				successReport.append(String.format("SUCCESS -- %s%n", classFile));
+				success++;
+			}
+			else if (Result.UNCHANGED == result) {
+				successReport.append(String.format("UNCHANGED -- %s%n", classFile));
+				ignored++;
 			}
-			catch (Exception e) {
-				failedReport.append(String.format("FAILED -- %s --> %s%n", classFile, e.getMessage()));
+			else if (Result.IGNORED == result) {
+				successReport.append(String.format("IGNORED -- %s%n", classFile));
+				ignored++;
+			}
+			else {
+				failedReport.append(String.format("FAILED -- %s --> %s%n", classFile, ((Exception)result).getMessage()));
 				failure++;
 			}
 		}
 		return new BuildStats(success, failure, ignored);
 	}
 	
+	/**
+	 * Enhances the class file if it is JaQu annotated and was not enhanced before.
+	 * 
+	 * @param classFile
+	 * @return boolean - true when the file was enhanced
+	 * @throws IOException
+	 */
 	public static boolean assembleFile(File classFile) throws IOException {
-		FileInputStream fis = new FileInputStream(classFile);
-        byte[] b = null;       
-       
-    	ClassReader cr = new ClassReader(fis);
-        ClassWriter cw = new SafeClassWriter(cr, null, ClassWriter.COMPUTE_FRAMES);
-          		
-        JaquClassAdapter jaquClassAdapter = new JaquClassAdapter(Opcodes.ASM9, cw);
-        cr.accept(jaquClassAdapter, 0);
-        
-        if (jaquClassAdapter.isJaquAnnotated()) {
-	        b = cw.toByteArray();
-	        fis.close();
-	        if (b != null) {
-	        	if (classFile.delete()) {
-	        		classFile.createNewFile();
-		            try (FileOutputStream fos = new FileOutputStream(classFile)) {
-		            	fos.write(b);
-		            	fos.flush();
-		            }
-	        	}	        	
-	        }
-	        return true;
-        }
-        else {
-        	fis.close();
-        	return false;
-        }
+		return Result.ENHANCED == assemble(classFile);
+	}
+	
+	private static Object assembleOrFail(File classFile) {
+		try {
+			return assemble(classFile);
+		}
+		catch (Exception e) {
+			return e;
+		}
+	}
+	
+	private static Result assemble(File classFile) throws IOException {
+		ClassReader cr = new ClassReader(Files.readAllBytes(classFile.toPath()));
+		if (isEnhanced(cr))
+			return Result.UNCHANGED;
+		
+		ClassWriter cw = new SafeClassWriter(cr, null, ClassWriter.COMPUTE_FRAMES);
+		JaquClassAdapter jaquClassAdapter = new JaquClassAdapter(Opcodes.ASM9, cw);
+		cr.accept(jaquClassAdapter, 0);
+		
+		if (!jaquClassAdapter.isJaquAnnotated())
+			return Result.IGNORED;
+		
+		// the metadata is written first, an enhanced class always has its metadata
+		writeMetadata(classFile, jaquClassAdapter);
+		write(classFile.toPath(), cw.toByteArray());
+		return Result.ENHANCED;
+	}
+	
+	/*
+	 * true when the class carries the attribute the enhancer adds, only the class level structure is read
+	 */
+	private static boolean isEnhanced(ClassReader cr) {
+		boolean[] enhanced = {false};
+		cr.accept(new ClassVisitor(Opcodes.ASM9) {
+			@Override
+			public void visitAttribute(Attribute attribute) {
+				if (JaquClassAdapter.ENHANCED_ATTRIBUTE.equals(attribute.type))
+					enhanced[0] = true;
+			}
+		}, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		return enhanced[0];
+	}
+	
+	/*
+	 * writes the metadata class of the entity next to its class file, so the entity is mapped at runtime without scanning it
+	 */
+	private static void writeMetadata(File classFile, JaquClassAdapter jaquClassAdapter) throws IOException {
+		byte[] metadata = jaquClassAdapter.getMetadata();
+		if (null == metadata)
+			return;
+		String metadataName = JaquMetadataWriter.metadataName(jaquClassAdapter.getClassName());
+		write(new File(classFile.getParentFile(), metadataName.substring(metadataName.lastIndexOf('/') + 1) + ".class").toPath(), metadata);
+	}
+	
+	/*
+	 * writes a temporary file in the target's directory and moves it in place of the target
+	 */
+	private static void write(Path target, byte[] content) throws IOException {
+		Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			Files.write(temp, content);
+			try {
+				Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
 	}
 
 	private static void getAllFiles(File outputDir, List<File> files){
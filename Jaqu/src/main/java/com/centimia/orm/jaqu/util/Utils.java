@@ -12,7 +12,10 @@
  */
 package com.centimia.orm.jaqu.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.Reader;
+import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -167,6 +170,14 @@ public class Utils {
             COUNTER.getAndIncrement();
             return (T) new byte[0];
 		}
+		else if (clazz == InputStream.class) {
+			COUNTER.getAndIncrement();
+			return (T) new ByteArrayInputStream(new byte[0]);
+		}
+		else if (clazz == Reader.class) {
+			COUNTER.getAndIncrement();
+			return (T) new StringReader("");
+		}
 		try {
 			return clazz.getConstructor().newInstance();
 		}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ *
+ * Multiple-Licensed under the H2 License,
+ * Version 1.0, and under the Eclipse Public License, Version 2.0
+ * (http://h2database.com/html/license.html).
+ * Initial Developer: H2 Group, Centimia Inc.
+ */
+package com.centimia.orm.jaqu;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Emits JDK Flight Recorder events for statements, relations and lazy columns loaded on first access, and table definitions.
+ * <p>
+ * This is the Java 11 version, packaged under META-INF/versions/11 of the multi release jar. An event is only created when a recording enables it,
+ * otherwise the begin methods return null and nothing is measured.
+ *
+ * @author Shai Bentin
+ */
+final class JaquEvents {
+
+	@Name("com.centimia.orm.jaqu.Statement")
+	@Label("JaQu Statement")
+	@Category({"JaQu"})
+	@Description("A statement run by a JaQu session, from preparing it to mapping its result")
+	@StackTrace(false)
+	static final class StatementEvent extends Event {
+		@Label("Kind")
+		String kind;
+
+		@Label("SQL")
+		@Description("The statement with its literals replaced by '?'")
+		String sql;
+
+		@Label("Table")
+		String table;
+
+		@Label("Rows")
+		@Description("The rows mapped by a query, or the update count of a statement that writes")
+		int rows;
+
+		@Label("Prepare Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long prepareTime;
+
+		@Label("Execute Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long executeTime;
+
+		@Label("Mapping Time")
+		@Description("Time taken to map the result into entities, including the session cache lookups")
+		@Timespan(Timespan.NANOSECONDS)
+		long mappingTime;
+	}
+
+	@Name("com.centimia.orm.jaqu.Load")
+	@Label("JaQu Lazy Load")
+	@Category({"JaQu"})
+	@Description("A relation or a lazy column loaded on first access")
+	static final class LoadEvent extends Event {
+		@Label("Table")
+		String table;
+
+		@Label("Field")
+		String field;
+
+		@Label("Rows")
+		int rows;
+	}
+
+	@Name("com.centimia.orm.jaqu.Define")
+	@Label("JaQu Table Definition")
+	@Category({"JaQu"})
+	@Description("An entity mapped to its table, including creating or validating the table")
+	@StackTrace(false)
+	static final class DefineEvent extends Event {
+		@Label("Class")
+		Class<?> type;
+
+		@Label("Table")
+		String table;
+	}
+
+	private static final StatementEvent STATEMENT = new StatementEvent();
+	private static final LoadEvent LOAD = new LoadEvent();
+	private static final DefineEvent DEFINE = new DefineEvent();
+
+	private JaquEvents() {}
+
+	static Object beginStatement() {
+		if (!STATEMENT.isEnabled())
+			return null;
+		StatementEvent event = new StatementEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitStatement(Object event, String kind, String sql, String table, int rows, long prepareNanos, long executeNanos, long mappingNanos) {
+		if (null == event)
+			return;
+		StatementEvent statement = (StatementEvent) event;
+		statement.end();
+		if (statement.shouldCommit()) {
+			statement.kind = kind;
+			statement.sql = sql;
+			statement.table = table;
+			statement.rows = rows;
+			statement.prepareTime = prepareNanos;
+			statement.executeTime = executeNanos;
+			statement.mappingTime = mappingNanos;
+			statement.commit();
+		}
+	}
+
+	static Object beginLoad() {
+		if (!LOAD.isEnabled())
+			return null;
+		LoadEvent event = new LoadEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitLoad(Object event, String table, String field, int rows) {
+		if (null == event)
+			return;
+		LoadEvent load = (LoadEvent) event;
+		load.end();
+		if (load.shouldCommit()) {
+			load.table = table;
+			load.field = field;
+			load.rows = rows;
+			load.commit();
+		}
+	}
+
+	static Object beginDefine() {
+		if (!DEFINE.isEnabled())
+			return null;
+		DefineEvent event = new DefineEvent();
+		event.begin();
+		return event;
+	}
+
+	static void commitDefine(Object event, Class<?> type, String table) {
+		if (null == event)
+			return;
+		DefineEvent define = (DefineEvent) event;
+		define.end();
+		if (define.shouldCommit()) {
+			define.type = type;
+			define.table = table;
+			define.commit();
+		}
+	}
+}
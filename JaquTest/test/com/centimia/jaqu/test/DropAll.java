@@ -26,12 +26,18 @@ public class DropAll extends JaquTest {
 
 	private String[] dropStrings = new String[] {
 			"drop table address",
+			"drop table album",
+			"drop table attachment",
 			"drop table address_for_person",
 			"drop table child",
 			"drop table enumuser",
 			"drop table grand_child",
+			"drop table measure",
+			"drop table note",
+			"drop table rate",
 			"drop table person",
 			"drop table phone",
+			"drop table photo",
 			"drop table testTable1",
 			"drop table testTable2",
 			"drop table testTable3",
@@ -48,6 +54,7 @@ public class DropAll extends JaquTest {
 			"drop table tablec",
 			"drop table tabled",
 			"drop table VERSIONING",
+			"drop table video",
 			"drop sequence MY_SEQ"
 			
 	};
@@ -24,19 +24,41 @@ import java.util.Enumeration;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.centimia.jaqu.test.entity.AsyncSQLLogTest;
+import com.centimia.jaqu.test.entity.AsyncTest;
 import com.centimia.jaqu.test.entity.AutoCommitTest;
+import com.centimia.jaqu.test.entity.CompiledQueryTest;
+import com.centimia.jaqu.test.entity.DialectMergeTest;
+import com.centimia.jaqu.test.entity.DirtyCheckingTest;
+import com.centimia.jaqu.test.entity.EntityDeleteListTest;
 import com.centimia.jaqu.test.entity.EntityDeleteTest;
 import com.centimia.jaqu.test.entity.EntityInsertTest;
+import com.centimia.jaqu.test.entity.EntityMetadataTest;
+import com.centimia.jaqu.test.entity.EntityMergeListTest;
 import com.centimia.jaqu.test.entity.EntityMergeTetst;
 import com.centimia.jaqu.test.entity.EntityNoUpdateFieldTest;
 import com.centimia.jaqu.test.entity.EntitySequenceIdentityTest;
 import com.centimia.jaqu.test.entity.EntitySessionTests;
 import com.centimia.jaqu.test.entity.EntityUpdateTest;
+import com.centimia.jaqu.test.entity.FindTest;
+import com.centimia.jaqu.test.entity.InterceptedDeleteTest;
+import com.centimia.jaqu.test.entity.LazyColumnTest;
+import com.centimia.jaqu.test.entity.MetricsTest;
 import com.centimia.jaqu.test.entity.O2OLazyLoadingTest;
+import com.centimia.jaqu.test.entity.PolymorphicRelationTest;
+import com.centimia.jaqu.test.entity.PreloadTest;
+import com.centimia.jaqu.test.entity.RelationIndexTest;
 import com.centimia.jaqu.test.entity.RelationWitVarcharPrimaryTest;
+import com.centimia.jaqu.test.entity.RepeatedQueryTest;
+import com.centimia.jaqu.test.entity.ReplicaTest;
+import com.centimia.jaqu.test.entity.SchemaValidationTest;
+import com.centimia.jaqu.test.entity.ScopedSessionTest;
+import com.centimia.jaqu.test.entity.SlowQueryTest;
+import com.centimia.jaqu.test.entity.StatelessSessionTest;
 import com.centimia.jaqu.test.entity.TestInsertNoId;
 import com.centimia.jaqu.test.entity.TestMultiRef;
 import com.centimia.jaqu.test.entity.UtilsAsPrimaryTest;
+import com.centimia.jaqu.test.entity.WriteBehindTest;
 import com.centimia.jaqu.test.inheritance.TestDiscriminator;
 import com.centimia.jaqu.test.inheritance.TestInheritance;
 import com.centimia.jaqu.test.simple.TestEnumType;
@@ -131,6 +153,28 @@ public class JaquTestSuite {
 		suite.addTest(new AutoCommitTest());
 		suite.addTest(new EntityUpdateTest());
 		suite.addTest(new EntityDeleteTest());
+		suite.addTest(new EntityDeleteListTest());
+		suite.addTest(new InterceptedDeleteTest());
+		suite.addTest(new EntityMergeListTest());
+		suite.addTest(new DialectMergeTest());
+		suite.addTest(new DirtyCheckingTest());
+		suite.addTest(new WriteBehindTest());
+		suite.addTest(new CompiledQueryTest());
+		suite.addTest(new FindTest());
+		suite.addTest(new StatelessSessionTest());
+		suite.addTest(new LazyColumnTest());
+		suite.addTest(new PolymorphicRelationTest());
+		suite.addTest(new PreloadTest());
+		suite.addTest(new RelationIndexTest());
+		suite.addTest(new SchemaValidationTest());
+		suite.addTest(new EntityMetadataTest());
+		suite.addTest(new MetricsTest());
+		suite.addTest(new SlowQueryTest());
+		suite.addTest(new RepeatedQueryTest());
+		suite.addTest(new AsyncSQLLogTest());
+		suite.addTest(new AsyncTest());
+		suite.addTest(new ScopedSessionTest());
+		suite.addTest(new ReplicaTest());
 		suite.addTest(new EntityMergeTetst());
 		suite.addTest(new EntityNoUpdateFieldTest());
 		suite.addTest(new EntitySessionTests());
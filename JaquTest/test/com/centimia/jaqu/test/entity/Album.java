@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.List;
+
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.One2Many;
+import com.centimia.orm.jaqu.annotation.PrimaryKey;
+
+/**
+ * Holds a relation to items of several types.
+ *
+ * @author Shai Bentin
+ */
+@Entity
+public class Album {
+
+	@PrimaryKey
+	private Long id;
+	private String name;
+
+	@One2Many(childType={Photo.class, Video.class}, relationFieldName="album", orderBy="title")
+	private List<Media> items;
+
+	public Album() {
+
+	}
+
+	public Album(Long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public List<Media> getItems() {
+		return this.items;
+	}
+
+	public void setItems(List<Media> items) {
+		this.items = items;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests the shown SQL is sampled and written by the asynchronous log.
+ *
+ * @author Shai Bentin
+ */
+public class AsyncSQLLogTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Async SQL log test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			boolean showSQL = sessionFactory.isShowSQL();
+			sessionFactory.setShowSQL(true);
+			try {
+				// one of every two statements
+				sessionFactory.setAsyncSQLLog(64, 2, false);
+				for (long id = 0; id < 10; id++)
+					db.executeQuery("select id from person where id = ?", rs -> rs.next(), id);
+				awaitWritten(5);
+				assertEquals(0, sessionFactory.getAsyncSQLLogDropped());
+
+				// one of every two statements of each shape
+				sessionFactory.setAsyncSQLLog(64, 2, true);
+				for (long id = 0; id < 5; id++)
+					db.executeQuery("select id from person where id = " + id, rs -> rs.next());
+				for (long id = 0; id < 3; id++)
+					db.executeQuery("select firstName from person where id = " + id, rs -> rs.next());
+				awaitWritten(5);
+
+				// a full log drops statements instead of blocking
+				sessionFactory.setAsyncSQLLog(2, 1, false);
+				for (long id = 0; id < 200; id++)
+					db.executeQuery("select id from person where id = ?", rs -> rs.next(), id);
+				long timeout = System.currentTimeMillis() + 5000;
+				while (sessionFactory.getAsyncSQLLogWritten() + sessionFactory.getAsyncSQLLogDropped() < 200 && System.currentTimeMillis() < timeout)
+					Thread.sleep(10);
+				assertEquals(200, sessionFactory.getAsyncSQLLogWritten() + sessionFactory.getAsyncSQLLogDropped());
+			}
+			finally {
+				sessionFactory.setAsyncSQLLog(0, 1, false);
+				sessionFactory.setShowSQL(showSQL);
+			}
+			assertEquals(0, sessionFactory.getAsyncSQLLogWritten());
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+
+	private void awaitWritten(long expected) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 5000;
+		while (sessionFactory.getAsyncSQLLogWritten() < expected && System.currentTimeMillis() < timeout)
+			Thread.sleep(10);
+		// nothing more is written
+		Thread.sleep(50);
+		assertEquals(expected, sessionFactory.getAsyncSQLLogWritten());
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.Db;
+import com.centimia.orm.jaqu.JaquAsync;
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * Tests units of work run on sessions of their own through the factory's async facade.
+ *
+ * @author Shai Bentin
+ */
+public class AsyncTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Async test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			setUp();
+			// the default pool has as many units of work in flight as the factory opens connections
+			sessionFactory.setAsyncExecutor(null, 0).setMaxConnections(4, 5000);
+			try {
+				JaquAsync defaultAsync = sessionFactory.async();
+				assertEquals(4, defaultAsync.getMaxInFlight());
+				assertNull(defaultAsync.query(db -> null).join());
+				assertTrue(asyncThreads() > 0);
+			}
+			finally {
+				sessionFactory.setMaxConnections(0, 0);
+			}
+			// and is shut down when replaced
+			sessionFactory.setAsyncExecutor(executor, 3);
+			for (int i = 0; i < 50 && asyncThreads() > 0; i++)
+				Thread.sleep(100);
+			assertEquals(0, asyncThreads());
+			JaquAsync async = sessionFactory.async();
+
+			// a write is committed on its own session
+			Long id = async.write(db -> {
+				db.insert(new Person(980L, "Async", "Person"));
+				return 980L;
+			}).join();
+			assertEquals(980L, id.longValue());
+
+			// queries run side by side, each on a session of its own
+			CountDownLatch started = new CountDownLatch(3);
+			List<CompletableFuture<Person>> queries = Utils.newArrayList();
+			for (int i = 0; i < 6; i++) {
+				queries.add(async.query(db -> {
+					started.countDown();
+					try {
+						assertTrue(started.await(5, TimeUnit.SECONDS));
+					}
+					catch (InterruptedException e) {
+						throw new IllegalStateException(e);
+					}
+					assertNotSame(sessionFactory.currentSession(), db);
+					Person p = new Person();
+					return db.from(p).where(p.getId()).is(980L).selectFirst();
+				}));
+			}
+			for (CompletableFuture<Person> query : queries)
+				assertEquals("Async", query.join().getFirstName());
+			assertEquals(0, async.getInFlight());
+
+			// a failing write is rolled back
+			CompletableFuture<Object> failed = async.write(db -> {
+				db.insert(new Person(981L, "Async", "Person"));
+				throw new IllegalStateException("failed");
+			});
+			try {
+				failed.join();
+				fail("The write should fail");
+			}
+			catch (CompletionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			assertNull(async.query(db -> {
+				Person p = new Person();
+				return db.from(p).where(p.getId()).is(981L).selectFirst();
+			}).join());
+
+			async.write((Db db) -> {
+				Person p = new Person();
+				return db.from(p).where(p.getFirstName()).is("Async").delete();
+			}).join();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+		finally {
+			sessionFactory.setAsyncExecutor(null, 0);
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * the threads of the factory's default pool
+	 */
+	private static long asyncThreads() {
+		return Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("jaqu-async-")).count();
+	}
+}
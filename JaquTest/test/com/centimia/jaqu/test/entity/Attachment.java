@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.io.InputStream;
+
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.Lazy;
+import com.centimia.orm.jaqu.annotation.PrimaryKey;
+
+/**
+ * Demonstrates large columns that are read only when accessed.
+ *
+ * @author Shai Bentin
+ */
+@Entity
+public class Attachment {
+
+	@PrimaryKey
+	private Long id;
+	private String name;
+	@Lazy
+	private byte[] content;
+	@Lazy
+	private InputStream data;
+
+	public Attachment() {
+
+	}
+
+	public Attachment(Long id, String name, byte[] content, InputStream data) {
+		this.id = id;
+		this.name = name;
+		this.content = content;
+		this.data = data;
+	}
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public byte[] getContent() {
+		return this.content;
+	}
+
+	public void setContent(byte[] content) {
+		this.content = content;
+	}
+
+	public InputStream getData() {
+		return this.data;
+	}
+
+	public void setData(InputStream data) {
+		this.data = data;
+	}
+}
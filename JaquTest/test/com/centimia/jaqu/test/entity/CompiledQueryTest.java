@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.CompiledQuery;
+import com.centimia.orm.jaqu.JaquError;
+
+/**
+ * Tests compiling a query once and executing it with different parameters.
+ *
+ * @author Shai Bentin
+ */
+public class CompiledQueryTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Compiled Query test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			db.insert(new Phone(400L, "40000000"), new Phone(401L, "40100000"));
+			db.commit();
+
+			CompiledQuery<Phone> byNum = sessionFactory.compile(session -> {
+				Phone desc = new Phone();
+				return session.from(desc).where(desc.getNum()).is("");
+			});
+			assertEquals(Long.valueOf(400L), byNum.bind("40000000").selectFirst(db).getId());
+			assertEquals(Long.valueOf(401L), byNum.bind("40100000").selectFirst(db).getId());
+			assertNull(byNum.bind("49999999").selectFirst(db));
+
+			final Phone desc = new Phone();
+			CompiledQuery<Phone> range = db.from(desc).where(desc.getId()).biggerEqual(1000L).and(desc.getId()).smaller(1000L).compile();
+			assertEquals(2, range.bind(400L, 402L).select(db).size());
+			try {
+				range.bind(400L);
+				fail("binding the wrong number of parameters must fail");
+			}
+			catch (JaquError expected) {
+				// expected
+			}
+
+			db.from(desc).where(desc.getId()).biggerEqual(400L).and(desc.getId()).smaller(402L).delete();
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
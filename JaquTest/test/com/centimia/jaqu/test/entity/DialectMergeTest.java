@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.dialect.DB2Dialect;
+import com.centimia.orm.jaqu.dialect.H2Dialect;
+import com.centimia.orm.jaqu.dialect.MySqlDialect;
+import com.centimia.orm.jaqu.dialect.OracleDialect;
+import com.centimia.orm.jaqu.dialect.PostgresDialect;
+import com.centimia.orm.jaqu.dialect.SQLServerDialect;
+
+/**
+ * Tests the single statement merge each dialect generates.
+ *
+ * @author Shai Bentin
+ */
+public class DialectMergeTest extends JaquTest {
+
+	private static final String[] KEYS = {"id"};
+	private static final String[] COLUMNS = {"id", "firstName", "lastName"};
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Dialect merge test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			assertEquals("MERGE INTO person (id, firstName, lastName) KEY (id) VALUES (?, ?, ?)",
+					new H2Dialect().createMergeStatement("person", KEYS, COLUMNS));
+			assertEquals("INSERT INTO person (id, firstName, lastName) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE firstName = VALUES(firstName), "
+					+ "lastName = VALUES(lastName)", new MySqlDialect().createMergeStatement("person", KEYS, COLUMNS));
+			assertEquals("INSERT INTO person (id, firstName, lastName) VALUES (?, ?, ?) ON CONFLICT (id) DO UPDATE SET firstName = EXCLUDED.firstName, "
+					+ "lastName = EXCLUDED.lastName", new PostgresDialect().createMergeStatement("person", KEYS, COLUMNS));
+
+			// the MERGE dialects share the body of the statement
+			String body = " ON (t.id = s.id) WHEN MATCHED THEN UPDATE SET t.firstName = s.firstName, t.lastName = s.lastName WHEN NOT MATCHED THEN "
+					+ "INSERT (id, firstName, lastName) VALUES (s.id, s.firstName, s.lastName)";
+			assertEquals("MERGE INTO person t USING (SELECT ? id, ? firstName, ? lastName FROM dual) s" + body,
+					new OracleDialect().createMergeStatement("person", KEYS, COLUMNS));
+			assertEquals("MERGE INTO person t USING (VALUES (?, ?, ?)) AS s (id, firstName, lastName)" + body,
+					new DB2Dialect().createMergeStatement("person", KEYS, COLUMNS));
+			assertEquals("MERGE INTO person t USING (VALUES (?, ?, ?)) AS s (id, firstName, lastName)" + body + ";",
+					new SQLServerDialect().createMergeStatement("person", KEYS, COLUMNS));
+
+			// a row of keys only is inserted and never updated
+			assertEquals("MERGE INTO person t USING (SELECT ? id FROM dual) s ON (t.id = s.id) WHEN NOT MATCHED THEN INSERT (id) VALUES (s.id)",
+					new OracleDialect().createMergeStatement("person", KEYS, KEYS));
+			assertEquals("INSERT INTO person (id) VALUES (?) ON DUPLICATE KEY UPDATE id = id", new MySqlDialect().createMergeStatement("person", KEYS, KEYS));
+			assertEquals("INSERT INTO person (id) VALUES (?) ON CONFLICT (id) DO NOTHING", new PostgresDialect().createMergeStatement("person", KEYS, KEYS));
+		}
+		catch (Throwable e) {
+			result.addError(this, e);
+		}
+	}
+}
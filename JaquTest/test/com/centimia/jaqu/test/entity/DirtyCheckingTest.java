@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests that with dirty checking on only changed columns are written on update.
+ *
+ * @author Shai Bentin
+ */
+public class DirtyCheckingTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Dirty Checking test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			sessionFactory.setDirtyChecking(true);
+			db.insert(new Phone(200L, "12345678"));
+			db.commit();
+
+			final Phone desc = new Phone();
+			Phone phone = db.from(desc).primaryKey().is(200L).selectFirst();
+
+			// change the row behind jaqu's back, an update of the unchanged object must not write it back
+			db.executeUpdate("UPDATE phone SET num = '87654321' WHERE id = 200");
+			db.update(phone);
+			assertEquals("87654321", readNum());
+
+			phone.setNum("11223344");
+			db.update(phone);
+			assertEquals("11223344", readNum());
+			db.commit();
+
+			// a rolled back update leaves the row as it was, updating the object again must write it
+			phone.setNum("55667788");
+			db.update(phone);
+			db.rollback();
+			assertEquals("11223344", readNum());
+			db.update(phone);
+			assertEquals("55667788", readNum());
+
+			db.from(desc).primaryKey().is(200L).delete();
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+		finally {
+			sessionFactory.setDirtyChecking(false);
+		}
+	}
+
+	/*
+	 * read the number straight from the table, the session would return the cached phone
+	 */
+	private String readNum() {
+		return db.executeQuery("SELECT num FROM phone WHERE id = 200", rs -> {
+			rs.next();
+			return rs.getString(1);
+		});
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests deleting a list of entities in a single call.
+ *
+ * @author Shai Bentin
+ */
+public class EntityDeleteListTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Entity Delete List test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			List<Person> persons = new ArrayList<Person>();
+			for (long id = 10; id < 12; id++) {
+				Person p = new Person(id, "first" + id, "last" + id);
+				HashSet<Phone> phones = new HashSet<Phone>();
+				phones.add(new Phone(id, "555" + id));
+				p.setPhones(phones);
+				ArrayList<Address> addresses = new ArrayList<Address>();
+				addresses.add(new Address(id, "street" + id, "city" + id, "Somewhere"));
+				p.setAddresses(addresses);
+				db.insert(p);
+				persons.add(p);
+			}
+			db.commit();
+
+			db.delete(persons);
+
+			final Person desc = new Person();
+			assertEquals(0, db.from(desc).where(desc.getId()).biggerEqual(10L).select().size());
+
+			// addresses are cascade delete so they are gone with their relation table entries
+			final Address aDesc = new Address();
+			assertEquals(0, db.from(aDesc).where(aDesc.getId()).biggerEqual(10L).select().size());
+			Integer relations = db.executeQuery("SELECT COUNT(*) FROM address_for_person WHERE address >= 10", rs -> {
+				rs.next();
+				return rs.getInt(1);
+			});
+			assertEquals(Integer.valueOf(0), relations);
+
+			// phones are not cascade delete, only the relation to the person is removed
+			final Phone pDesc = new Phone();
+			assertEquals(2, db.from(pDesc).where(pDesc.getId()).biggerEqual(10L).select().size());
+			db.from(pDesc).where(pDesc.getId()).biggerEqual(10L).delete();
+			db.commit();
+
+			// objects of different types are deleted in the order given, the note refers to the second person
+			Person first = new Person(1010L, "first", "last");
+			Person second = new Person(1011L, "second", "last");
+			Note note = new Note(1011L, "refers to second");
+			db.insert(first);
+			db.insert(second);
+			db.insert(note);
+			db.commit();
+			db.executeUpdate("ALTER TABLE Note ADD CONSTRAINT FK_NOTE_PERSON FOREIGN KEY (id) REFERENCES Person(id)");
+			try {
+				db.delete(first, note, second);
+				db.commit();
+				assertEquals(0, db.from(desc).where(desc.getId()).biggerEqual(1010L).select().size());
+			}
+			finally {
+				db.executeUpdate("ALTER TABLE Note DROP CONSTRAINT FK_NOTE_PERSON");
+				db.commit();
+			}
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests merging a list of entities in a single call.
+ *
+ * @author Shai Bentin
+ */
+public class EntityMergeListTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Entity Merge List tests";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			List<Phone> phones = new ArrayList<Phone>();
+			phones.add(new Phone(1L, "11111111")); // existing phone
+			phones.add(new Phone(100L, "22222222")); // new phone
+			phones.add(new Phone(101L, "33333333")); // new phone
+			phones.add(new Phone(100L, "44444444")); // same new phone again, the last one given wins
+
+			db.merge(phones);
+
+			final Phone desc = new Phone();
+			assertEquals("11111111", db.from(desc).primaryKey().is(1L).selectFirst().getNum());
+			assertEquals("44444444", db.from(desc).primaryKey().is(100L).selectFirst().getNum());
+			assertEquals("33333333", db.from(desc).primaryKey().is(101L).selectFirst().getNum());
+
+			// clean up so other tests see the same phones as before
+			db.from(desc).where(desc.getId()).biggerEqual(100L).delete();
+			db.commit();
+
+			// a key read back as another type than its field still matches, the existing row is updated
+			db.merge(Arrays.asList(new Measure(1L, "meter")));
+			db.commit();
+			db.merge(Arrays.asList(new Measure(1L, "inch"), new Measure(2L, "foot")));
+			db.commit();
+			assertEquals("inch", db.executeQuery("SELECT unit FROM measure WHERE id = 1", rs -> rs.next() ? rs.getString(1) : null));
+			assertEquals(Integer.valueOf(2), db.executeQuery("SELECT COUNT(*) FROM measure", rs -> rs.next() ? rs.getInt(1) : null));
+			db.executeUpdate("DELETE FROM measure");
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
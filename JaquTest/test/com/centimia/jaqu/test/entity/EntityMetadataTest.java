@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.Arrays;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.EntityMetadata;
+
+/**
+ * Tests the metadata the enhancer generates for entities.
+ *
+ * @author Shai Bentin
+ */
+public class EntityMetadataTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Entity metadata test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			EntityMetadata metadata = (EntityMetadata) Class.forName(Person.class.getName() + "$JaquMetadata").getConstructor().newInstance();
+			// static, transient and generated fields are not persisted
+			assertEquals(Arrays.asList("id", "firstName", "lastName", "parent", "children", "phones", "addresses", "workPlaces"), Arrays.asList(metadata.fields()));
+			assertEquals("PrimaryKey", metadata.annotations()[0]);
+			assertEquals("", metadata.annotations()[1]);
+			assertEquals("Many2Many", metadata.annotations()[7]);
+
+			// a table mapped from its metadata reads and writes as before
+			Person person = new Person(900L, "Meta", "Data");
+			db.insert(person);
+			Person p = new Person();
+			Person stored = db.from(p).where(p.getId()).is(900L).selectFirst();
+			assertEquals("Meta", stored.getFirstName());
+			assertEquals("Data", stored.getLastName());
+			db.delete(stored);
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.HistogramMetrics;
+
+/**
+ * Tests finding entities by their primary keys.
+ *
+ * @author Shai Bentin
+ */
+public class FindTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Find by primary key test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			Phone cached = new Phone(500L, "50000000");
+			db.insert(cached, new Phone(501L, "50100000"), new Phone(502L, "50200000"));
+			db.commit();
+
+			Phone found = db.find(Phone.class, 501L);
+			assertEquals("50100000", found.getNum());
+			assertSame(found, db.find(Phone.class, 501L));
+			assertNull(db.find(Phone.class, 599L));
+
+			// results follow the order of the keys, missing keys are null and a key given as an Integer finds the Long key
+			List<Phone> phones = db.findAll(Phone.class, Arrays.asList(502L, 599L, 500L, 501, 502L));
+			assertEquals(5, phones.size());
+			assertEquals(Long.valueOf(502L), phones.get(0).getId());
+			assertNull(phones.get(1));
+			assertEquals(Long.valueOf(500L), phones.get(2).getId());
+			assertSame(found, phones.get(3));
+			assertSame(phones.get(0), phones.get(4));
+
+			// a key of another type than the key field is taken from the session cache without a statement
+			HistogramMetrics metrics = new HistogramMetrics();
+			sessionFactory.setMetrics(metrics);
+			try {
+				assertSame(found, db.findAll(Phone.class, Arrays.asList(501.0)).get(0));
+				assertEquals(1, metrics.getCacheHits());
+				assertEquals(0, metrics.getStatements());
+			}
+			finally {
+				sessionFactory.setMetrics(null);
+			}
+
+			// a decimal key finds its row whatever its scale or type
+			db.insert(new Rate(new BigDecimal("1.5"), "one and a half"), new Rate(new BigDecimal("5"), "five"));
+			db.commit();
+			List<Rate> rates = db.findAll(Rate.class, Arrays.asList(new BigDecimal("1.50"), 5.0, 5, new BigDecimal("7")));
+			assertEquals("one and a half", rates.get(0).getName());
+			assertEquals("five", rates.get(1).getName());
+			assertSame(rates.get(1), rates.get(2));
+			assertNull(rates.get(3));
+			final Rate rDesc = new Rate();
+			db.from(rDesc).delete();
+
+			final Phone desc = new Phone();
+			db.from(desc).where(desc.getId()).biggerEqual(500L).and(desc.getId()).smaller(503L).delete();
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
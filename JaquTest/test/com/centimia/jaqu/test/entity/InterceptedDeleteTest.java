@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.Arrays;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests a filtered delete of an entity with a delete interceptor.
+ *
+ * @author Shai Bentin
+ */
+public class InterceptedDeleteTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Intercepted delete test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			db.insert(new Note(1000L, "keep"));
+			db.insert(new Note(1001L, "drop"));
+			db.insert(new Note(1002L, "drop"));
+			db.commit();
+			Note.DeleteInterceptor.deleted.clear();
+
+			final Note desc = new Note();
+			// the instances the delete loads for the interceptor are held by the session until it removes them
+			assertEquals(2, db.from(desc).where(desc.getText()).is("drop").delete());
+			assertEquals(Arrays.asList(1001L, 1002L), Note.DeleteInterceptor.deleted);
+			assertNull(db.from(desc).primaryKey().is(1001L).selectFirst());
+			assertEquals("keep", db.from(desc).primaryKey().is(1000L).selectFirst().getText());
+
+			db.from(desc).primaryKey().is(1000L).delete();
+			assertEquals(3, Note.DeleteInterceptor.deleted.size());
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
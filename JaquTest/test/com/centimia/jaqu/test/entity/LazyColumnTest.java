@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.Db;
+
+/**
+ * Tests large columns that are left out of the select and read on first access.
+ *
+ * @author Shai Bentin
+ */
+public class LazyColumnTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Lazy Column test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			byte[] content = new byte[] {1, 2, 3, 4};
+			db.insert(new Attachment(700L, "report.pdf", content, new ByteArrayInputStream("streamed".getBytes("UTF-8"))));
+			db.commit();
+
+			InputStream data;
+			try (Db session = sessionFactory.newLocalSession()) {
+				Attachment read = session.find(Attachment.class, 700L);
+				assertEquals("report.pdf", read.getName());
+				Field field = Attachment.class.getDeclaredField("content");
+				field.setAccessible(true);
+				assertNull(field.get(read));
+
+				// a column that was not read is not written by an update
+				read.setName("report2.pdf");
+				session.update(read);
+				session.commit();
+				assertTrue(Arrays.equals(content, read.getContent()));
+				assertNotNull(field.get(read));
+
+				data = read.getData();
+			}
+			// the stream is read after its session, and the result set it came from, closed
+			byte[] streamed = new byte[64];
+			int length = data.read(streamed);
+			assertEquals("streamed", new String(streamed, 0, length, "UTF-8"));
+
+			final Attachment desc = new Attachment();
+			db.from(desc).where(desc.getId()).is(700L).delete();
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import com.centimia.orm.jaqu.annotation.Column;
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.PrimaryKey;
+
+/**
+ * An entity whose key column has another type than its key field, as in a legacy schema.
+ *
+ * @author Shai Bentin
+ */
+@Entity
+public class Measure {
+	@PrimaryKey
+	@Column(type = Double.class)
+	private Long id;
+	private String unit;
+
+	public Measure() {}
+
+	public Measure(Long id, String unit) {
+		this.id = id;
+		this.unit = unit;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getUnit() {
+		return unit;
+	}
+
+	public void setUnit(String unit) {
+		this.unit = unit;
+	}
+}
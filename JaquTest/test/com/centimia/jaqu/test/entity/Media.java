@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import com.centimia.orm.jaqu.annotation.Column;
+import com.centimia.orm.jaqu.annotation.MappedSuperclass;
+import com.centimia.orm.jaqu.annotation.PrimaryKey;
+
+/**
+ * The common fields of the items in an {@link Album}.
+ *
+ * @author Shai Bentin
+ */
+@MappedSuperclass
+public class Media {
+
+	@PrimaryKey
+	private Long id;
+	@Column(name="title")
+	private String title;
+	private Album album;
+
+	public Long getId() {
+		return this.id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getTitle() {
+		return this.title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public Album getAlbum() {
+		return this.album;
+	}
+
+	public void setAlbum(Album album) {
+		this.album = album;
+	}
+}
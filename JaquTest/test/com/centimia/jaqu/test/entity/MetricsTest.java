@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.HistogramMetrics;
+
+/**
+ * Tests the metrics a factory reports.
+ *
+ * @author Shai Bentin
+ */
+public class MetricsTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Metrics test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			HistogramMetrics metrics = new HistogramMetrics();
+			sessionFactory.setMetrics(metrics);
+			try {
+				db.insert(new Person(950L, "Metric", "Person"));
+				db.commit();
+				assertTrue(metrics.getStatementsByKind().get("INSERT") > 0);
+				assertTrue(metrics.getRowsWritten() > 0);
+
+				// the first read maps the row, reading it again within the session is a cache hit
+				Person p = new Person();
+				Person stored = db.from(p).where(p.getId()).is(950L).selectFirst();
+				assertEquals(1, metrics.getRowsRead());
+				assertEquals(1, metrics.getCacheMisses());
+				assertSame(stored, db.from(p).where(p.getId()).is(950L).selectFirst());
+				assertEquals(2, metrics.getRowsRead());
+				assertEquals(1, metrics.getCacheHits());
+				assertEquals(0, stored.getChildren().size());
+				assertEquals(1, metrics.getLazyLoads());
+				assertTrue(metrics.getStatementsByTable().keySet().stream().anyMatch("person"::equalsIgnoreCase));
+				assertTrue(metrics.getMaxLatency() > 0);
+				assertTrue(metrics.get99thPercentileLatency() >= metrics.getMedianLatency());
+
+				// the same numbers are read through JMX
+				metrics.register("MetricsTest");
+				try {
+					Object statements = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName("com.centimia.orm.jaqu:type=Metrics,name=\"MetricsTest\""), "Statements");
+					assertEquals(metrics.getStatements(), statements);
+				}
+				finally {
+					metrics.unregister();
+				}
+				db.delete(stored);
+				db.commit();
+			}
+			finally {
+				sessionFactory.setMetrics(null);
+			}
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
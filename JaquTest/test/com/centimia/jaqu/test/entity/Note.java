@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.List;
+
+import com.centimia.orm.jaqu.CRUDInterceptor;
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.Event;
+import com.centimia.orm.jaqu.annotation.Interceptor;
+import com.centimia.orm.jaqu.annotation.PrimaryKey;
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * An entity whose deletes are intercepted.
+ *
+ * @author Shai Bentin
+ */
+@Entity
+@Interceptor(Class = Note.DeleteInterceptor.class, event = Event.DELETE)
+public class Note {
+
+	/**
+	 * Keeps the ids of the notes it was called to delete.
+	 */
+	public static class DeleteInterceptor implements CRUDInterceptor<Note> {
+
+		static final List<Long> deleted = Utils.newArrayList();
+
+		public void onInsert(Note t) {}
+
+		public void onMerge(Note t) {}
+
+		public void onUpdate(Note t) {}
+
+		public void onDelete(Note t) {
+			deleted.add(t.getId());
+		}
+	}
+
+	@PrimaryKey
+	private Long id;
+	private String text;
+
+	public Note() {}
+
+	public Note(Long id, String text) {
+		this.id = id;
+		this.text = text;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public void setText(String text) {
+		this.text = text;
+	}
+}
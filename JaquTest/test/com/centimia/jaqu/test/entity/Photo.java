@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.Inherited;
+
+/**
+ * @author Shai Bentin
+ */
+@Entity
+@Inherited
+public class Photo extends Media {
+
+	private Integer width;
+
+	public Photo() {
+
+	}
+
+	public Photo(Long id, String title, Integer width) {
+		setId(id);
+		setTitle(title);
+		this.width = width;
+	}
+
+	public Integer getWidth() {
+		return this.width;
+	}
+
+	public void setWidth(Integer width) {
+		this.width = width;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.Db;
+import com.centimia.orm.jaqu.dialect.MySqlDialect;
+
+/**
+ * Tests loading a relation to several types, ordered by the database.
+ *
+ * @author Shai Bentin
+ */
+public class PolymorphicRelationTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Polymorphic relation test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			Album album = new Album(800L, "holiday");
+			album.setItems(Arrays.<Media>asList(new Photo(801L, "beach", 640), new Video(802L, "arrival", 90), new Photo(803L, "sunset", 800)));
+			db.insert(album);
+			db.commit();
+
+			List<Media> items;
+			try (Db session = sessionFactory.newLocalSession()) {
+				items = session.find(Album.class, 800L).getItems();
+				assertEquals(3, items.size());
+				assertEquals("arrival", items.get(0).getTitle());
+				assertEquals(Integer.valueOf(90), ((Video)items.get(0)).getSeconds());
+				assertEquals("beach", items.get(1).getTitle());
+				assertEquals(Integer.valueOf(640), ((Photo)items.get(1)).getWidth());
+				assertEquals("sunset", items.get(2).getTitle());
+				assertEquals(Integer.valueOf(800), ((Photo)items.get(2)).getWidth());
+			}
+
+			final Photo photo = new Photo();
+			db.from(photo).where(photo.getId()).in(new Long[] {801L, 803L}).delete();
+			final Video video = new Video();
+			db.from(video).where(video.getId()).is(802L).delete();
+			final Album desc = new Album();
+			db.from(desc).where(desc.getId()).is(800L).delete();
+			db.commit();
+
+			// the column a type does not have is padded with a null mysql can cast
+			MySqlDialect mySql = new MySqlDialect();
+			assertEquals("CAST(NULL AS SIGNED)", mySql.getTypedNull(mySql.getDataType(Integer.class)));
+			assertEquals("CAST(NULL AS CHAR)", mySql.getTypedNull(mySql.getDataType(String.class)));
+			assertEquals("NULL", mySql.getTypedNull(mySql.getDataType(Double.class)));
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
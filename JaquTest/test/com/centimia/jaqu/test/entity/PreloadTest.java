@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.JaquError;
+
+/**
+ * Tests defining entities in parallel ahead of their use.
+ *
+ * @author Shai Bentin
+ */
+public class PreloadTest extends JaquTest {
+
+	/*
+	 * primitive fields are not allowed, the class can not be defined
+	 */
+	public static class Invalid {
+		private int count;
+
+		public int getCount() {
+			return this.count;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Preload test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			sessionFactory.preload(Person.class, Phone.class, Album.class, Photo.class, Video.class);
+			assertNull(db.find(Album.class, -1L));
+
+			// a failed definition is not kept, defining the class again fails again instead of waiting
+			for (int i = 0; i < 2; i++) {
+				try {
+					sessionFactory.preload(Invalid.class, Attachment.class);
+					fail("Invalid class was defined");
+				}
+				catch (JaquError e) {
+					assertTrue(e.getMessage().contains("primitive"));
+				}
+			}
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
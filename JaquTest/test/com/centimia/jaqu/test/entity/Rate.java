@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.math.BigDecimal;
+
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.PrimaryKey;
+
+/**
+ * An entity with a decimal primary key.
+ *
+ * @author Shai Bentin
+ */
+@Entity
+public class Rate {
+	@PrimaryKey
+	private BigDecimal code;
+	private String name;
+
+	public Rate() {}
+
+	public Rate(BigDecimal code, String name) {
+		this.code = code;
+		this.name = name;
+	}
+
+	public BigDecimal getCode() {
+		return code;
+	}
+
+	public void setCode(BigDecimal code) {
+		this.code = code;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests the indices created for the foreign key columns of relations and for relation tables.
+ *
+ * @author Shai Bentin
+ */
+public class RelationIndexTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Relation index test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			sessionFactory.preload(Person.class, Phone.class, Address.class, WorkPlace.class);
+
+			// the foreign key column of a one to many relation is indexed once, on the child table
+			assertEquals(1, countIndices("PERSON", "PARENT"));
+
+			// the phone table was created by the test before its entity was defined, tables that existed are not altered
+			assertEquals(0, countIndices("PHONE", "OWNER"));
+
+			// a relation table is indexed once in each direction
+			assertEquals(1, countIndices("ADDRESS_FOR_PERSON", "PERSON"));
+			assertEquals(1, countIndices("ADDRESS_FOR_PERSON", "ADDRESS"));
+			assertEquals(2, indices("WORKPLACE_FOR_PERSON").size());
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+
+	/*
+	 * the number of indices of the table that lead with the column
+	 */
+	private int countIndices(String table, String column) {
+		int count = 0;
+		for (List<String> columns : indices(table).values()) {
+			if (column.equals(columns.get(0)))
+				count++;
+		}
+		return count;
+	}
+
+	/*
+	 * the columns, in order, of each index of the table
+	 */
+	private Map<String, List<String>> indices(String table) {
+		return db.executeQuery("SELECT INDEX_NAME, COLUMN_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = ? ORDER BY INDEX_NAME, ORDINAL_POSITION", rs -> {
+			Map<String, List<String>> indices = new HashMap<>();
+			while (rs.next())
+				indices.computeIfAbsent(rs.getString("INDEX_NAME"), k -> new ArrayList<>()).add(rs.getString("COLUMN_NAME"));
+			return indices;
+		}, table);
+	}
+}
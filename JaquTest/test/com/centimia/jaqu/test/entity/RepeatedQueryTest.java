@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.JaquError;
+import com.centimia.orm.jaqu.RepeatedQuery;
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * Tests a session reports a relation loaded one entity at a time.
+ *
+ * @author Shai Bentin
+ */
+public class RepeatedQueryTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Repeated query test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			for (long id = 970; id < 974; id++)
+				db.insert(new Person(id, "Repeated", "Person"));
+			db.commit();
+
+			List<RepeatedQuery> reports = Utils.newArrayList();
+			Person p = new Person();
+			sessionFactory.setRepeatedQueryThreshold(3).setRepeatedQueryListener(reports::add);
+			try {
+				// the eagerly loaded phones of each person are selected with a statement of their own
+				List<Person> persons = db.from(p).where(p.getFirstName()).is("Repeated").orderBy(p.getId()).select();
+				assertEquals(4, persons.size());
+				assertEquals(1, reports.size());
+				assertEquals("phones", reports.get(0).getField());
+				// and so are their lazy children
+				for (Person person : persons)
+					person.getChildren().size();
+				assertEquals(2, reports.size());
+				RepeatedQuery report = reports.get(1);
+				assertEquals(3, report.getCount());
+				assertEquals(Person.class, report.getEntity());
+				assertEquals("children", report.getField());
+				assertTrue(report.getCallSite().length > 0);
+				assertFalse(report.getCallSite()[0].getClassName().startsWith("com.centimia.orm.jaqu."));
+				// relations kept in a join table are loaded the same way
+				for (Person person : persons)
+					person.getAddresses().size();
+				assertEquals(3, reports.size());
+				assertEquals(Person.class, reports.get(2).getEntity());
+				assertEquals("addresses", reports.get(2).getField());
+
+				// counting starts over on commit, and in strict mode the statement fails
+				db.commit();
+				sessionFactory.setFailOnRepeatedQuery(true);
+				for (int i = 0; i < 2; i++)
+					db.from(p).where(p.getId()).is(970L + i).selectFirst();
+				try {
+					db.from(p).where(p.getId()).is(972L).selectFirst();
+					fail("The repeated query should fail");
+				}
+				catch (JaquError e) {
+					assertTrue(e.getMessage().contains("Statement ran 3 times"));
+				}
+				assertEquals(4, reports.size());
+				assertNull(reports.get(3).getEntity());
+			}
+			finally {
+				sessionFactory.setRepeatedQueryThreshold(0).setRepeatedQueryListener(null).setFailOnRepeatedQuery(false);
+			}
+			db.from(p).where(p.getFirstName()).is("Repeated").delete();
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
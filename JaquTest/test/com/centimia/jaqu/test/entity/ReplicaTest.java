@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestResult;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.Db;
+import com.centimia.orm.jaqu.ReplicaSelection;
+import com.centimia.orm.jaqu.util.Utils;
+
+/**
+ * Tests read sessions are routed to the replicas of a factory, here in memory H2 databases each holding its own name.
+ *
+ * @author Shai Bentin
+ */
+public class ReplicaTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Replica test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			JdbcDataSource replica1 = replica("replica1");
+			JdbcDataSource replica2 = replica("replica2");
+			db.executeUpdate("create table replica_mark(name varchar(20))");
+			db.executeUpdate("insert into replica_mark values('primary')");
+			db.commit();
+			try {
+				assertEquals("primary", read());
+
+				// in turn
+				sessionFactory.setReplicas(ReplicaSelection.ROUND_ROBIN, replica1, replica2);
+				String first = read();
+				String second = read();
+				assertTrue(first.startsWith("replica"));
+				assertTrue(second.startsWith("replica"));
+				assertFalse(first.equals(second));
+
+				// to the replica with the fewest sessions open
+				sessionFactory.setReplicas(ReplicaSelection.LEAST_OUTSTANDING, replica1, replica2);
+				Db open = sessionFactory.getReadSession();
+				Db other = sessionFactory.getReadSession();
+				assertFalse(name(open).equals(name(other)));
+				open.close();
+				assertEquals(name(other).equals("replica1") ? "replica2" : "replica1", read());
+				other.close();
+
+				// the thread that wrote reads from the primary, once its write is committed
+				db.executeUpdate("update replica_mark set name = 'primary'");
+				assertTrue(read().startsWith("replica"));
+				db.commit();
+				assertEquals("primary", read());
+
+				// an asynchronous write counts for the thread that submitted it
+				List<String> reads = Utils.newArrayList();
+				ExecutorService executor = Executors.newSingleThreadExecutor();
+				sessionFactory.setAsyncExecutor(executor, 1);
+				Thread reader = new Thread(() -> {
+					reads.add(read());
+					sessionFactory.async().write(session -> session.executeUpdate("update replica_mark set name = 'primary'")).join();
+					reads.add(read());
+				});
+				reader.start();
+				reader.join();
+				sessionFactory.setAsyncExecutor(null, 0);
+				executor.shutdown();
+				assertEquals(2, reads.size());
+				assertTrue(reads.get(0).startsWith("replica"));
+				assertEquals("primary", reads.get(1));
+				sessionFactory.setReadYourWritesMillis(0);
+				assertTrue(read().startsWith("replica"));
+
+				// a replica that fails or lags is left out
+				JdbcDataSource down = new JdbcDataSource();
+				down.setURL("jdbc:h2:tcp://localhost:1/down");
+				down.setUser("sa");
+				down.setPassword("");
+				sessionFactory.setReplicas(ReplicaSelection.ROUND_ROBIN, down, replica1);
+				for (int i = 0; i < 3; i++)
+					assertEquals("replica1", read());
+				sessionFactory.setReplicas(ReplicaSelection.ROUND_ROBIN, replica1, replica2).setReplicaLag(conn -> {
+					try {
+						return conn.getMetaData().getURL().contains("replica2") ? 10000 : 0;
+					}
+					catch (SQLException e) {
+						throw new IllegalStateException(e);
+					}
+				}, 1000);
+				for (int i = 0; i < 3; i++)
+					assertEquals("replica1", read());
+			}
+			finally {
+				sessionFactory.setReplicas(ReplicaSelection.ROUND_ROBIN).setReplicaLag(null, 0).setReadYourWritesMillis(1000);
+				db.executeUpdate("drop table replica_mark");
+				db.commit();
+			}
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+
+	private JdbcDataSource replica(String name) throws SQLException {
+		JdbcDataSource replica = new JdbcDataSource();
+		replica.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+		replica.setUser("sa");
+		replica.setPassword("");
+		try (Connection conn = replica.getConnection(); Statement stat = conn.createStatement()) {
+			stat.execute("create table if not exists replica_mark(name varchar(20))");
+			stat.execute("delete from replica_mark");
+			stat.execute("insert into replica_mark values('" + name + "')");
+		}
+		return replica;
+	}
+
+	private String read() {
+		Db read = sessionFactory.getReadSession();
+		try {
+			return name(read);
+		}
+		finally {
+			read.close();
+		}
+	}
+
+	private String name(Db session) {
+		return session.executeQuery("select name from replica_mark", rs -> rs.next() ? rs.getString(1) : null);
+	}
+}
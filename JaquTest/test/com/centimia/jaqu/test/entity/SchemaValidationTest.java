@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests validating the schema without creating it.
+ *
+ * @author Shai Bentin
+ */
+public class SchemaValidationTest extends JaquTest {
+
+	/*
+	 * has no table in the database
+	 */
+	public static class Unmapped {
+		private Long id;
+		private String name;
+
+		public Long getId() {
+			return this.id;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Schema validation test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			sessionFactory.setValidateSchema(true);
+			try {
+				sessionFactory.preload(Unmapped.class);
+				List<String> drift = sessionFactory.getSchemaDrift();
+				assertEquals(1, drift.size());
+				assertTrue(drift.get(0).contains(Unmapped.class.getName()));
+			}
+			finally {
+				sessionFactory.setValidateSchema(false);
+			}
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
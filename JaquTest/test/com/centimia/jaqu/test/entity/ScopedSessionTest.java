@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.Db;
+import com.centimia.orm.jaqu.JaquError;
+
+/**
+ * Tests sessions bound to a thread for the scope of a unit of work, and the bound on the connections a factory opens.
+ *
+ * @author Shai Bentin
+ */
+public class ScopedSessionTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Scoped session test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			try {
+				sessionFactory.setMaxConnections(2, 200);
+				Db first = sessionFactory.newLocalSession();
+				Db second = sessionFactory.newLocalSession();
+				assertEquals(2, sessionFactory.getOpenConnections());
+				try {
+					sessionFactory.newLocalSession();
+					fail("No connection should be available");
+				}
+				catch (JaquError e) {
+					assertEquals(1, sessionFactory.getConnectionTimeouts());
+				}
+
+				// a closed session lets a waiting one in
+				sessionFactory.setMaxConnections(2, 5000);
+				Db third = sessionFactory.newLocalSession();
+				Db fourth = sessionFactory.newLocalSession();
+				AtomicReference<Db> waited = new AtomicReference<>();
+				Thread waiting = new Thread(() -> waited.set(sessionFactory.newLocalSession()));
+				waiting.start();
+				long timeout = System.currentTimeMillis() + 5000;
+				while (0 == sessionFactory.getConnectionQueueLength() && System.currentTimeMillis() < timeout)
+					Thread.sleep(10);
+				assertEquals(1, sessionFactory.getConnectionQueueLength());
+				third.close();
+				waiting.join(5000);
+				assertNotNull(waited.get());
+				assertEquals(1, sessionFactory.getConnectionWaits());
+				assertEquals(2, sessionFactory.getOpenConnections());
+				waited.get().close();
+				fourth.close();
+				assertEquals(0, sessionFactory.getOpenConnections());
+				first.close();
+				second.close();
+
+				// with scoped sessions a thread only has a session within inSession
+				sessionFactory.setScopedSessions(true);
+				AtomicReference<Throwable> failure = new AtomicReference<>();
+				Thread scoped = new Thread(() -> {
+					try {
+						try {
+							sessionFactory.getSession();
+							fail("A session should not be bound outside inSession");
+						}
+						catch (JaquError e) {
+							// expected
+						}
+						Person person = sessionFactory.inSession(db -> {
+							assertSame(db, sessionFactory.getSession());
+							assertEquals(1, sessionFactory.getOpenConnections());
+							Person p = new Person();
+							return db.from(p).where(p.getId()).is(1L).selectFirst();
+						});
+						assertNotNull(person);
+						assertNull(sessionFactory.currentSession());
+						assertEquals(0, sessionFactory.getOpenConnections());
+					}
+					catch (Throwable t) {
+						failure.set(t);
+					}
+				});
+				scoped.start();
+				scoped.join(5000);
+				if (null != failure.get())
+					throw failure.get();
+			}
+			finally {
+				sessionFactory.setMaxConnections(0, 0);
+				sessionFactory.setScopedSessions(false);
+			}
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
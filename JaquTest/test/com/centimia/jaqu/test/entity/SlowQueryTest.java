@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.List;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.QueryStatistics;
+
+/**
+ * Tests the slow query log of a factory aggregates statements by their shape.
+ *
+ * @author Shai Bentin
+ */
+public class SlowQueryTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Slow query test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			assertEquals(-1, sessionFactory.getSlowQueryThreshold());
+			assertTrue(sessionFactory.getQueryStatistics().isEmpty());
+			// every statement is slow
+			sessionFactory.setSlowQueryThreshold(0);
+			try {
+				assertEquals(0, sessionFactory.getSlowQueryThreshold());
+				db.insert(new Person(960L, "Slow", "Person"));
+				db.insert(new Person(961L, "Slow", "Person"));
+				db.commit();
+
+				// statements differing only in their parameters or literals share a shape
+				Person p = new Person();
+				db.from(p).where(p.getId()).is(960L).selectFirst();
+				db.from(p).where(p.getId()).is(961L).selectFirst();
+				db.executeQuery("select id from person where id = 960", rs -> rs.next());
+				db.executeQuery("select id from person where id = 961", rs -> rs.next());
+				db.executeQuery("select id from person where id in (960, 961)", rs -> rs.next());
+				db.executeQuery("select id from person where id in (?, ?, ?)", rs -> rs.next(), 960L, 961L, 962L);
+
+				List<QueryStatistics> statistics = sessionFactory.getQueryStatistics();
+				QueryStatistics byLiteral = find(statistics, "select id from person where id = ?");
+				assertEquals(2, byLiteral.getCount());
+				assertEquals(2, byLiteral.getSlowCount());
+				assertTrue(byLiteral.getMaxMillis() <= byLiteral.getTotalMillis());
+				assertEquals(2, find(statistics, "select id from person where id in (?)").getCount());
+				// the tables of generated queries are aliased anew every time
+				assertEquals(2, find(statistics, "SELECT T.id, T.firstName, T.lastName, T.parent FROM Person T WHERE T.id = ?").getCount());
+				for (int i = 1; i < statistics.size(); i++)
+					assertTrue(statistics.get(i - 1).getTotalMillis() >= statistics.get(i).getTotalMillis());
+				assertEquals(0, sessionFactory.getQueryStatisticsOverflow());
+
+				db.executeUpdate("delete from person where id in (960, 961)");
+				db.commit();
+			}
+			finally {
+				sessionFactory.setSlowQueryThreshold(-1);
+			}
+			assertTrue(sessionFactory.getQueryStatistics().isEmpty());
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+
+	private QueryStatistics find(List<QueryStatistics> statistics, String fingerprint) {
+		for (QueryStatistics s : statistics) {
+			if (fingerprint.equals(s.getFingerprint()))
+				return s;
+		}
+		fail("No statistics for " + fingerprint + " in " + statistics);
+		return null;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import java.util.HashSet;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+import com.centimia.orm.jaqu.Db;
+import com.centimia.orm.jaqu.JaquError;
+
+/**
+ * Tests reading through a stateless read only session.
+ *
+ * @author Shai Bentin
+ */
+public class StatelessSessionTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Stateless Session test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			Person p = new Person(600L, "first600", "last600");
+			HashSet<Phone> phones = new HashSet<Phone>();
+			phones.add(new Phone(600L, "60000000"));
+			phones.add(new Phone(601L, "60100000"));
+			p.setPhones(phones);
+			db.insert(p);
+			db.commit();
+
+			try (Db stateless = sessionFactory.getStatelessSession()) {
+				assertTrue(stateless.isReadOnly());
+				Person read = stateless.find(Person.class, 600L);
+				assertEquals("first600", read.getFirstName());
+				// eagerly loaded relations are plain collections
+				assertEquals(HashSet.class, read.getPhones().getClass());
+				assertEquals(2, read.getPhones().size());
+				// nothing is cached, every read is a new instance
+				assertNotSame(read, stateless.find(Person.class, 600L));
+
+				try {
+					stateless.insert(new Phone(602L, "60200000"));
+					fail("a read only session must not insert");
+				}
+				catch (JaquError expected) {
+					// expected
+				}
+				try {
+					final Phone desc = new Phone();
+					stateless.from(desc).where(desc.getId()).is(600L).delete();
+					fail("a read only session must not delete");
+				}
+				catch (JaquError expected) {
+					// expected
+				}
+			}
+
+			db.delete(p);
+			final Phone desc = new Phone();
+			db.from(desc).where(desc.getId()).biggerEqual(600L).and(desc.getId()).smaller(603L).delete();
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import com.centimia.orm.jaqu.annotation.Entity;
+import com.centimia.orm.jaqu.annotation.Inherited;
+
+/**
+ * @author Shai Bentin
+ */
+@Entity
+@Inherited
+public class Video extends Media {
+
+	private Integer seconds;
+
+	public Video() {
+
+	}
+
+	public Video(Long id, String title, Integer seconds) {
+		setId(id);
+		setTitle(title);
+		this.seconds = seconds;
+	}
+
+	public Integer getSeconds() {
+		return this.seconds;
+	}
+
+	public void setSeconds(Integer seconds) {
+		this.seconds = seconds;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2007-2010 Centimia Ltd.
+ * All rights reserved.  Unpublished -- rights reserved
+ *
+ * Use of a copyright notice is precautionary only, and does
+ * not imply publication or disclosure.
+ */
+package com.centimia.jaqu.test.entity;
+
+import junit.framework.TestResult;
+
+import com.centimia.jaqu.test.JaquTest;
+
+/**
+ * Tests a write behind session, changes are queued and written on flush or commit.
+ *
+ * @author Shai Bentin
+ */
+public class WriteBehindTest extends JaquTest {
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#getName()
+	 */
+	@Override
+	public String getName() {
+		return "Write Behind test";
+	}
+
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#run(junit.framework.TestResult)
+	 */
+	@Override
+	public void run(TestResult result) {
+		result.startTest(this);
+		try {
+			setUp();
+			db.applyWriteBehind(true);
+			Phone first = new Phone(300L, "30000000");
+			Phone second = new Phone(301L, "30100000");
+			Phone dropped = new Phone(302L, "30200000");
+			db.insert(first, second, dropped);
+			first.setNum("30000001");
+			db.update(first);
+			// inserted and deleted within the unit of work, never written
+			db.delete(dropped);
+			assertEquals(0, countPhones());
+
+			db.flush();
+			assertEquals(2, countPhones());
+			assertEquals("30000001", readNum(300));
+
+			second.setNum("30100001");
+			db.update(second);
+			db.delete(first);
+			db.commit();
+			assertEquals(1, countPhones());
+			assertEquals("30100001", readNum(301));
+
+			db.delete(second);
+			db.applyWriteBehind(false);
+			assertEquals(0, countPhones());
+			db.commit();
+			tearDown();
+		}
+		catch (Throwable e) {
+			db.rollback();
+			result.addError(this, e);
+		}
+	}
+
+	private int countPhones() {
+		return db.executeQuery("SELECT COUNT(*) FROM phone WHERE id >= 300 AND id < 400", rs -> {
+			rs.next();
+			return rs.getInt(1);
+		});
+	}
+
+	private String readNum(long id) {
+		return db.executeQuery("SELECT num FROM phone WHERE id = " + id, rs -> {
+			rs.next();
+			return rs.getString(1);
+		});
+	}
+}